@@ -0,0 +1,101 @@
+package auctionhouse;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Several producers handing bids to a {@link BidRingBuffer} of
+ * {@code capacity} slots in front of a house whose makeBid does nothing,
+ * so the ring's own handover is all that is measured.
+ *
+ * offerBid does not wait for the bid to be applied: once the ring is full
+ * the producers wait for free slots, so its throughput is the rate the
+ * consumer drains the ring at. makeBid waits for each bid's status, so
+ * every call is a round trip to the consumer thread.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class BidRingBufferBenchmark {
+
+    private static final int LOTS = 16;
+    private static final int BIDDERS = 64;
+
+    /*
+     * Accepts every bid without looking at it.
+     */
+    private static final class CheapHouse extends AuctionHouseImp {
+
+        CheapHouse() {
+            super(Houses.newParameters());
+        }
+
+        @Override
+        public Status makeBid(String buyerName, int lotNumber, Money bid) {
+            return Status.OK();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Ring {
+
+        @Param({ "64", "1024" })
+        public int capacity;
+
+        BidRingBuffer ring;
+        AtomicInteger producers = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setup() {
+            ring = new BidRingBuffer(new CheapHouse(), capacity);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            ring.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+
+        String name;
+        Money amount = Money.ofPence(10000);
+
+        @Setup(Level.Trial)
+        public void setup(Ring ring) {
+            name = Houses.buyerName(ring.producers.getAndIncrement() % BIDDERS);
+        }
+    }
+
+    @Benchmark
+    public long offerBid(Ring ring, Producer producer) {
+        int lot = ThreadLocalRandom.current().nextInt(LOTS) + 1;
+        return ring.ring.offerBid(producer.name, lot, producer.amount);
+    }
+
+    @Benchmark
+    public Status makeBid(Ring ring, Producer producer) {
+        int lot = ThreadLocalRandom.current().nextInt(LOTS) + 1;
+        return ring.ring.makeBid(producer.name, lot, producer.amount);
+    }
+}
@@ -0,0 +1,90 @@
+package auctionhouse;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adding lots to, and viewing, a catalogue of {@code lots} lots.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogueBenchmark {
+
+    private static final int PAGE = 100;
+
+    /**
+     * A catalogue that stays at its size; for the views.
+     */
+    @State(Scope.Benchmark)
+    public static class Catalogue {
+
+        @Param({ "1000", "100000", "1000000" })
+        public int lots;
+
+        AuctionHouseImp house;
+        long version;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            house = Houses.newHouse();
+            Houses.addLots(house, lots);
+            version = house.viewCatalogueSince(0).getVersion();
+        }
+    }
+
+    /**
+     * A catalogue that starts each iteration at its size and grows.
+     */
+    @State(Scope.Thread)
+    public static class GrowingCatalogue {
+
+        @Param({ "1000", "100000", "1000000" })
+        public int lots;
+
+        AuctionHouseImp house;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            house = Houses.newHouse();
+            Houses.addLots(house, lots);
+            next = lots + 1;
+        }
+    }
+
+    @Benchmark
+    public Status addLot(GrowingCatalogue catalogue) {
+        return catalogue.house.addLot(Houses.SELLER, catalogue.next++, Houses.DESCRIPTION, Houses.RESERVE);
+    }
+
+    @Benchmark
+    public List<CatalogueEntry> viewCatalogue(Catalogue catalogue) {
+        return catalogue.house.viewCatalogue();
+    }
+
+    @Benchmark
+    public List<CatalogueEntry> viewCataloguePage(Catalogue catalogue) {
+        return catalogue.house.viewCatalogue(catalogue.lots / 2, PAGE);
+    }
+
+    @Benchmark
+    public CatalogueChanges viewCatalogueSinceUnchanged(Catalogue catalogue) {
+        return catalogue.house.viewCatalogueSince(catalogue.version);
+    }
+}
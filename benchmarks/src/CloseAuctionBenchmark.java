@@ -0,0 +1,90 @@
+package auctionhouse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Closing an auction with {@code bidders} interested buyers, with the
+ * payments going through MockBankingService.
+ *
+ * A sold lot cannot be auctioned again, so each closeSold call gets a
+ * fresh lot, opened and bid on before the call. closeUnsold reopens the
+ * same lot, which has no bids, before each call.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CloseAuctionBenchmark {
+
+    private static final String AUCTIONEER = "Auctioneer";
+    private static final String AUCTIONEER_ADDRESS = "@Auctioneer";
+    private static final Money WINNING_BID = new Money("100.00");
+    private static final int UNSOLD_LOT = 1;
+
+    @State(Scope.Thread)
+    public static class House {
+
+        @Param({ "1", "100", "1000" })
+        public int bidders;
+
+        AuctionHouseImp house;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            house = Houses.newHouse();
+            Houses.registerBuyers(house, bidders);
+            Houses.addLots(house, UNSOLD_LOT);
+            Houses.noteInterest(house, bidders, UNSOLD_LOT);
+            next = UNSOLD_LOT + 1;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SoldLot {
+
+        int lot;
+
+        @Setup(Level.Invocation)
+        public void prepare(House house) {
+            lot = house.next++;
+            house.house.addLot(Houses.SELLER, lot, Houses.DESCRIPTION, Houses.RESERVE);
+            Houses.noteInterest(house.house, house.bidders, lot);
+            house.house.openAuction(AUCTIONEER, AUCTIONEER_ADDRESS, lot);
+            house.house.makeBid(Houses.buyerName(0), lot, WINNING_BID);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class UnsoldLot {
+
+        @Setup(Level.Invocation)
+        public void prepare(House house) {
+            house.house.openAuction(AUCTIONEER, AUCTIONEER_ADDRESS, UNSOLD_LOT);
+        }
+    }
+
+    @Benchmark
+    public Status closeSold(House house, SoldLot lot) {
+        return house.house.closeAuction(AUCTIONEER, lot.lot);
+    }
+
+    @Benchmark
+    public Status closeUnsold(House house, UnsoldLot lot) {
+        return house.house.closeAuction(AUCTIONEER, UNSOLD_LOT);
+    }
+}
@@ -0,0 +1,78 @@
+package auctionhouse;
+
+/**
+ * Builds houses of a given size for the benchmarks.
+ */
+final class Houses {
+
+    static final String SELLER = "Seller";
+    static final String DESCRIPTION = "Lot description";
+    static final Money RESERVE = new Money("50.00");
+
+    private Houses() {
+    }
+
+    /**
+     * Returns parameters with silent messaging and mock banking.
+     */
+    static Parameters newParameters() {
+        return new Parameters(10.0, 15.0, new Money("1.00"), "AH A/C", "AH-auth",
+                new SilentMessagingService(), new MockBankingService());
+    }
+
+    /**
+     * Returns an empty house with silent messaging, mock banking and no
+     * journal, with one registered seller.
+     */
+    static AuctionHouseImp newHouse() {
+        AuctionHouseImp house = new AuctionHouseImp(newParameters());
+        house.registerSeller(SELLER, "@" + SELLER, SELLER + " A/C");
+        return house;
+    }
+
+    static String buyerName(long i) {
+        return "Buyer" + i;
+    }
+
+    static String sellerName(long i) {
+        return "Seller" + i;
+    }
+
+    /**
+     * Registers buyers 0 to count - 1.
+     */
+    static void registerBuyers(AuctionHouse house, int count) {
+        for (int i = 0; i < count; i++) {
+            String name = buyerName(i);
+            house.registerBuyer(name, "@" + name, name + " A/C", name + "-auth");
+        }
+    }
+
+    /**
+     * Registers sellers 0 to count - 1.
+     */
+    static void registerSellers(AuctionHouse house, int count) {
+        for (int i = 0; i < count; i++) {
+            String name = sellerName(i);
+            house.registerSeller(name, "@" + name, name + " A/C");
+        }
+    }
+
+    /**
+     * Adds lots 1 to count, all from {@link #SELLER}.
+     */
+    static void addLots(AuctionHouse house, int count) {
+        for (int i = 1; i <= count; i++) {
+            house.addLot(SELLER, i, DESCRIPTION, RESERVE);
+        }
+    }
+
+    /**
+     * Notes the interest of buyers 0 to count - 1 in a lot.
+     */
+    static void noteInterest(AuctionHouse house, int count, int lotNumber) {
+        for (int i = 0; i < count; i++) {
+            house.noteInterest(buyerName(i), lotNumber);
+        }
+    }
+}
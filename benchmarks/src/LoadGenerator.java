@@ -0,0 +1,146 @@
+package auctionhouse;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a house through a whole sale day, from a seeded {@link Workload}
+ * or a recorded {@link Trace}, and reports latency percentiles.
+ *
+ * Operations run one after another on one thread, in trace order. When
+ * paced, each operation waits until it is due and its latency is counted
+ * from that time, so time spent queued behind a slow operation counts
+ * too. At maximum speed operations run back to back and latency is the
+ * time the call took.
+ *
+ * Usage: LoadGenerator [--replay=FILE] [--record=FILE] [--speed=N|max]
+ * [--shards=N] [--distributions] [workload options], where the workload
+ * options are --seed, --sellers, --buyers, --lots, --browses, --pageSize,
+ * --interestsPerBuyer, --hotLots, --hotInterestShare, --bids,
+ * --hotBidShare, --incrementPence, --rate and --stormRate, each as
+ * --name=value. Without --replay the workload is generated; --record
+ * saves the trace that was run.
+ */
+public final class LoadGenerator {
+
+    private static final long SPIN_NANOS = 50_000;
+
+    private LoadGenerator() {
+    }
+
+    /**
+     * Runs a trace on a house.
+     *
+     * @param  speed  how many times faster than recorded to run, or
+     *                infinity for as fast as possible
+     */
+    public static LoadReport run(Trace trace, AuctionHouse house, double speed) {
+        boolean paced = !Double.isInfinite(speed);
+        if (paced && !(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive");
+        }
+        LoadReport report = new LoadReport();
+        long start = System.nanoTime();
+        for (TraceEntry entry : trace.getEntries()) {
+            long begin;
+            if (paced) {
+                begin = start + (long) (entry.getOffsetNanos() / speed);
+                waitUntil(begin);
+            } else {
+                begin = System.nanoTime();
+            }
+            Status status;
+            try {
+                status = entry.applyTo(house);
+            } catch (RuntimeException e) {
+                status = Status.error(Status.ErrorCode.OTHER, e.toString());
+            }
+            report.record(entry.getOperation(), System.nanoTime() - begin, status);
+        }
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /*
+     * Sleeps until shortly before the deadline, then spins.
+     */
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Workload workload = new Workload();
+        Path replay = null;
+        Path record = null;
+        double speed = 1.0;
+        int shards = 0;
+        boolean distributions = false;
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? "" : arg.substring(eq + 1);
+            try {
+                switch (name) {
+                case "--replay": replay = Paths.get(value); break;
+                case "--record": record = Paths.get(value); break;
+                case "--speed":
+                    speed = value.equals("max") ? Double.POSITIVE_INFINITY : Double.parseDouble(value);
+                    break;
+                case "--shards": shards = Integer.parseInt(value); break;
+                case "--distributions": distributions = true; break;
+                case "--seed": workload.setSeed(Long.parseLong(value)); break;
+                case "--sellers": workload.setSellers(Integer.parseInt(value)); break;
+                case "--buyers": workload.setBuyers(Integer.parseInt(value)); break;
+                case "--lots": workload.setLots(Integer.parseInt(value)); break;
+                case "--browses": workload.setBrowses(Integer.parseInt(value)); break;
+                case "--pageSize": workload.setPageSize(Integer.parseInt(value)); break;
+                case "--interestsPerBuyer": workload.setInterestsPerBuyer(Integer.parseInt(value)); break;
+                case "--hotLots": workload.setHotLots(Integer.parseInt(value)); break;
+                case "--hotInterestShare": workload.setHotInterestShare(Double.parseDouble(value)); break;
+                case "--bids": workload.setBids(Integer.parseInt(value)); break;
+                case "--hotBidShare": workload.setHotBidShare(Double.parseDouble(value)); break;
+                case "--incrementPence": workload.setIncrementPence(Long.parseLong(value)); break;
+                case "--rate": workload.setRate(Double.parseDouble(value)); break;
+                case "--stormRate": workload.setStormRate(Double.parseDouble(value)); break;
+                default:
+                    System.err.println("Unrecognised argument " + arg);
+                    return;
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Bad value in " + arg);
+                return;
+            }
+        }
+
+        Trace trace = replay != null ? Trace.read(replay) : workload.generate();
+        if (record != null) {
+            trace.write(record);
+        }
+        System.out.printf("%d operations over %.3f s as recorded, at %s%n",
+                trace.size(), trace.getDurationNanos() / 1e9,
+                Double.isInfinite(speed) ? "maximum speed" : speed + "x");
+
+        LoadReport report;
+        if (shards > 0) {
+            ShardedAuctionHouse house = new ShardedAuctionHouse(Houses.newParameters(), shards);
+            try {
+                report = run(trace, house, speed);
+            } finally {
+                house.close();
+            }
+        } else {
+            report = run(trace, new AuctionHouseImp(Houses.newParameters()), speed);
+        }
+        report.print(System.out, distributions);
+    }
+}
@@ -0,0 +1,97 @@
+package auctionhouse;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latencies and error counts of a load run, per operation and overall.
+ * Latencies are kept in nanoseconds, to three significant digits, and
+ * reported in microseconds.
+ */
+public class LoadReport {
+
+    private static final long HIGHEST_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    private final Map<String, Histogram> latencies = new TreeMap<String, Histogram>();
+    private final Map<String, long[]> errors = new TreeMap<String, long[]>();
+    private final Histogram all = new Histogram(HIGHEST_NANOS, 3);
+    private long elapsedNanos;
+
+    public void record(String operation, long latencyNanos, Status status) {
+        Histogram histogram = latencies.get(operation);
+        if (histogram == null) {
+            histogram = new Histogram(HIGHEST_NANOS, 3);
+            latencies.put(operation, histogram);
+            errors.put(operation, new long[1]);
+        }
+        long value = Math.min(Math.max(latencyNanos, 0), HIGHEST_NANOS);
+        histogram.recordValue(value);
+        all.recordValue(value);
+        if (status.kind == Status.Kind.ERROR) {
+            errors.get(operation)[0]++;
+        }
+    }
+
+    public Histogram getLatencies(String operation) {
+        return latencies.get(operation);
+    }
+
+    public Histogram getAllLatencies() {
+        return all;
+    }
+
+    public long getErrorCount(String operation) {
+        long[] count = errors.get(operation);
+        return count == null ? 0 : count[0];
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Prints a table of percentiles per operation and, if asked, the full
+     * percentile distribution of every operation.
+     */
+    public void print(PrintStream out, boolean distributions) {
+        out.printf("%-16s %10s %8s %10s %10s %10s %10s%n",
+                "operation", "count", "errors", "p50 us", "p99 us", "p99.9 us", "max us");
+        for (Map.Entry<String, Histogram> e : latencies.entrySet()) {
+            printLine(out, e.getKey(), e.getValue(), getErrorCount(e.getKey()));
+        }
+        long totalErrors = 0;
+        for (long[] count : errors.values()) {
+            totalErrors += count[0];
+        }
+        printLine(out, "ALL", all, totalErrors);
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%d operations in %.3f s, %.0f per second%n",
+                all.getTotalCount(), seconds, seconds > 0 ? all.getTotalCount() / seconds : 0.0);
+
+        if (distributions) {
+            for (Map.Entry<String, Histogram> e : latencies.entrySet()) {
+                out.println();
+                out.println(e.getKey() + " (us)");
+                e.getValue().outputPercentileDistribution(out, NANOS_PER_MICRO);
+            }
+        }
+    }
+
+    private static void printLine(PrintStream out, String operation, Histogram h, long errorCount) {
+        out.printf("%-16s %10d %8d %10.1f %10.1f %10.1f %10.1f%n",
+                operation, h.getTotalCount(), errorCount,
+                h.getValueAtPercentile(50.0) / NANOS_PER_MICRO,
+                h.getValueAtPercentile(99.0) / NANOS_PER_MICRO,
+                h.getValueAtPercentile(99.9) / NANOS_PER_MICRO,
+                h.getMaxValue() / NANOS_PER_MICRO);
+    }
+}
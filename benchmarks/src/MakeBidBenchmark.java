@@ -0,0 +1,113 @@
+package auctionhouse;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bidding from several threads at once on {@code lots} open auctions;
+ * with one lot every thread contends for the same leading bid.
+ *
+ * Rising bids come from one counter per lot, so most are accepted, and a
+ * bid that loses a race to a higher one is rejected as too low. Making
+ * the bid's Money is part of each operation. makeBidTooLow measures the
+ * reject path alone, against the opening bid every lot starts with.
+ * With {@code metered} the bids go through a {@link MeteredAuctionHouse},
+ * to measure what recording metrics costs. {@code logLevel} is the level
+ * of the house's logger for the trial: at FINE every bid builds its log
+ * messages, which the default console handler then drops.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MakeBidBenchmark {
+
+    private static final int BIDDERS = 64;
+    private static final long STEP = 200;
+
+    @State(Scope.Benchmark)
+    public static class OpenAuctions {
+
+        @Param({ "1", "16", "1024" })
+        public int lots;
+
+        @Param({ "false", "true" })
+        public boolean metered;
+
+        @Param({ "OFF", "INFO", "FINE" })
+        public String logLevel;
+
+        AuctionHouse house;
+        AtomicLongArray prices;
+        AtomicInteger bidders = new AtomicInteger();
+        Money tooLow = new Money("0.01");
+        Logger logger = Logger.getLogger("auctionhouse");
+        java.util.logging.Level savedLevel;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            savedLevel = logger.getLevel();
+            logger.setLevel(java.util.logging.Level.parse(logLevel));
+            AuctionHouseImp imp = Houses.newHouse();
+            house = metered ? new MeteredAuctionHouse(imp, new AuctionHouseMetrics("benchmark")) : imp;
+            Houses.addLots(house, lots);
+            Houses.registerBuyers(house, BIDDERS);
+            prices = new AtomicLongArray(lots + 1);
+            for (int lot = 1; lot <= lots; lot++) {
+                Houses.noteInterest(house, BIDDERS, lot);
+                house.openAuction("Auctioneer" + lot, "@Auctioneer" + lot, lot);
+                house.makeBid(Houses.buyerName(0), lot, Money.ofPence(10000));
+                prices.set(lot, 10000);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void restoreLogging() {
+            logger.setLevel(savedLevel);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Bidder {
+
+        String name;
+
+        @Setup(Level.Trial)
+        public void setup(OpenAuctions auctions) {
+            name = Houses.buyerName(auctions.bidders.getAndIncrement() % BIDDERS);
+        }
+    }
+
+    @Benchmark
+    public Status makeBid(OpenAuctions auctions, Bidder bidder) {
+        int lot = ThreadLocalRandom.current().nextInt(auctions.lots) + 1;
+        Money amount = Money.ofPence(auctions.prices.addAndGet(lot, STEP));
+        return auctions.house.makeBid(bidder.name, lot, amount);
+    }
+
+    @Benchmark
+    public Status makeBidTooLow(OpenAuctions auctions, Bidder bidder) {
+        int lot = ThreadLocalRandom.current().nextInt(auctions.lots) + 1;
+        return auctions.house.makeBid(bidder.name, lot, auctions.tooLow);
+    }
+}
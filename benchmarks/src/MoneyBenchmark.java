@@ -0,0 +1,78 @@
+package auctionhouse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Money arithmetic, comparison and conversion, for small and large amounts.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoneyBenchmark {
+
+    @Param({ "99", "123456789" })
+    public long pence;
+
+    private Money amount;
+    private Money other;
+    private Money increment;
+    private String pounds;
+
+    @Setup
+    public void setup() {
+        amount = Money.ofPence(pence);
+        other = Money.ofPence(pence / 3 + 1);
+        increment = new Money("1.00");
+        pounds = amount.toString();
+    }
+
+    @Benchmark
+    public Money add() {
+        return amount.add(other);
+    }
+
+    @Benchmark
+    public Money subtract() {
+        return amount.subtract(other);
+    }
+
+    @Benchmark
+    public Money addPercent() {
+        return amount.addPercent(15.0);
+    }
+
+    @Benchmark
+    public int compareTo() {
+        return amount.compareTo(other);
+    }
+
+    @Benchmark
+    public boolean exceedsBy() {
+        return amount.exceedsBy(other, increment);
+    }
+
+    @Benchmark
+    public String format() {
+        return amount.toString();
+    }
+
+    @Benchmark
+    public Money parse() {
+        return new Money(pounds);
+    }
+}
@@ -0,0 +1,61 @@
+package auctionhouse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Noting interest in a catalogue of {@code lots} lots.
+ *
+ * Interest can be noted only once per buyer and lot, so each call takes
+ * the next unused pair, lot by lot. The house is rebuilt each iteration
+ * with enough buyers for {@link #PAIRS} calls; an iteration that ran past
+ * that would start measuring the already-interested error instead.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NoteInterestBenchmark {
+
+    private static final int PAIRS = 4000000;
+
+    @Param({ "1000", "100000", "1000000" })
+    public int lots;
+
+    private AuctionHouseImp house;
+    private String[] buyers;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        house = Houses.newHouse();
+        Houses.addLots(house, lots);
+        int count = Math.max(1, PAIRS / lots);
+        Houses.registerBuyers(house, count);
+        buyers = new String[count];
+        for (int i = 0; i < count; i++) {
+            buyers[i] = Houses.buyerName(i);
+        }
+        next = 0;
+    }
+
+    @Benchmark
+    public Status noteInterest() {
+        int pair = next++;
+        return house.noteInterest(buyers[(pair / lots) % buyers.length], pair % lots + 1);
+    }
+}
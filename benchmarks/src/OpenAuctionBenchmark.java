@@ -0,0 +1,60 @@
+package auctionhouse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Opening an auction for a lot with {@code buyers} registered and
+ * interested buyers, all of whom are told it opened.
+ *
+ * Each auction is closed, unsold, after the call, so the same lot can be
+ * opened again. The close is outside the measurement.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OpenAuctionBenchmark {
+
+    private static final String AUCTIONEER = "Auctioneer";
+    private static final String AUCTIONEER_ADDRESS = "@Auctioneer";
+    private static final int LOT = 1;
+
+    @Param({ "10", "1000", "100000" })
+    public int buyers;
+
+    private AuctionHouseImp house;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        house = Houses.newHouse();
+        Houses.addLots(house, 1);
+        Houses.registerBuyers(house, buyers);
+        Houses.noteInterest(house, buyers, LOT);
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() {
+        house.closeAuction(AUCTIONEER, LOT);
+    }
+
+    @Benchmark
+    public Status openAuction() {
+        return house.openAuction(AUCTIONEER, AUCTIONEER_ADDRESS, LOT);
+    }
+}
@@ -0,0 +1,107 @@
+package auctionhouse;
+
+import java.util.List;
+
+/**
+ * Decorator that records every call made on a house, with the time since
+ * recording began, so the traffic can be replayed by the
+ * {@link LoadGenerator}. Calls from several threads are recorded in the
+ * order they arrive.
+ */
+public class RecordingAuctionHouse implements AuctionHouse {
+
+    private final AuctionHouse house;
+    private final Trace trace = new Trace();
+    private final long start = System.nanoTime();
+
+    public RecordingAuctionHouse(AuctionHouse house) {
+        this.house = house;
+    }
+
+    /**
+     * Returns the trace recorded so far. Do not call while calls are
+     * still being made on the house.
+     */
+    public Trace getTrace() {
+        return trace;
+    }
+
+    private long now() {
+        return System.nanoTime() - start;
+    }
+
+    private Status record(Command command) {
+        synchronized (trace) {
+            trace.add(TraceEntry.command(now(), command));
+        }
+        return command.applyTo(house);
+    }
+
+    private void record(TraceEntry entry) {
+        synchronized (trace) {
+            trace.add(entry);
+        }
+    }
+
+    public Status registerBuyer(String name, String address, String bankAccount, String bankAuthCode) {
+        return record(Command.registerBuyer(name, address, bankAccount, bankAuthCode));
+    }
+
+    public Status registerSeller(String name, String address, String bankAccount) {
+        return record(Command.registerSeller(name, address, bankAccount));
+    }
+
+    public Status addLot(String sellerName, int number, String description, Money reservePrice) {
+        return record(Command.addLot(sellerName, number, description, reservePrice));
+    }
+
+    public List<CatalogueEntry> viewCatalogue() {
+        record(TraceEntry.viewCatalogue(now()));
+        return house.viewCatalogue();
+    }
+
+    public List<CatalogueEntry> viewCatalogue(int fromLot, int limit) {
+        record(TraceEntry.viewPage(now(), fromLot, limit));
+        return house.viewCatalogue(fromLot, limit);
+    }
+
+    public List<CatalogueEntry> viewCatalogueRange(int lo, int hi) {
+        record(TraceEntry.viewRange(now(), lo, hi));
+        return house.viewCatalogueRange(lo, hi);
+    }
+
+    public CatalogueChanges viewCatalogueSince(long version) {
+        record(TraceEntry.viewSince(now(), version));
+        return house.viewCatalogueSince(version);
+    }
+
+    public Status noteInterest(String buyerName, int lotNumber) {
+        return record(Command.noteInterest(buyerName, lotNumber));
+    }
+
+    public Status openAuction(String auctioneerName, String auctioneerAddress, int lotNumber) {
+        return record(Command.openAuction(auctioneerName, auctioneerAddress, lotNumber));
+    }
+
+    public Status makeBid(String buyerName, int lotNumber, Money bid) {
+        return record(Command.makeBid(buyerName, lotNumber, bid));
+    }
+
+    public Status closeAuction(String auctioneerName, int lotNumber) {
+        return record(Command.closeAuction(auctioneerName, lotNumber));
+    }
+
+    /**
+     * Records each command at the batch's arrival time, then submits the
+     * batch as a whole.
+     */
+    public List<Status> submit(List<Command> commands) {
+        synchronized (trace) {
+            long offset = now();
+            for (Command command : commands) {
+                trace.add(TraceEntry.command(offset, command));
+            }
+        }
+        return house.submit(commands);
+    }
+}
@@ -0,0 +1,56 @@
+package auctionhouse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Registering buyers and sellers with a house that already has
+ * {@code registered} of each. Every call registers a new name; building
+ * that name is part of each operation and of its allocation rate.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RegistrationBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    public int registered;
+
+    private AuctionHouseImp house;
+    private long next;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        house = Houses.newHouse();
+        Houses.registerBuyers(house, registered);
+        Houses.registerSellers(house, registered);
+        next = registered;
+    }
+
+    @Benchmark
+    public Status registerBuyer() {
+        String name = Houses.buyerName(next++);
+        return house.registerBuyer(name, name, name, name);
+    }
+
+    @Benchmark
+    public Status registerSeller() {
+        String name = Houses.sellerName(next++);
+        return house.registerSeller(name, name, name);
+    }
+}
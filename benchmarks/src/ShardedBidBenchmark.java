@@ -0,0 +1,114 @@
+package auctionhouse;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How bidding on a {@link ShardedAuctionHouse} scales with {@code shards}
+ * and with the number of calling threads, one benchmark per thread count.
+ *
+ * Bids go to a random one of {@link #LOTS} open auctions, spread evenly
+ * over the shards, and rise from one counter per lot as in
+ * {@link MakeBidBenchmark}. Each call waits for its shard's event loop, so
+ * a thread has one bid in flight at a time and throughput grows with the
+ * threads only while there are idle shards, and cores, to take them.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShardedBidBenchmark {
+
+    private static final int LOTS = 1024;
+    private static final int BIDDERS = 64;
+    private static final long STEP = 200;
+
+    @State(Scope.Benchmark)
+    public static class OpenAuctions {
+
+        @Param({ "1", "2", "4", "8" })
+        public int shards;
+
+        ShardedAuctionHouse house;
+        AtomicLongArray prices;
+        AtomicInteger bidders = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setup() {
+            house = new ShardedAuctionHouse(Houses.newParameters(), shards);
+            house.registerSeller(Houses.SELLER, "@" + Houses.SELLER, Houses.SELLER + " A/C");
+            Houses.addLots(house, LOTS);
+            Houses.registerBuyers(house, BIDDERS);
+            prices = new AtomicLongArray(LOTS + 1);
+            for (int lot = 1; lot <= LOTS; lot++) {
+                Houses.noteInterest(house, BIDDERS, lot);
+                house.openAuction("Auctioneer" + lot, "@Auctioneer" + lot, lot);
+                prices.set(lot, 10000);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            house.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Bidder {
+
+        String name;
+
+        @Setup(Level.Trial)
+        public void setup(OpenAuctions auctions) {
+            name = Houses.buyerName(auctions.bidders.getAndIncrement() % BIDDERS);
+        }
+    }
+
+    private static Status bid(OpenAuctions auctions, Bidder bidder) {
+        int lot = ThreadLocalRandom.current().nextInt(LOTS) + 1;
+        Money amount = Money.ofPence(auctions.prices.addAndGet(lot, STEP));
+        return auctions.house.makeBid(bidder.name, lot, amount);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Status makeBid1(OpenAuctions auctions, Bidder bidder) {
+        return bid(auctions, bidder);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public Status makeBid2(OpenAuctions auctions, Bidder bidder) {
+        return bid(auctions, bidder);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Status makeBid4(OpenAuctions auctions, Bidder bidder) {
+        return bid(auctions, bidder);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Status makeBid8(OpenAuctions auctions, Bidder bidder) {
+        return bid(auctions, bidder);
+    }
+}
@@ -0,0 +1,20 @@
+package auctionhouse;
+
+/**
+ * Messaging service that drops every message, so benchmarks measure the
+ * house rather than a mock's bookkeeping.
+ */
+public class SilentMessagingService implements MessagingService {
+
+    public void auctionOpened(String address, int lotNumber) {
+    }
+
+    public void bidAccepted(String address, int lotNumber, Money amount) {
+    }
+
+    public void lotSold(String address, int lotNumber) {
+    }
+
+    public void lotUnsold(String address, int lotNumber) {
+    }
+}
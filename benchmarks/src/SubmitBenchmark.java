@@ -0,0 +1,111 @@
+package auctionhouse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code batchSize} bids on {@link #LOTS} open auctions, made through one
+ * {@link AuctionHouse#submit} call or one command at a time, with the
+ * house journalling to a BATCHED journal or not journalling at all.
+ *
+ * Every call runs the same commands, so scores are per batch and the two
+ * ways compare directly. With the journal on, each bid made on its own
+ * waits for its record to be forced; a submitted batch waits once.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SubmitBenchmark {
+
+    private static final int LOTS = 16;
+    private static final int BIDDERS = 16;
+    private static final long STEP = 200;
+
+    @Param({ "16", "256" })
+    public int batchSize;
+
+    @Param({ "false", "true" })
+    public boolean journal;
+
+    private AuctionHouseImp house;
+    private CommandJournal commandJournal;
+    private Path directory;
+    private long price = 10000;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        house = Houses.newHouse();
+        Houses.addLots(house, LOTS);
+        Houses.registerBuyers(house, BIDDERS);
+        for (int lot = 1; lot <= LOTS; lot++) {
+            Houses.noteInterest(house, BIDDERS, lot);
+            house.openAuction("Auctioneer" + lot, "@Auctioneer" + lot, lot);
+        }
+        if (journal) {
+            directory = Files.createTempDirectory("submit-benchmark");
+            commandJournal = new CommandJournal(directory, 1 << 26, CommandJournal.Durability.BATCHED);
+            house.setJournal(commandJournal);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        if (commandJournal != null) {
+            commandJournal.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /*
+     * The next batch: rising bids, spread over the lots and bidders.
+     */
+    private List<Command> bids() {
+        List<Command> commands = new ArrayList<Command>(batchSize);
+        for (int i = 0; i < batchSize; i++, next++) {
+            price += STEP;
+            commands.add(Command.makeBid(Houses.buyerName(next % BIDDERS), next % LOTS + 1, Money.ofPence(price)));
+        }
+        return commands;
+    }
+
+    @Benchmark
+    public List<Status> submitBatch() {
+        return house.submit(bids());
+    }
+
+    @Benchmark
+    public List<Status> submitOneByOne() {
+        List<Command> commands = bids();
+        List<Status> statuses = new ArrayList<Status>(commands.size());
+        for (Command command : commands) {
+            statuses.add(command.applyTo(house));
+        }
+        return statuses;
+    }
+}
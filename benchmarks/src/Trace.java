@@ -0,0 +1,206 @@
+package auctionhouse;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sequence of timed operations on a house, as generated by a
+ * {@link Workload} or recorded by a {@link RecordingAuctionHouse}.
+ *
+ * Traces are stored as text, one entry per line: the offset in
+ * nanoseconds, the operation and its arguments, separated by tabs. Money
+ * is in pence. Tabs, newlines and backslashes inside strings are escaped
+ * with a backslash.
+ */
+public final class Trace {
+
+    private final List<TraceEntry> entries = new ArrayList<TraceEntry>();
+
+    public void add(TraceEntry entry) {
+        entries.add(entry);
+    }
+
+    public List<TraceEntry> getEntries() {
+        return entries;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the offset of the last entry.
+     */
+    public long getDurationNanos() {
+        return entries.isEmpty() ? 0 : entries.get(entries.size() - 1).getOffsetNanos();
+    }
+
+    public void write(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder();
+            for (TraceEntry entry : entries) {
+                line.setLength(0);
+                format(entry, line);
+                out.write(line.toString());
+                out.newLine();
+            }
+        }
+    }
+
+    public static Trace read(Path file) throws IOException {
+        Trace trace = new Trace();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    trace.add(parse(line.split("\t", -1)));
+                } catch (RuntimeException e) {
+                    throw new IOException(file + " line " + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return trace;
+    }
+
+    private static void format(TraceEntry entry, StringBuilder line) {
+        line.append(entry.getOffsetNanos()).append('\t').append(entry.getOperation());
+        Command c = entry.getCommand();
+        if (c == null) {
+            line.append('\t').append(entry.getFirst()).append('\t').append(entry.getSecond());
+            return;
+        }
+        switch (c.getKind()) {
+        case REGISTER_BUYER:
+            field(line, c.getName());
+            field(line, c.getAddress());
+            field(line, c.getBankAccount());
+            field(line, c.getBankAuthCode());
+            break;
+        case REGISTER_SELLER:
+            field(line, c.getName());
+            field(line, c.getAddress());
+            field(line, c.getBankAccount());
+            break;
+        case ADD_LOT:
+            field(line, c.getName());
+            line.append('\t').append(c.getLotNumber());
+            field(line, c.getDescription());
+            line.append('\t').append(c.getAmount().getPence());
+            break;
+        case OPEN_AUCTION:
+            field(line, c.getName());
+            field(line, c.getAddress());
+            line.append('\t').append(c.getLotNumber());
+            break;
+        case MAKE_BID:
+            field(line, c.getName());
+            line.append('\t').append(c.getLotNumber());
+            line.append('\t').append(c.getAmount().getPence());
+            break;
+        default: // NOTE_INTEREST, CLOSE_AUCTION
+            field(line, c.getName());
+            line.append('\t').append(c.getLotNumber());
+            break;
+        }
+    }
+
+    private static TraceEntry parse(String[] f) {
+        long offset = Long.parseLong(f[0]);
+        String operation = f[1];
+        switch (operation) {
+        case "REGISTER_BUYER":
+            arity(f, 6);
+            return TraceEntry.command(offset, Command.registerBuyer(text(f[2]), text(f[3]), text(f[4]), text(f[5])));
+        case "REGISTER_SELLER":
+            arity(f, 5);
+            return TraceEntry.command(offset, Command.registerSeller(text(f[2]), text(f[3]), text(f[4])));
+        case "ADD_LOT":
+            arity(f, 6);
+            return TraceEntry.command(offset, Command.addLot(text(f[2]), Integer.parseInt(f[3]), text(f[4]),
+                    Money.ofPence(Long.parseLong(f[5]))));
+        case "NOTE_INTEREST":
+            arity(f, 4);
+            return TraceEntry.command(offset, Command.noteInterest(text(f[2]), Integer.parseInt(f[3])));
+        case "OPEN_AUCTION":
+            arity(f, 5);
+            return TraceEntry.command(offset, Command.openAuction(text(f[2]), text(f[3]), Integer.parseInt(f[4])));
+        case "MAKE_BID":
+            arity(f, 5);
+            return TraceEntry.command(offset, Command.makeBid(text(f[2]), Integer.parseInt(f[3]),
+                    Money.ofPence(Long.parseLong(f[4]))));
+        case "CLOSE_AUCTION":
+            arity(f, 4);
+            return TraceEntry.command(offset, Command.closeAuction(text(f[2]), Integer.parseInt(f[3])));
+        case "VIEW_CATALOGUE":
+            arity(f, 4);
+            return TraceEntry.viewCatalogue(offset);
+        case "VIEW_PAGE":
+            arity(f, 4);
+            return TraceEntry.viewPage(offset, Integer.parseInt(f[2]), Integer.parseInt(f[3]));
+        case "VIEW_RANGE":
+            arity(f, 4);
+            return TraceEntry.viewRange(offset, Integer.parseInt(f[2]), Integer.parseInt(f[3]));
+        case "VIEW_SINCE":
+            arity(f, 4);
+            return TraceEntry.viewSince(offset, Long.parseLong(f[2]));
+        default:
+            throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private static void arity(String[] fields, int count) {
+        if (fields.length != count) {
+            throw new IllegalArgumentException(fields[1] + " needs " + count + " fields, not " + fields.length);
+        }
+    }
+
+    private static void field(StringBuilder line, String s) {
+        line.append('\t');
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+            case '\t':
+                line.append("\\t");
+                break;
+            case '\n':
+                line.append("\\n");
+                break;
+            case '\r':
+                line.append("\\r");
+                break;
+            case '\\':
+                line.append("\\\\");
+                break;
+            default:
+                line.append(ch);
+            }
+        }
+    }
+
+    private static String text(String field) {
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder s = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char ch = field.charAt(i);
+            if (ch == '\\' && i + 1 < field.length()) {
+                char next = field.charAt(++i);
+                s.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                s.append(ch);
+            }
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package auctionhouse;
+
+/**
+ * One operation of a load trace, due a given time after the trace starts:
+ * either a {@link Command} or a view of the catalogue.
+ */
+public final class TraceEntry {
+
+    public static enum View {
+        CATALOGUE,  // the whole catalogue
+        PAGE,       // viewCatalogue(fromLot, limit)
+        RANGE,      // viewCatalogueRange(lo, hi)
+        SINCE       // viewCatalogueSince(version)
+    }
+
+    private final long offsetNanos;
+    private final Command command;   // null for a view
+    private final View view;         // null for a command
+    private final long first;        // view arguments
+    private final long second;
+
+    private TraceEntry(long offsetNanos, Command command, View view, long first, long second) {
+        this.offsetNanos = offsetNanos;
+        this.command = command;
+        this.view = view;
+        this.first = first;
+        this.second = second;
+    }
+
+    public static TraceEntry command(long offsetNanos, Command command) {
+        return new TraceEntry(offsetNanos, command, null, 0, 0);
+    }
+
+    public static TraceEntry viewCatalogue(long offsetNanos) {
+        return new TraceEntry(offsetNanos, null, View.CATALOGUE, 0, 0);
+    }
+
+    public static TraceEntry viewPage(long offsetNanos, int fromLot, int limit) {
+        return new TraceEntry(offsetNanos, null, View.PAGE, fromLot, limit);
+    }
+
+    public static TraceEntry viewRange(long offsetNanos, int lo, int hi) {
+        return new TraceEntry(offsetNanos, null, View.RANGE, lo, hi);
+    }
+
+    public static TraceEntry viewSince(long offsetNanos, long version) {
+        return new TraceEntry(offsetNanos, null, View.SINCE, version, 0);
+    }
+
+    /**
+     * Performs the operation on a house. A view's status is OK.
+     */
+    public Status applyTo(AuctionHouse house) {
+        if (command != null) {
+            return command.applyTo(house);
+        }
+        switch (view) {
+        case CATALOGUE:
+            house.viewCatalogue();
+            break;
+        case PAGE:
+            house.viewCatalogue((int) first, (int) second);
+            break;
+        case RANGE:
+            house.viewCatalogueRange((int) first, (int) second);
+            break;
+        default:
+            house.viewCatalogueSince(first);
+            break;
+        }
+        return Status.OK();
+    }
+
+    /**
+     * Returns the operation's name, for reports: the command kind, or
+     * VIEW_ and the kind of view.
+     */
+    public String getOperation() {
+        return command != null ? command.getKind().name() : "VIEW_" + view.name();
+    }
+
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    public Command getCommand() {
+        return command;
+    }
+
+    public View getView() {
+        return view;
+    }
+
+    public long getFirst() {
+        return first;
+    }
+
+    public long getSecond() {
+        return second;
+    }
+
+    public String toString() {
+        return "+" + offsetNanos + "ns " + (command != null ? command.toString() : getOperation() + " " + first + " " + second);
+    }
+}
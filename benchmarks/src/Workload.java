@@ -0,0 +1,288 @@
+package auctionhouse;
+
+import java.util.SplittableRandom;
+
+/**
+ * Model of a sale day, turned into a {@link Trace} by {@link #generate}.
+ *
+ * The day runs in phases: sellers and buyers register in bulk, the
+ * catalogue is filled and browsed page by page, interest spikes with a
+ * share of it on a few hot lots, every lot with interest opens, a bid
+ * storm hits mostly the hot lots, and finally every auction closes.
+ * Operations arrive at random (exponential) intervals: at {@code rate}
+ * per second, or {@code stormRate} during the interest spike and bid
+ * storm.
+ *
+ * Everything random comes from one generator seeded with {@code seed},
+ * so a model always gives the same trace.
+ */
+public class Workload {
+
+    private long seed = 42;
+    private int sellers = 100;
+    private int buyers = 10000;
+    private int lots = 10000;
+    private int browses = 20000;
+    private int pageSize = 50;
+    private int interestsPerBuyer = 5;
+    private int hotLots = 10;
+    private double hotInterestShare = 0.5;
+    private int bids = 200000;
+    private double hotBidShare = 0.9;
+    private long incrementPence = 100;
+    private double rate = 20000;
+    private double stormRate = 200000;
+
+    private SplittableRandom random;
+    private Trace trace;
+    private long offsetNanos;
+
+    /**
+     * Returns the sale day's trace. Lots 1 to hotLots are the hot lots.
+     */
+    public Trace generate() {
+        if (lots <= 0 || buyers <= 0 || sellers <= 0) {
+            throw new IllegalArgumentException("A sale day needs sellers, buyers and lots");
+        }
+        random = new SplittableRandom(seed);
+        trace = new Trace();
+        offsetNanos = 0;
+
+        // Bulk registration
+        for (int s = 0; s < sellers; s++) {
+            String name = "Seller" + s;
+            add(rate, Command.registerSeller(name, "@" + name, name + " A/C"));
+        }
+        for (int b = 0; b < buyers; b++) {
+            String name = "Buyer" + b;
+            add(rate, Command.registerBuyer(name, "@" + name, name + " A/C", name + "-auth"));
+        }
+
+        // Catalogue
+        long[] price = new long[lots + 1];
+        for (int lot = 1; lot <= lots; lot++) {
+            long reserve = 100 * (10 + random.nextInt(491));   // 10.00 to 500.00
+            price[lot] = reserve / 2 + random.nextLong(reserve / 2);
+            add(rate, Command.addLot("Seller" + random.nextInt(sellers), lot, "Lot " + lot, Money.ofPence(reserve)));
+        }
+        for (int i = 0; i < browses; i++) {
+            next(rate);
+            trace.add(TraceEntry.viewPage(offsetNanos, 1 + random.nextInt(lots), pageSize));
+        }
+
+        // Interest spike, in random order
+        int hot = Math.min(hotLots, lots);
+        int[] pairBuyer = new int[buyers * interestsPerBuyer];
+        int[] pairLot = new int[pairBuyer.length];
+        int pairs = 0;
+        int[] interestCount = new int[lots + 1];
+        for (int b = 0; b < buyers; b++) {
+            int first = pairs;
+            for (int k = 0; k < interestsPerBuyer; k++) {
+                int lot = pickLot(hot, hotInterestShare);
+                boolean repeat = false;
+                for (int p = first; p < pairs; p++) {
+                    repeat |= pairLot[p] == lot;
+                }
+                if (!repeat) {
+                    pairBuyer[pairs] = b;
+                    pairLot[pairs] = lot;
+                    interestCount[lot]++;
+                    pairs++;
+                }
+            }
+        }
+        int[][] interested = new int[lots + 1][];
+        for (int lot = 1; lot <= lots; lot++) {
+            interested[lot] = new int[interestCount[lot]];
+            interestCount[lot] = 0;
+        }
+        for (int p = 0; p < pairs; p++) {
+            interested[pairLot[p]][interestCount[pairLot[p]]++] = pairBuyer[p];
+        }
+        for (int p = pairs - 1; p > 0; p--) {
+            int q = random.nextInt(p + 1);
+            int b = pairBuyer[p];
+            int lot = pairLot[p];
+            pairBuyer[p] = pairBuyer[q];
+            pairLot[p] = pairLot[q];
+            pairBuyer[q] = b;
+            pairLot[q] = lot;
+        }
+        for (int p = 0; p < pairs; p++) {
+            add(stormRate, Command.noteInterest("Buyer" + pairBuyer[p], pairLot[p]));
+        }
+
+        // Auctions open
+        for (int lot = 1; lot <= lots; lot++) {
+            if (interested[lot].length > 0) {
+                add(rate, Command.openAuction("Auctioneer" + lot, "@Auctioneer" + lot, lot));
+            }
+        }
+
+        // Bid storm
+        for (int i = 0; i < bids; i++) {
+            int lot = pickLot(hot, hotBidShare);
+            if (interested[lot].length == 0) {
+                continue;
+            }
+            int b = interested[lot][random.nextInt(interested[lot].length)];
+            // Just over one to three increments, as a bid must beat the last by more than one
+            price[lot] += incrementPence * (1 + random.nextInt(3)) + 1;
+            add(stormRate, Command.makeBid("Buyer" + b, lot, Money.ofPence(price[lot])));
+        }
+
+        // Mass close
+        int[] order = new int[lots];
+        for (int i = 0; i < lots; i++) {
+            order[i] = i + 1;
+        }
+        for (int i = lots - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int lot = order[i];
+            order[i] = order[j];
+            order[j] = lot;
+        }
+        for (int lot : order) {
+            if (interested[lot].length > 0) {
+                add(rate, Command.closeAuction("Auctioneer" + lot, lot));
+            }
+        }
+
+        Trace result = trace;
+        trace = null;
+        random = null;
+        return result;
+    }
+
+    private int pickLot(int hot, double hotShare) {
+        if (hot > 0 && random.nextDouble() < hotShare) {
+            return 1 + random.nextInt(hot);
+        }
+        return 1 + random.nextInt(lots);
+    }
+
+    /*
+     * Moves the clock on by an exponential interval at the given rate.
+     */
+    private void next(double perSecond) {
+        offsetNanos += (long) (-Math.log(1.0 - random.nextDouble()) * 1e9 / perSecond);
+    }
+
+    private void add(double perSecond, Command command) {
+        next(perSecond);
+        trace.add(TraceEntry.command(offsetNanos, command));
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getSellers() {
+        return sellers;
+    }
+
+    public void setSellers(int sellers) {
+        this.sellers = sellers;
+    }
+
+    public int getBuyers() {
+        return buyers;
+    }
+
+    public void setBuyers(int buyers) {
+        this.buyers = buyers;
+    }
+
+    public int getLots() {
+        return lots;
+    }
+
+    public void setLots(int lots) {
+        this.lots = lots;
+    }
+
+    public int getBrowses() {
+        return browses;
+    }
+
+    public void setBrowses(int browses) {
+        this.browses = browses;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getInterestsPerBuyer() {
+        return interestsPerBuyer;
+    }
+
+    public void setInterestsPerBuyer(int interestsPerBuyer) {
+        this.interestsPerBuyer = interestsPerBuyer;
+    }
+
+    public int getHotLots() {
+        return hotLots;
+    }
+
+    public void setHotLots(int hotLots) {
+        this.hotLots = hotLots;
+    }
+
+    public double getHotInterestShare() {
+        return hotInterestShare;
+    }
+
+    public void setHotInterestShare(double hotInterestShare) {
+        this.hotInterestShare = hotInterestShare;
+    }
+
+    public int getBids() {
+        return bids;
+    }
+
+    public void setBids(int bids) {
+        this.bids = bids;
+    }
+
+    public double getHotBidShare() {
+        return hotBidShare;
+    }
+
+    public void setHotBidShare(double hotBidShare) {
+        this.hotBidShare = hotBidShare;
+    }
+
+    public long getIncrementPence() {
+        return incrementPence;
+    }
+
+    public void setIncrementPence(long incrementPence) {
+        this.incrementPence = incrementPence;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    public double getStormRate() {
+        return stormRate;
+    }
+
+    public void setStormRate(double stormRate) {
+        this.stormRate = stormRate;
+    }
+}
@@ -15,7 +15,12 @@ import org.junit.runners.Suite.SuiteClasses;
  *
  */
 @RunWith(Suite.class)
-@SuiteClasses({ MoneyTest.class, AuctionHouseTest.class })
+@SuiteClasses({ MoneyTest.class, AuctionHouseTest.class, AuctionHouseConcurrencyTest.class,
+        LotTableTest.class, AsyncMessagingServiceTest.class, PayoutAggregatorTest.class,
+        PaymentRecoverySchedulerTest.class, CommandJournalTest.class,
+        StateSnapshotTest.class, BinaryCodecTest.class,
+        CommandBatchTest.class, ShardedAuctionHouseTest.class, BidRingBufferTest.class,
+        MakeBidAllocationTest.class, AuctionHouseMetricsTest.class })
 public class AllTests {
 
     public static void main(String[] args) {
@@ -0,0 +1,405 @@
+package auctionhouse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * MessagingService that hands notifications to another MessagingService on
+ * background threads, so callers such as makeBid return without waiting for
+ * the messaging backend.
+ *
+ * Notifications are spread over a fixed number of lanes by recipient
+ * address. Each lane has a bounded queue and a single worker thread, so
+ * every recipient gets its notifications in the order they were sent, while
+ * different recipients are served in parallel. What happens when a lane's
+ * queue is full is set by the {@link Backpressure} policy.
+ *
+ * A batch notification is split by lane and each part is handed to the
+ * delegate as one batch call, so a delegate with a bulk-send path still
+ * gets to use it.
+ *
+ * {@link #flush} waits until everything sent so far has been delivered, for
+ * tests and orderly shutdown; {@link #close} flushes and stops the workers.
+ * Each lane is closed under the same lock its senders accept under, so a
+ * send racing close is either delivered before close returns or fails.
+ */
+public class AsyncMessagingService implements MessagingService, AutoCloseable {
+
+    private static Logger logger = Logger.getLogger("auctionhouse");
+
+    /**
+     * What a sender does when the queue for a recipient is full.
+     */
+    public static enum Backpressure {
+        BLOCK,   // wait for space, slowing the sender down to the backend's pace
+        DROP     // discard the notification and count it
+    }
+
+    private static enum Kind {
+        OPENED,
+        BID,
+        SOLD,
+        UNSOLD
+    }
+
+    private static final class Notification {
+        final Kind kind;
+        final String address;           // null for a batch
+        final List<String> addresses;   // null for a single address
+        final int lotNumber;
+        final Money amount;
+
+        Notification(Kind kind, String address, List<String> addresses, int lotNumber, Money amount) {
+            this.kind = kind;
+            this.address = address;
+            this.addresses = addresses;
+            this.lotNumber = lotNumber;
+            this.amount = amount;
+        }
+    }
+
+    private final class Lane implements Runnable {
+        final BlockingQueue<Notification> queue;
+        final AtomicLong accepted = new AtomicLong();
+        volatile long delivered = 0;
+        final Thread worker;
+        final Object space = new Object(); // BLOCK senders wait here for room
+        final AtomicInteger waitingSenders = new AtomicInteger();
+        volatile boolean closed = false;   // set under queue's lock
+        volatile boolean stopped = false;  // the worker has exited
+
+        Lane(int index, int capacity) {
+            queue = new ArrayBlockingQueue<Notification>(capacity);
+            worker = new Thread(this, "auctionhouse-messaging-" + index);
+            worker.setDaemon(true);
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    Notification n = queue.take();
+                    if (waitingSenders.get() > 0) {
+                        synchronized (space) {
+                            space.notifyAll();
+                        }
+                    }
+                    deliver(n);
+                    delivered = delivered + 1;
+                    if (flushers.get() > 0) {
+                        synchronized (this) {
+                            notifyAll();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // closed
+            } finally {
+                stopped = true;
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        // The worker notifies after each delivery while anyone flushes, and
+        // when it stops; flushers count themselves in before they check.
+        synchronized void awaitDelivered(long target) throws InterruptedException {
+            while (delivered < target && !stopped) {
+                wait();
+            }
+        }
+
+        // The worker notifies after each take while anyone waits, and close
+        // notifies too; senders count themselves in before they check.
+        void awaitSpace() throws InterruptedException {
+            waitingSenders.incrementAndGet();
+            try {
+                synchronized (space) {
+                    while (queue.remainingCapacity() == 0 && !closed) {
+                        space.wait();
+                    }
+                }
+            } finally {
+                waitingSenders.decrementAndGet();
+            }
+        }
+
+        /*
+         * Refuses further notifications and wakes the senders waiting for
+         * room, which then fail.
+         */
+        void close() {
+            synchronized (queue) {
+                closed = true;
+            }
+            synchronized (space) {
+                space.notifyAll();
+            }
+        }
+    }
+
+    private final MessagingService delegate;
+    private final Backpressure backpressure;
+    private final Lane[] lanes;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong flushers = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /**
+     * @param  delegate       service that actually delivers notifications
+     * @param  lanes          number of worker threads
+     * @param  laneCapacity   notifications each lane can hold before
+     *                        backpressure applies
+     * @param  backpressure   what to do when a lane is full
+     */
+    public AsyncMessagingService(
+            MessagingService delegate,
+            int lanes,
+            int laneCapacity,
+            Backpressure backpressure) {
+        if (lanes <= 0 || laneCapacity <= 0) {
+            throw new IllegalArgumentException("Lanes and lane capacity must be positive");
+        }
+        this.delegate = delegate;
+        this.backpressure = backpressure;
+        this.lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new Lane(i, laneCapacity);
+            this.lanes[i].worker.start();
+        }
+    }
+
+    private int laneIndexFor(String address) {
+        int h = address.hashCode();
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % lanes.length;
+    }
+
+    private Lane laneFor(String address) {
+        return lanes[laneIndexFor(address)];
+    }
+
+    private void send(Kind kind, String address, int lotNumber, Money amount) {
+        if (closed) {
+            throw new IllegalStateException("Messaging service is closed");
+        }
+        enqueue(laneFor(address), new Notification(kind, address, null, lotNumber, amount));
+    }
+
+    private void sendBatch(Kind kind, List<String> addresses, int lotNumber, Money amount) {
+        if (closed) {
+            throw new IllegalStateException("Messaging service is closed");
+        }
+        if (addresses.isEmpty()) {
+            return;
+        }
+        // Every address keeps its lane, so per-recipient order is kept.
+        List<List<String>> byLane = new ArrayList<List<String>>(
+                Collections.<List<String>>nCopies(lanes.length, null));
+        for (int i = 0; i < addresses.size(); i++) {
+            String address = addresses.get(i);
+            int lane = laneIndexFor(address);
+            List<String> laneAddresses = byLane.get(lane);
+            if (laneAddresses == null) {
+                laneAddresses = new ArrayList<String>();
+                byLane.set(lane, laneAddresses);
+            }
+            laneAddresses.add(address);
+        }
+        for (int lane = 0; lane < lanes.length; lane++) {
+            if (byLane.get(lane) != null) {
+                enqueue(lanes[lane], new Notification(kind, null, byLane.get(lane), lotNumber, amount));
+            }
+        }
+    }
+
+    private void enqueue(Lane lane, Notification n) {
+        while (true) {
+            // Accepting into a lane is serialised per lane, so the accepted
+            // count always matches the queue order seen by flush. Nobody
+            // waits for space holding the lane's lock.
+            synchronized (lane.queue) {
+                if (lane.closed) {
+                    throw new IllegalStateException("Messaging service is closed");
+                }
+                if (lane.queue.offer(n)) {
+                    lane.accepted.incrementAndGet();
+                    return;
+                }
+            }
+            if (backpressure == Backpressure.DROP) {
+                dropped.incrementAndGet();
+                return;
+            }
+            try {
+                lane.awaitSpace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void deliver(Notification n) {
+        try {
+            if (n.addresses != null) {
+                deliverBatch(n);
+                return;
+            }
+            switch (n.kind) {
+            case OPENED:
+                delegate.auctionOpened(n.address, n.lotNumber);
+                break;
+            case BID:
+                delegate.bidAccepted(n.address, n.lotNumber, n.amount);
+                break;
+            case SOLD:
+                delegate.lotSold(n.address, n.lotNumber);
+                break;
+            case UNSOLD:
+                delegate.lotUnsold(n.address, n.lotNumber);
+                break;
+            }
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            if (logger.isLoggable(Level.WARNING)) {
+                String to = n.addresses != null ? n.addresses.toString() : n.address;
+                logger.log(Level.WARNING, "Notification to " + to + " failed", e);
+            }
+        }
+    }
+
+    private void deliverBatch(Notification n) {
+        switch (n.kind) {
+        case OPENED:
+            delegate.auctionOpened(n.addresses, n.lotNumber);
+            break;
+        case BID:
+            delegate.bidAccepted(n.addresses, n.lotNumber, n.amount);
+            break;
+        case SOLD:
+            delegate.lotSold(n.addresses, n.lotNumber);
+            break;
+        case UNSOLD:
+            delegate.lotUnsold(n.addresses, n.lotNumber);
+            break;
+        }
+    }
+
+    /*
+     * Implementation of MessagingService interface
+     */
+
+    public void auctionOpened(String address, int lotNumber) {
+        send(Kind.OPENED, address, lotNumber, null);
+    }
+
+    public void bidAccepted(String address, int lotNumber, Money amount) {
+        send(Kind.BID, address, lotNumber, amount);
+    }
+
+    public void lotSold(String address, int lotNumber) {
+        send(Kind.SOLD, address, lotNumber, null);
+    }
+
+    public void lotUnsold(String address, int lotNumber) {
+        send(Kind.UNSOLD, address, lotNumber, null);
+    }
+
+    public void auctionOpened(List<String> addresses, int lotNumber) {
+        sendBatch(Kind.OPENED, addresses, lotNumber, null);
+    }
+
+    public void bidAccepted(List<String> addresses, int lotNumber, Money amount) {
+        sendBatch(Kind.BID, addresses, lotNumber, amount);
+    }
+
+    public void lotSold(List<String> addresses, int lotNumber) {
+        sendBatch(Kind.SOLD, addresses, lotNumber, null);
+    }
+
+    public void lotUnsold(List<String> addresses, int lotNumber) {
+        sendBatch(Kind.UNSOLD, addresses, lotNumber, null);
+    }
+
+    /**
+     * Waits until every notification accepted before this call has been
+     * delivered (or has failed).
+     */
+    public void flush() throws InterruptedException {
+        long[] targets = new long[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            targets[i] = lanes[i].accepted.get();
+        }
+        flushers.incrementAndGet();
+        try {
+            for (int i = 0; i < lanes.length; i++) {
+                lanes[i].awaitDelivered(targets[i]);
+            }
+        } finally {
+            flushers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Flushes, then stops the workers. Sending after close fails, as does a
+     * sender still waiting for room when close starts. If the calling
+     * thread is interrupted, the workers are stopped without waiting,
+     * notifications not yet delivered are lost, and close returns with the
+     * thread's interrupt status set.
+     */
+    public void close() {
+        closed = true;
+        for (Lane lane : lanes) {
+            lane.close();
+        }
+        boolean interrupted = false;
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        for (Lane lane : lanes) {
+            lane.worker.interrupt();
+        }
+        try {
+            for (int i = 0; i < lanes.length && !interrupted; i++) {
+                lanes[i].worker.join();
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of notifications waiting to be delivered.
+     */
+    public long getQueuedCount() {
+        long queued = 0;
+        for (Lane lane : lanes) {
+            queued += lane.queue.size();
+        }
+        return queued;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+}
@@ -0,0 +1,330 @@
+package auctionhouse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class AsyncMessagingServiceTest {
+
+    /*
+     * Records, per address, the amounts of the bids it was told about.
+     */
+    private static class OrderRecordingService implements MessagingService {
+        final Map<String, List<Money>> bids = new ConcurrentHashMap<String, List<Money>>();
+
+        public void auctionOpened(String address, int lotNumber) { }
+        public void bidAccepted(String address, int lotNumber, Money amount) {
+            bids.computeIfAbsent(address, a -> new ArrayList<Money>()).add(amount);
+        }
+        public void lotSold(String address, int lotNumber) { }
+        public void lotUnsold(String address, int lotNumber) { }
+    }
+
+    /*
+     * Counts single-address calls and batch calls separately.
+     */
+    private static class BatchCountingService implements MessagingService {
+        final AtomicInteger singleCalls = new AtomicInteger();
+        final AtomicInteger batchCalls = new AtomicInteger();
+        final AtomicInteger batchAddresses = new AtomicInteger();
+
+        public void auctionOpened(String address, int lotNumber) { singleCalls.incrementAndGet(); }
+        public void bidAccepted(String address, int lotNumber, Money amount) { singleCalls.incrementAndGet(); }
+        public void lotSold(String address, int lotNumber) { singleCalls.incrementAndGet(); }
+        public void lotUnsold(String address, int lotNumber) { singleCalls.incrementAndGet(); }
+
+        private void batch(List<String> addresses) {
+            batchCalls.incrementAndGet();
+            batchAddresses.addAndGet(addresses.size());
+        }
+        public void auctionOpened(List<String> addresses, int lotNumber) { batch(addresses); }
+        public void bidAccepted(List<String> addresses, int lotNumber, Money amount) { batch(addresses); }
+        public void lotSold(List<String> addresses, int lotNumber) { batch(addresses); }
+        public void lotUnsold(List<String> addresses, int lotNumber) { batch(addresses); }
+    }
+
+    @Test
+    public void testAuctionHouseSendsOneBatchPerEvent() {
+        BatchCountingService counter = new BatchCountingService();
+        AuctionHouseImp house = new AuctionHouseImp(
+                new Parameters(10.0, 15.0, new Money("10.00"), "AH A/C", "AH-auth",
+                        counter, new MockBankingService()));
+
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.addLot("SellerY", 1, "Bicycle", new Money("80.00"));
+        for (int b = 0; b < 50; b++) {
+            house.registerBuyer("Buyer" + b, "@Buyer" + b, "B" + b + " A/C", "B" + b + "-auth");
+            house.noteInterest("Buyer" + b, 1);
+        }
+        house.openAuction("Auctioneer1", "@Auctioneer1", 1);
+        house.makeBid("Buyer7", 1, new Money("90.00"));
+        house.closeAuction("Auctioneer1", 1);
+
+        // Opened and sold go to the seller and 50 buyers; the bid goes to
+        // the seller, the auctioneer and the 49 other buyers.
+        assertEquals(0, counter.singleCalls.get());
+        assertEquals(3, counter.batchCalls.get());
+        assertEquals(51 + 51 + 51, counter.batchAddresses.get());
+    }
+
+    @Test
+    public void testSplitsBatchesByLane() throws Exception {
+        BatchCountingService counter = new BatchCountingService();
+        AsyncMessagingService async = new AsyncMessagingService(
+                counter, 4, 16, AsyncMessagingService.Backpressure.BLOCK);
+        List<String> addresses = new ArrayList<String>();
+        for (int a = 0; a < 100; a++) {
+            addresses.add("@Buyer" + a);
+        }
+
+        async.bidAccepted(addresses, 1, new Money("70.00"));
+        async.flush();
+
+        assertEquals(0, counter.singleCalls.get());
+        assertTrue(counter.batchCalls.get() <= 4);
+        assertEquals(100, counter.batchAddresses.get());
+        async.close();
+    }
+
+    @Test
+    public void testDeliversToDelegateOnFlush() throws Exception {
+        MockMessagingService mock = new MockMessagingService();
+        AsyncMessagingService async = new AsyncMessagingService(
+                mock, 4, 16, AsyncMessagingService.Backpressure.BLOCK);
+
+        async.auctionOpened("@BuyerA", 1);
+        async.bidAccepted("@BuyerB", 1, new Money("70.00"));
+        async.lotSold("@SellerY", 1);
+        async.lotUnsold("@BuyerC", 2);
+        async.flush();
+
+        mock.expectAuctionOpened("@BuyerA", 1);
+        mock.expectBidReceived("@BuyerB", 1, new Money("70.00"));
+        mock.expectLotSold("@SellerY", 1);
+        mock.expectLotUnsold("@BuyerC", 2);
+        mock.verify();
+        async.close();
+    }
+
+    @Test
+    public void testKeepsOrderPerRecipient() throws Exception {
+        OrderRecordingService recorder = new OrderRecordingService();
+        AsyncMessagingService async = new AsyncMessagingService(
+                recorder, 4, 8, AsyncMessagingService.Backpressure.BLOCK);
+
+        for (int i = 0; i < 1000; i++) {
+            for (int a = 0; a < 10; a++) {
+                async.bidAccepted("@Buyer" + a, 1, Money.ofPence(i));
+            }
+        }
+        async.close();
+
+        for (int a = 0; a < 10; a++) {
+            List<Money> received = recorder.bids.get("@Buyer" + a);
+            assertEquals(1000, received.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, received.get(i).getPence());
+            }
+        }
+        assertEquals(0, async.getDroppedCount());
+    }
+
+    @Test
+    public void testDropsWhenFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        MessagingService stalled = new OrderRecordingService() {
+            public void auctionOpened(String address, int lotNumber) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        AsyncMessagingService async = new AsyncMessagingService(
+                stalled, 1, 2, AsyncMessagingService.Backpressure.DROP);
+
+        // The worker holds one notification; the queue holds two more
+        for (int i = 0; i < 10; i++) {
+            async.auctionOpened("@BuyerA", i);
+        }
+        assertTrue(async.getDroppedCount() >= 7);
+        release.countDown();
+        async.close();
+        assertEquals(0, async.getQueuedCount());
+    }
+
+    @Test
+    public void testBlockedSendersStayInterruptible() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        MessagingService stalled = new OrderRecordingService() {
+            public void auctionOpened(String address, int lotNumber) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final AsyncMessagingService async = new AsyncMessagingService(
+                stalled, 1, 1, AsyncMessagingService.Backpressure.BLOCK);
+
+        // Both senders find the lane full; neither may keep the other from
+        // seeing its interrupt.
+        Thread first = new Thread(() -> {
+            for (int i = 0; i < 3; i++) {
+                async.auctionOpened("@BuyerA", i);
+            }
+        });
+        first.setDaemon(true);
+        first.start();
+        while (async.getQueuedCount() == 0
+                || first.getState() == Thread.State.RUNNABLE || first.getState() == Thread.State.NEW) {
+            Thread.sleep(1);
+        }
+        Thread second = new Thread(() -> async.auctionOpened("@BuyerB", 9));
+        second.setDaemon(true);
+        second.start();
+        while (second.getState() == Thread.State.RUNNABLE || second.getState() == Thread.State.NEW) {
+            Thread.sleep(1);
+        }
+        second.interrupt();
+        second.join(5000);
+        assertTrue(!second.isAlive());
+        first.interrupt();
+        first.join(5000);
+        assertTrue(!first.isAlive());
+        assertEquals(2, async.getDroppedCount());
+
+        release.countDown();
+        async.close();
+    }
+
+    @Test
+    public void testCloseFailsBlockedSenders() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        MessagingService stalled = new OrderRecordingService() {
+            public void auctionOpened(String address, int lotNumber) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final AsyncMessagingService async = new AsyncMessagingService(
+                stalled, 1, 1, AsyncMessagingService.Backpressure.BLOCK);
+        final AtomicInteger refused = new AtomicInteger();
+        Thread sender = new Thread(() -> {
+            try {
+                for (int i = 0; i < 3; i++) {
+                    async.auctionOpened("@BuyerA", i);
+                }
+            } catch (IllegalStateException e) {
+                refused.incrementAndGet();
+            }
+        });
+        sender.setDaemon(true);
+        sender.start();
+        while (sender.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        // The delegate is still stalled, so close waits in its flush; the
+        // waiting sender must fail rather than wait for room for ever.
+        Thread closer = new Thread(async::close);
+        closer.setDaemon(true);
+        closer.start();
+        sender.join(5000);
+        assertTrue(!sender.isAlive());
+        assertEquals(1, refused.get());
+        release.countDown();
+        closer.join(5000);
+        assertTrue(!closer.isAlive());
+        assertEquals(0, async.getQueuedCount());
+    }
+
+    @Test
+    public void testSendsRacingCloseAreDeliveredOrRefused() throws Exception {
+        final AtomicInteger received = new AtomicInteger();
+        MessagingService counting = new OrderRecordingService() {
+            public void auctionOpened(String address, int lotNumber) {
+                received.incrementAndGet();
+            }
+        };
+        final AsyncMessagingService async = new AsyncMessagingService(
+                counting, 4, 16, AsyncMessagingService.Backpressure.BLOCK);
+        final AtomicInteger accepted = new AtomicInteger();
+        List<Thread> senders = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final String address = "@Buyer" + t;
+            Thread sender = new Thread(() -> {
+                try {
+                    for (int i = 0; ; i++) {
+                        async.auctionOpened(address, i);
+                        accepted.incrementAndGet();
+                    }
+                } catch (IllegalStateException e) {
+                    // closed
+                }
+            });
+            sender.setDaemon(true);
+            senders.add(sender);
+            sender.start();
+        }
+        Thread.sleep(20);
+        async.close();
+        for (Thread sender : senders) {
+            sender.join(5000);
+            assertTrue(!sender.isAlive());
+        }
+        assertTrue(accepted.get() > 0);
+        assertEquals(accepted.get(), received.get());
+    }
+
+    @Test
+    public void testCloseWhenInterruptedReturnsAtOnce() {
+        AsyncMessagingService async = new AsyncMessagingService(
+                new OrderRecordingService(), 2, 4, AsyncMessagingService.Backpressure.BLOCK);
+        Thread.currentThread().interrupt();
+        async.close();
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    public void testAuctionHouseNotifiesThroughAsyncService() throws Exception {
+        MockMessagingService mock = new MockMessagingService();
+        AsyncMessagingService async = new AsyncMessagingService(
+                mock, 2, 16, AsyncMessagingService.Backpressure.BLOCK);
+        AuctionHouseImp house = new AuctionHouseImp(
+                new Parameters(10.0, 15.0, new Money("10.00"), "AH A/C", "AH-auth",
+                        async, new MockBankingService()));
+
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.addLot("SellerY", 1, "Bicycle", new Money("80.00"));
+        house.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth");
+        house.registerBuyer("BuyerB", "@BuyerB", "BB A/C", "BB-auth");
+        house.noteInterest("BuyerA", 1);
+        house.noteInterest("BuyerB", 1);
+        assertEquals(Status.Kind.OK, house.openAuction("Auctioneer1", "@Auctioneer1", 1).kind);
+        assertEquals(Status.Kind.OK, house.makeBid("BuyerA", 1, new Money("70.00")).kind);
+        async.flush();
+
+        mock.expectAuctionOpened("@BuyerA", 1);
+        mock.expectAuctionOpened("@BuyerB", 1);
+        mock.expectAuctionOpened("@SellerY", 1);
+        mock.expectBidReceived("@BuyerB", 1, new Money("70.00"));
+        mock.expectBidReceived("@Auctioneer1", 1, new Money("70.00"));
+        mock.expectBidReceived("@SellerY", 1, new Money("70.00"));
+        mock.verify();
+        async.close();
+    }
+}
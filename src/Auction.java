@@ -1,23 +1,46 @@
 package auctionhouse;
 
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A running auction of one lot.
+ * 
+ * The leading bid is a single immutable {@link Bid} swapped by
+ * compare-and-set, so bids are accepted or rejected atomically without
+ * taking a lock, and a bidder is never paired with another bid's amount.
+ * 
+ * Once the seller and interested buyers are set, {@link #resolveRecipients}
+ * fixes the addresses each notification goes to, so that a notification is
+ * one batch call on the messaging service rather than one call per watcher.
+ */
 public class Auction {
     
     private String auctioneerName;
     private String auctioneerAddress;
     private int lotId;
-    private Money currentHighestBid = new Money("0");
-    private Buyer currentHighestBidder;
+    private int round;
+    private final AtomicReference<Bid> leadingBid = new AtomicReference<Bid>(Bid.none());
     private HashSet<Buyer> buyersInterestedInLot = new HashSet<Buyer>();
     private Seller lotSeller;
     
+    // Auctioneer, seller, then each interested buyer.
+    private String[] recipientAddresses;
+    private HashMap<Buyer, Integer> recipientIndex;
+    private List<String> watcherAddresses;
+    private AllButOne[] bidRecipients; // per recipient index, made on first bid
+    
     public Auction(String auctioneerName, String auctioneerAddress, int lotId) {
         super();
         this.auctioneerName = auctioneerName;
         this.auctioneerAddress = auctioneerAddress;
         this.lotId = lotId;
-        currentHighestBidder = null;
         buyersInterestedInLot = new HashSet<Buyer>();
         lotSeller = null;
     }
@@ -67,23 +90,165 @@ public class Auction {
         this.lotId = lotId;
     }
 
-    public Money getCurrentHighestBid() {
-        return currentHighestBid;
+    public int getRound() {
+        return round;
     }
 
-    public void setCurrentHighestBid(Money currentHighestBid) {
-        this.currentHighestBid = currentHighestBid;
+    public void setRound(int round) {
+        this.round = round;
     }
 
-    public Buyer getCurrentHighestBidder() {
-        return currentHighestBidder;
+    public Bid getLeadingBid() {
+        return leadingBid.get();
     }
 
-    public void setCurrentHighestBidder(Buyer currentHighestBidder) {
-        this.currentHighestBidder = currentHighestBidder;
+    public Money getCurrentHighestBid() {
+        return leadingBid.get().getAmount();
+    }
+
+    public Buyer getCurrentHighestBidder() {
+        return leadingBid.get().getBidder();
     }
     
+    /**
+     * Attempts to make the given bid the leading bid.
+     * 
+     * A bid is too low when the auction already has a bid and the new
+     * amount does not exceed it by more than the increment.
+     * 
+     * @param  bidder     buyer making the bid
+     * @param  amount     amount bid
+     * @param  increment  minimum margin over the current leading bid
+     * @return            the new leading bid, or <code>null</code> if the bid
+     *                    was too low or the auction has closed
+     */
+    public Bid placeBid(Buyer bidder, Money amount, Money increment) {
+        while (true) {
+            Bid current = leadingBid.get();
+            if (!current.isOpen()) {
+                return null;
+            }
+            if (current.hasBidder() && !amount.exceedsBy(current.getAmount(), increment)) {
+                return null;
+            }
+            Bid next = current.next(bidder, amount);
+            if (leadingBid.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
     
+    /**
+     * Seals the auction so that no further bid is accepted.
+     * 
+     * @return  the winning bid, with no bidder if no bid was made
+     */
+    public Bid close() {
+        while (true) {
+            Bid current = leadingBid.get();
+            if (!current.isOpen() || leadingBid.compareAndSet(current, current.sealed())) {
+                return current;
+            }
+        }
+    }
     
+    /**
+     * Reinstates a journalled bid as the leading bid, unless a later bid
+     * (by sequence) has already been reinstated or the auction is closed.
+     * Used only when replaying a journal, where bids may appear out of
+     * order.
+     */
+    public void restoreBid(Buyer bidder, Money amount, long sequence) {
+        while (true) {
+            Bid current = leadingBid.get();
+            if (!current.isOpen() || current.getSequence() >= sequence) {
+                return;
+            }
+            if (leadingBid.compareAndSet(current, Bid.restored(bidder, amount, sequence))) {
+                return;
+            }
+        }
+    }
+    
+    public boolean isClosed() {
+        return !leadingBid.get().isOpen();
+    }
+    
+    /**
+     * Fixes the recipients of this auction's notifications from the current
+     * seller and interested buyers. Called once when the auction opens.
+     */
+    public void resolveRecipients() {
+        String[] addresses = new String[2 + buyersInterestedInLot.size()];
+        HashMap<Buyer, Integer> index = new HashMap<Buyer, Integer>();
+        addresses[0] = auctioneerAddress;
+        addresses[1] = lotSeller.getAddress();
+        int i = 2;
+        for (Buyer buyer : buyersInterestedInLot) {
+            index.put(buyer, i);
+            addresses[i++] = buyer.getAddress();
+        }
+        recipientAddresses = addresses;
+        recipientIndex = index;
+        bidRecipients = new AllButOne[addresses.length];
+        watcherAddresses = Collections.unmodifiableList(
+                Arrays.asList(addresses).subList(1, addresses.length));
+    }
+    
+    /**
+     * Returns the addresses told when the auction opens or closes: the
+     * seller and every interested buyer.
+     */
+    public List<String> getWatcherAddresses() {
+        return watcherAddresses;
+    }
+    
+    /**
+     * Returns the addresses told of a bid: the seller, the auctioneer and
+     * every interested buyer except the bidder. The list is a view over the
+     * resolved recipients, so no addresses are copied, and each bidder's
+     * view is made once and reused for their later bids.
+     * 
+     * @param  bidder   buyer who made the bid
+     */
+    public List<String> getBidRecipientAddresses(Buyer bidder) {
+        Integer excluded = recipientIndex.get(bidder);
+        if (excluded == null) {
+            return new AllButOne(recipientAddresses, -1);
+        }
+        // Racing bidders may each make the view; any of them will do.
+        AllButOne view = bidRecipients[excluded];
+        if (view == null) {
+            view = new AllButOne(recipientAddresses, excluded);
+            bidRecipients[excluded] = view;
+        }
+        return view;
+    }
+    
+    /*
+     * Read-only list of an array's elements, skipping one index.
+     */
+    private static final class AllButOne extends AbstractList<String> implements RandomAccess {
+        private final String[] elements;
+        private final int skipped;
+        
+        AllButOne(String[] elements, int skipped) {
+            this.elements = elements;
+            this.skipped = skipped;
+        }
+        
+        @Override
+        public String get(int i) {
+            if (i < 0 || i >= size()) {
+                throw new IndexOutOfBoundsException(Integer.toString(i));
+            }
+            return elements[skipped >= 0 && i >= skipped ? i + 1 : i];
+        }
+        
+        @Override
+        public int size() {
+            return skipped >= 0 ? elements.length - 1 : elements.length;
+        }
+    }
     
 }
@@ -3,6 +3,7 @@
  */
 package auctionhouse;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -30,6 +31,32 @@ public interface AuctionHouse {
     
     List<CatalogueEntry> viewCatalogue();
     
+    /**
+     * Returns at most limit catalogue entries, in lot number order, starting
+     * from the first lot numbered fromLot or higher. To page through the
+     * catalogue, pass one more than the last lot number of each page as the
+     * next fromLot.
+     */
+    List<CatalogueEntry> viewCatalogue(
+            int fromLot,
+            int limit);
+    
+    /**
+     * Returns the catalogue entries numbered from lo to hi inclusive, in lot
+     * number order.
+     */
+    List<CatalogueEntry> viewCatalogueRange(
+            int lo,
+            int hi);
+    
+    /**
+     * Returns the catalogue changes made after the given version: new lots
+     * and lots whose status changed. A caller with no copy of the catalogue,
+     * or one too far behind, gets the full catalogue instead.
+     */
+    CatalogueChanges viewCatalogueSince(
+            long version);
+    
     Status noteInterest(
             String buyerName,
             int lotNumber);
@@ -48,5 +75,19 @@ public interface AuctionHouse {
             String auctioneerName,
             int lotNumber);
     
+    /**
+     * Runs a batch of commands in order, as if each were called in turn.
+     * An implementation may share per-call work across the batch.
+     * 
+     * @return  the status of each command, in the same order
+     */
+    default List<Status> submit(
+            List<Command> commands) {
+        List<Status> statuses = new ArrayList<Status>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            statuses.add(commands.get(i).applyTo(this));
+        }
+        return statuses;
+    }
     
 }
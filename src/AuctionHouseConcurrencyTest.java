@@ -0,0 +1,351 @@
+package auctionhouse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Drives AuctionHouseImp from many threads at once and checks that no
+ * accepted bid is lost and that no lot is sold twice.
+ */
+public class AuctionHouseConcurrencyTest {
+
+    private static final int LOTS = 32;
+    private static final int BUYERS = 16;
+    private static final int THREADS = 8;
+    private static final int BIDS_PER_THREAD = 2000;
+    private static final String HOUSE_ACCOUNT = "AH A/C";
+
+    private AuctionHouseImp house;
+    private RecordingBankingService bankingService;
+    private Level savedLevel;
+
+    /*
+     * Thread-safe banking service recording every transfer, duplicates
+     * included, so that double settlement would show up.
+     */
+    private static class RecordingBankingService implements BankingService {
+        final ConcurrentLinkedQueue<String> transfers = new ConcurrentLinkedQueue<String>();
+
+        public Status transfer(
+                String senderAccount,
+                String senderAuthCode,
+                String receiverAccount,
+                Money amount) {
+            transfers.add(senderAccount + " -> " + receiverAccount + " " + amount);
+            return Status.OK();
+        }
+    }
+
+    private static class CountingMessagingService implements MessagingService {
+        final AtomicInteger messages = new AtomicInteger();
+
+        public void auctionOpened(String address, int lotNumber) { messages.incrementAndGet(); }
+        public void bidAccepted(String address, int lotNumber, Money amount) { messages.incrementAndGet(); }
+        public void lotSold(String address, int lotNumber) { messages.incrementAndGet(); }
+        public void lotUnsold(String address, int lotNumber) { messages.incrementAndGet(); }
+    }
+
+    @Before
+    public void setup() {
+        // Keep the log quiet; a FINE line per bid would dominate the run.
+        Logger logger = Logger.getLogger("auctionhouse");
+        savedLevel = logger.getLevel();
+        logger.setLevel(Level.OFF);
+
+        bankingService = new RecordingBankingService();
+        house = new AuctionHouseImp(
+                new Parameters(
+                        10.0,
+                        15.0,
+                        new Money("0.00"),
+                        HOUSE_ACCOUNT,
+                        "AH-auth",
+                        new CountingMessagingService(),
+                        bankingService));
+
+        assertEquals(Status.Kind.OK, house.registerSeller("Seller", "@Seller", "S A/C").kind);
+        for (int lot = 1; lot <= LOTS; lot++) {
+            assertEquals(Status.Kind.OK, house.addLot("Seller", lot, "Lot " + lot, new Money("1.00")).kind);
+        }
+        for (int b = 0; b < BUYERS; b++) {
+            assertEquals(Status.Kind.OK,
+                    house.registerBuyer("Buyer" + b, "@Buyer" + b, "B" + b + " A/C", "B" + b + "-auth").kind);
+            for (int lot = 1; lot <= LOTS; lot++) {
+                assertEquals(Status.Kind.OK, house.noteInterest("Buyer" + b, lot).kind);
+            }
+        }
+        for (int lot = 1; lot <= LOTS; lot++) {
+            assertEquals(Status.Kind.OK, house.openAuction("Auctioneer" + lot, "@Auctioneer" + lot, lot).kind);
+        }
+    }
+
+    @After
+    public void restoreLogging() {
+        Logger.getLogger("auctionhouse").setLevel(savedLevel);
+    }
+
+    /*
+     * Bids on each lot are drawn from a per-lot counter, so every bid amount
+     * is unique and lot L only ever sees amounts in its own range.
+     */
+    private static Money amountFor(int lot, long counter) {
+        long pence = lot * 1000000L + counter;
+        return new Money(Long.toString(pence / 100) + "." + String.format("%02d", pence % 100));
+    }
+
+    @Test
+    public void testConcurrentBidsAndClosesAcrossLots() throws Exception {
+        final AtomicLong[] counters = new AtomicLong[LOTS + 1];
+        final Map<Integer, Money> highestAccepted = new ConcurrentHashMap<Integer, Money>();
+        final Map<Integer, String> highestBidder = new ConcurrentHashMap<Integer, String>();
+        for (int lot = 1; lot <= LOTS; lot++) {
+            counters[lot] = new AtomicLong();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> bidders = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            final long seed = t;
+            bidders.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                start.await();
+                for (int i = 0; i < BIDS_PER_THREAD; i++) {
+                    int lot = 1 + random.nextInt(LOTS);
+                    String buyer = "Buyer" + random.nextInt(BUYERS);
+                    Money bid = amountFor(lot, counters[lot].incrementAndGet());
+                    if (house.makeBid(buyer, lot, bid).kind == Status.Kind.OK) {
+                        // Record the largest accepted bid per lot.
+                        synchronized (highestAccepted) {
+                            Money previous = highestAccepted.get(lot);
+                            if (previous == null || previous.compareTo(bid) < 0) {
+                                highestAccepted.put(lot, bid);
+                                highestBidder.put(lot, buyer);
+                            }
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : bidders) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+
+        // Race several closers per lot; exactly one of them may sell it.
+        final AtomicInteger sales = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        List<Future<?>> closers = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            closers.add(pool.submit(() -> {
+                for (int lot = 1; lot <= LOTS; lot++) {
+                    Status status = house.closeAuction("Auctioneer" + lot, lot);
+                    if (status.kind == Status.Kind.SALE) {
+                        sales.incrementAndGet();
+                    } else if (status.kind == Status.Kind.ERROR) {
+                        errors.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : closers) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(LOTS, sales.get());
+        assertEquals(LOTS * (THREADS - 1), errors.get());
+        assertEquals(LOTS, highestAccepted.size());
+
+        // Every sale is paid for by the winner of the highest accepted bid.
+        List<String> expected = new ArrayList<String>();
+        for (int lot = 1; lot <= LOTS; lot++) {
+            assertEquals(LotStatus.SOLD, house.getOnlineCatalogue().get(lot).status);
+            Money bid = highestAccepted.get(lot);
+            String account = "B" + highestBidder.get(lot).substring("Buyer".length()) + " A/C";
+            expected.add(account + " -> " + HOUSE_ACCOUNT + " " + bid.addPercent(10.0));
+        }
+        List<String> buyerLegs = new ArrayList<String>();
+        for (String transfer : bankingService.transfers) {
+            if (transfer.contains("-> " + HOUSE_ACCOUNT)) {
+                buyerLegs.add(transfer);
+            }
+        }
+        Collections.sort(expected);
+        Collections.sort(buyerLegs);
+        assertEquals(expected, buyerLegs);
+        // One transfer per leg: buyer to house, house to seller.
+        assertEquals(2 * LOTS, bankingService.transfers.size());
+    }
+
+    @Test
+    public void testConcurrentBidsOnOneHotLot() throws Exception {
+        final int lot = 1;
+        final AtomicLong counter = new AtomicLong();
+        final List<Money> accepted = new ArrayList<Money>();
+        final List<String> acceptedBidders = new ArrayList<String>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> bidders = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            final long seed = t;
+            bidders.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                start.await();
+                for (int i = 0; i < BIDS_PER_THREAD; i++) {
+                    String buyer = "Buyer" + random.nextInt(BUYERS);
+                    Money bid = amountFor(lot, counter.incrementAndGet());
+                    if (house.makeBid(buyer, lot, bid).kind == Status.Kind.OK) {
+                        synchronized (accepted) {
+                            accepted.add(bid);
+                            acceptedBidders.add(buyer);
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : bidders) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        // The winner is the bidder whose accepted bid was largest, paired
+        // with that bid's own amount.
+        int best = 0;
+        for (int i = 1; i < accepted.size(); i++) {
+            if (accepted.get(i).compareTo(accepted.get(best)) > 0) {
+                best = i;
+            }
+        }
+        assertEquals(Status.Kind.SALE, house.closeAuction("Auctioneer" + lot, lot).kind);
+        String account = "B" + acceptedBidders.get(best).substring("Buyer".length()) + " A/C";
+        assertTrue(bankingService.transfers.contains(
+                account + " -> " + HOUSE_ACCOUNT + " " + accepted.get(best).addPercent(10.0)));
+        assertEquals(Status.Kind.ERROR, house.makeBid("Buyer0", lot, amountFor(lot, counter.incrementAndGet())).kind);
+    }
+
+    @Test
+    public void testAuctioneerOpensOnlyOneLotAtOnce() throws Exception {
+        for (int lot = 1; lot <= LOTS; lot++) {
+            house.closeAuction("Auctioneer" + lot, lot);
+        }
+        house.addLot("Seller", LOTS + 1, "Spare", new Money("1.00"));
+
+        // One auctioneer races to open every unsold lot from many threads.
+        final AtomicInteger opened = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> openers = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            final int first = t;
+            openers.add(pool.submit(() -> {
+                for (int lot = 1 + first; lot <= LOTS + 1; lot += THREADS) {
+                    if (house.openAuction("Busy", "@Busy", lot).kind == Status.Kind.OK) {
+                        opened.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : openers) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(1, opened.get());
+        assertTrue(house.getLotRunBy("Busy") != null);
+    }
+
+    @Test
+    public void testCloseReturnsBeforeSettlement() throws Exception {
+        final CountDownLatch bankOpen = new CountDownLatch(1);
+        final ExecutorService settlers = Executors.newSingleThreadExecutor();
+        Executor held = task -> settlers.execute(() -> {
+            try {
+                bankOpen.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            task.run();
+        });
+        house.setSettlementExecutor(held);
+        house.makeBid("Buyer3", 1, new Money("5.00"));
+
+        CompletableFuture<Status> settled = house.closeAuctionAsync("Auctioneer1", 1);
+        assertEquals(LotStatus.SOLD_PENDING_PAYMENT, house.getOnlineCatalogue().get(1).status);
+        assertEquals(Status.Kind.ERROR, house.closeAuction("Auctioneer1", 1).kind);
+        assertTrue(bankingService.transfers.isEmpty());
+
+        house.makeBid("Buyer4", 2, new Money("6.00"));
+        assertEquals(Status.Kind.SALE_PENDING_PAYMENT, house.closeAuction("Auctioneer2", 2).kind);
+
+        bankOpen.countDown();
+        assertEquals(Status.Kind.SALE, settled.get(10, TimeUnit.SECONDS).kind);
+        settlers.shutdown();
+        assertTrue(settlers.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(LotStatus.SOLD, house.getOnlineCatalogue().get(1).status);
+        assertEquals(LotStatus.SOLD, house.getOnlineCatalogue().get(2).status);
+        assertEquals(4, bankingService.transfers.size());
+    }
+
+    @Test
+    public void testChangeLogReadersNeverSeeOverwrittenChanges() throws Exception {
+        // Small ring, so the writer laps readers that fall behind
+        final CatalogueChangeLog log = new CatalogueChangeLog(64);
+        final int changes = 200000;
+        Thread writer = new Thread(() -> {
+            for (int lot = 1; lot <= changes; lot++) {
+                log.append(new CatalogueEntry(lot, "Lot", LotStatus.UNSOLD));
+            }
+        });
+        writer.start();
+
+        // Entry n is the change made at version n, so each batch read must
+        // be exactly the versions after the one asked for.
+        long seen = 0;
+        int reads = 0;
+        while (seen < changes) {
+            long from = Math.max(0, log.getLatestVersion() - 48);
+            CatalogueChanges read = log.changesSince(from);
+            if (read == null) {
+                continue;
+            }
+            List<CatalogueEntry> entries = read.getEntries();
+            assertEquals(read.getVersion() - from, entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                assertEquals(from + 1 + i, entries.get(i).lotNumber);
+            }
+            seen = read.getVersion();
+            reads++;
+        }
+        writer.join();
+        assertTrue(reads > 0);
+    }
+}
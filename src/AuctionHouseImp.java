@@ -4,14 +4,61 @@
 package auctionhouse;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * Thread-safe auction house.
+ * 
+ * Buyer and seller registries are concurrent maps, so lookups never lock.
+ * Operations scoped to one lot (addLot, noteInterest, openAuction,
+ * closeAuction) lock only the stripe that lot hashes to, so work on
+ * different lots runs in parallel. makeBid takes no lock at all; see
+ * {@link Auction#placeBid}.
+ * 
+ * All state of a lot lives in one {@link Lot} held in a {@link LotTable}
+ * keyed by the primitive lot number, so each operation does one lookup.
+ * 
+ * Each registered buyer gets a dense integer id. noteInterest records ids on
+ * the lot, so openAuction finds interested buyers without scanning every
+ * registered buyer. Likewise openAuction and closeAuction keep an
+ * auctioneer-to-lot index, so checking whether an auctioneer is busy is a
+ * single lookup.
+ * 
+ * Every change to the catalogue updates a sorted index of entries and is
+ * appended to a {@link CatalogueChangeLog}, which numbers catalogue
+ * versions. Pages and ranges of the catalogue are read straight from the
+ * index, so they cost the same however large the catalogue grows and
+ * however often it changes. viewCatalogue returns an immutable
+ * {@link CatalogueSnapshot}, copied from the index at most once per version
+ * by the first reader to see the change; writers never wait for it.
+ * viewCatalogueSince serves recent changes straight from the log.
+ * 
+ * Sales are settled after the hammer falls, outside any lock, as a
+ * CompletableFuture chain on a configurable executor; see
+ * {@link #closeAuctionAsync}.
+ * 
+ * With a {@link CommandJournal} set, every change of state is appended to
+ * the journal under the same lock that orders it, and the operation waits
+ * for the record to be as durable as the journal requires, outside any
+ * lock, before it returns or tells anyone. {@link JournalReplayer} rebuilds
+ * a house from a journal.
+ * 
+ * {@link #submit} runs a batch of commands with one journal wait and one
+ * round of notifications for the whole batch; see there.
+ * 
+ * All logging is guarded by a level check, so with FINE logging off no log
+ * strings are built.
+ * 
  * @author pbj
  *
  */
@@ -20,12 +67,29 @@ public class AuctionHouseImp implements AuctionHouse {
     private static Logger logger = Logger.getLogger("auctionhouse");
     private static final String LS = System.lineSeparator();
     private Parameters parameters = new Parameters(0, 0, null, null, null, null, null);
-    private TreeMap<Integer, CatalogueEntry> onlineCatalogue = new TreeMap<Integer, CatalogueEntry>();
-    private HashMap<String, Buyer> buyers = new HashMap<String, Buyer>();
-    private HashMap<String, Seller> sellers = new HashMap<String, Seller>();
-    private HashMap<Integer, Auction> auctions = new HashMap<Integer, Auction>(); //lots associated with auctions 
-    private HashMap<Integer, Seller> lots = new HashMap<Integer, Seller>(); // lots to be sold associated with the seller
-    private HashMap<Integer, Money> reservePrices = new HashMap<Integer, Money>(); //lot associated with its reserve price
+    private long buyerPremiumBasisPoints; // parameters.buyerPremium, converted once
+    private long commissionBasisPoints;   // parameters.commission, converted once
+    private static final int LOCK_STRIPES = 64; // must be a power of two
+    private LotTable lots = new LotTable();
+    private static final int CHANGE_LOG_CAPACITY = 65536;
+    private final CatalogueChangeLog catalogueChanges = new CatalogueChangeLog(CHANGE_LOG_CAPACITY); // versions every catalogue change
+    private final ConcurrentSkipListMap<Integer, CatalogueEntry> catalogueIndex = new ConcurrentSkipListMap<Integer, CatalogueEntry>(); // current entries by lot number
+    private volatile CatalogueSnapshot catalogueSnapshot = CatalogueSnapshot.EMPTY;
+    private final Object catalogueRebuildLock = new Object(); // taken by readers only
+    private ConcurrentHashMap<String, Buyer> buyers = new ConcurrentHashMap<String, Buyer>();
+    private ConcurrentHashMap<String, Seller> sellers = new ConcurrentHashMap<String, Seller>();
+    private ConcurrentHashMap<String, Integer> auctioneerLots = new ConcurrentHashMap<String, Integer>(); // auctioneer to the lot they are running
+    private volatile Buyer[] buyersById = new Buyer[16]; // buyer ids index this array; replaced, never shrunk, as it grows
+    private int buyerCount = 0; // guarded by buyerRegistryLock
+    private final Object buyerRegistryLock = new Object();
+    private final Object sellerRegistryLock = new Object(); // orders seller registration with its journal record
+    private final Object[] lotLocks = new Object[LOCK_STRIPES]; // guards all per-lot state of the lots hashing to each stripe
+    private volatile Executor settlementExecutor = Runnable::run; // runs bank transfers for sales
+    private volatile PayoutAggregator payoutAggregator = null; // if set, sellers are paid in batches
+    private final ConcurrentHashMap<Integer, Settlement> pendingSettlements = new ConcurrentHashMap<Integer, Settlement>(); // sales not yet paid for, by lot; changed under the lot's lock
+    private volatile PaymentRecoveryScheduler paymentRecovery = null; // if set, failed settlements are retried
+    private volatile CommandJournal journal = null; // if set, every state change is journalled
+    private volatile OperationMetrics bidMetrics = null; // if set, bids are counted and timed here
    
     private String startBanner(String messageName) {
         return  LS 
@@ -34,8 +98,20 @@ public class AuctionHouseImp implements AuctionHouse {
           + "-------------------------------------------------------------";
     }
    
+    /*
+     * Returns the lock guarding the given lot. Lot numbers are spread over
+     * the stripes so that neighbouring lots do not share a lock.
+     */
+    private Object lockFor(int lotNumber) {
+        int h = lotNumber * 0x9E3779B9;
+        return lotLocks[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+   
     public AuctionHouseImp(Parameters parameters) {
-        this.parameters = parameters;
+        setParameters(parameters);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            lotLocks[i] = new Object();
+        }
     }
     
     
@@ -46,14 +122,260 @@ public class AuctionHouseImp implements AuctionHouse {
 
 	public void setParameters(Parameters parameters) {
 		this.parameters = parameters;
+		buyerPremiumBasisPoints = Money.basisPoints(parameters.buyerPremium);
+		commissionBasisPoints = Money.basisPoints(parameters.commission);
+	}
+
+	/**
+	 * Sets the executor that settles sales. By default settlement runs in
+	 * the closing thread, so closeAuction returns the settled outcome; with
+	 * a pool, closeAuction returns once the hammer falls and reports
+	 * SALE_PENDING_PAYMENT until the sale settles.
+	 */
+	public void setSettlementExecutor(Executor settlementExecutor) {
+		this.settlementExecutor = settlementExecutor;
+	}
+
+	/**
+	 * Sets an aggregator for seller payouts. While one is set, a sale
+	 * credits the seller's net amount to it instead of paying the seller
+	 * straight away, and a lot becomes SOLD once the buyer has paid; sellers
+	 * are then paid by {@link #settlePayouts}. The aggregator journals to
+	 * this house's journal; set it before replaying a journal or loading a
+	 * snapshot that holds credits.
+	 */
+	public void setPayoutAggregator(PayoutAggregator payoutAggregator) {
+		if (payoutAggregator != null) {
+			payoutAggregator.setJournal(journal);
+		}
+		this.payoutAggregator = payoutAggregator;
 	}
 
+	/**
+	 * Pays sellers everything credited to the payout aggregator so far, one
+	 * transfer per seller.
+	 * 
+	 * @return  the batch report, or <code>null</code> if no aggregator is set
+	 */
+	public PayoutReport settlePayouts() {
+		PayoutAggregator payouts = payoutAggregator;
+		if (payouts == null) {
+			return null;
+		}
+		return payouts.settle(
+				parameters.bankingService, parameters.houseBankAccount, parameters.houseBankAuthCode);
+	}
+
+	/**
+	 * Sets the scheduler that retries failed settlements. Without one, a
+	 * lot whose payment fails stays SOLD_PENDING_PAYMENT. The scheduler is
+	 * normally built with {@link #retrySettlement} as its attempt.
+	 */
+	public void setPaymentRecovery(PaymentRecoveryScheduler paymentRecovery) {
+		this.paymentRecovery = paymentRecovery;
+	}
+
+	/**
+	 * Retries the outstanding legs of a settlement, moving the lot to SOLD
+	 * if they succeed.
+	 * 
+	 * @return  <code>true</code> if the lot is now paid for
+	 */
+	public boolean retrySettlement(Settlement settlement) {
+		BankingService bank = parameters.bankingService;
+		boolean paid = settlement.collectFromBuyer(bank, parameters.houseBankAccount)
+				&& paySellerLeg(settlement, bank);
+		if (paid) {
+			finishSettlement(settlement, true);
+		}
+		return paid;
+	}
+
+	/**
+	 * Returns the sales whose payment has not gone through. After recovery
+	 * these are the sales that were pending when the house stopped; pass
+	 * them to {@link #retrySettlement} or a {@link PaymentRecoveryScheduler}.
+	 */
+	public Collection<Settlement> getPendingSettlements() {
+		return Collections.unmodifiableCollection(pendingSettlements.values());
+	}
+
+	/**
+	 * Sets the journal that records every change of state. Set it after
+	 * replaying any existing journal into this house.
+	 */
+	public void setJournal(CommandJournal journal) {
+		this.journal = journal;
+		PayoutAggregator payouts = payoutAggregator;
+		if (payouts != null) {
+			payouts.setJournal(journal);
+		}
+	}
+
+	/**
+	 * Sets the metrics that bids are recorded in. Bids are recorded here
+	 * rather than by a {@link MeteredAuctionHouse} around the house, which
+	 * would add a call to every bid; MeteredAuctionHouse sets this itself
+	 * when it wraps an AuctionHouseImp.
+	 */
+	public void setBidMetrics(OperationMetrics bidMetrics) {
+		this.bidMetrics = bidMetrics;
+	}
+
+	/*
+	 * Work that a submitted batch puts off until its commands have run:
+	 * the journal wait and the notifications, which may not go out before
+	 * the changes they announce are durable. With no journal there is
+	 * nothing to wait for, and notifications go out as they are made.
+	 */
+	private static final class Batch {
+		final AuctionHouseImp house;
+		final BufferedMessagingService messages;
+		CommandJournal journal;
+		long journalPosition;
+
+		Batch(AuctionHouseImp house, boolean journalled) {
+			this.house = house;
+			this.messages = journalled ? new BufferedMessagingService() : null;
+		}
+	}
+
+	private static final ThreadLocal<Batch> BATCH = new ThreadLocal<Batch>();
+
+	/*
+	 * Returns the batch this thread is submitting to this house, if any.
+	 */
+	private Batch currentBatch() {
+		Batch batch = BATCH.get();
+		return batch != null && batch.house == this ? batch : null;
+	}
+
+	/*
+	 * Waits for a journalled change to be as durable as the journal
+	 * requires, or within a batch leaves that to the end of the batch.
+	 * Never called holding a lock, so callers share fsyncs.
+	 */
+	private void awaitJournal(CommandJournal j, long position) {
+		if (j == null) {
+			return;
+		}
+		Batch batch = currentBatch();
+		if (batch != null) {
+			batch.journal = j;
+			batch.journalPosition = Math.max(batch.journalPosition, position);
+		} else {
+			j.awaitDurable(position);
+		}
+	}
+
+	/*
+	 * Returns where to send notifications: the batch's buffer within a
+	 * batch, else the messaging service.
+	 */
+	private MessagingService messaging() {
+		Batch batch = currentBatch();
+		return batch != null && batch.messages != null ? batch.messages : parameters.messagingService;
+	}
+
+	/*
+	 * Waits once for everything the batch journalled, then sends its
+	 * notifications.
+	 */
+	private void flush(Batch batch) {
+		if (batch.journal != null) {
+			batch.journal.awaitDurable(batch.journalPosition);
+			batch.journal = null;
+		}
+		if (batch.messages != null) {
+			batch.messages.flushTo(parameters.messagingService);
+		}
+	}
+
+	/**
+	 * Returns the lot the given auctioneer is currently running.
+	 * 
+	 * @param  auctioneerName  name of the auctioneer
+	 * @return                 the lot number, or <code>null</code> if the
+	 *                         auctioneer is not running an auction
+	 */
+	public Integer getLotRunBy(String auctioneerName) {
+		return auctioneerLots.get(auctioneerName);
+	}
+
+	/**
+	 * Checks whether a lot is in the catalogue.
+	 */
+	public boolean hasLot(int lotNumber) {
+		return lots.get(lotNumber) != null;
+	}
+
+	/**
+	 * Returns the number of lots in the catalogue.
+	 */
+	public int getLotCount() {
+		return lots.size();
+	}
+
+	/**
+	 * Returns the number of auctions currently running.
+	 */
+	public int getLiveAuctionCount() {
+		return auctioneerLots.size();
+	}
+
+	/**
+	 * Returns a copy of the online catalogue keyed by lot number.
+	 */
 	public TreeMap<Integer, CatalogueEntry> getOnlineCatalogue() {
-		return onlineCatalogue;
+		TreeMap<Integer, CatalogueEntry> catalogue = new TreeMap<Integer, CatalogueEntry>();
+		for (CatalogueEntry entry : getCatalogueSnapshot().getEntries()) {
+			catalogue.put(entry.lotNumber, entry);
+		}
+		return catalogue;
 	}
 
-	public void setOnlineCatalogue(TreeMap<Integer, CatalogueEntry> onlineCatalogue) {
-		this.onlineCatalogue = onlineCatalogue;
+	/**
+	 * Returns the current catalogue snapshot, with its version.
+	 */
+	public CatalogueSnapshot getCatalogueSnapshot() {
+		CatalogueSnapshot snapshot = catalogueSnapshot;
+		if (snapshot.getVersion() == catalogueChanges.getLatestVersion()) {
+			return snapshot;
+		}
+		synchronized (catalogueRebuildLock) {
+			snapshot = catalogueSnapshot;
+			// Read the version before the lots: every change counted in it
+			// is then visible, and later changes force another rebuild.
+			long version = catalogueChanges.getLatestVersion();
+			if (snapshot.getVersion() == version) {
+				return snapshot;
+			}
+			// The index is in lot number order already, so this is one copy.
+			snapshot = new CatalogueSnapshot(
+					version, catalogueIndex.values().toArray(new CatalogueEntry[0]));
+			catalogueSnapshot = snapshot;
+			return snapshot;
+		}
+	}
+
+	/*
+	 * All status changes go through here so that they reach the change log.
+	 * The caller holds the lot's lock, so a lot's changes are logged in order.
+	 */
+	private void setLotStatus(Lot lot, LotStatus status) {
+		lot.setLotStatus(status);
+		catalogueChanged(lot);
+	}
+
+	/*
+	 * Publishes a lot's current entry. The index is updated before the log,
+	 * so a reader that has seen a version also sees its changes in the index.
+	 * The caller holds the lot's lock.
+	 */
+	private void catalogueChanged(Lot lot) {
+		CatalogueEntry entry = lot.getCatalogueEntry();
+		catalogueIndex.put(lot.getId(), entry);
+		catalogueChanges.append(entry);
 	}
 
 	public Status registerBuyer(
@@ -61,13 +383,35 @@ public class AuctionHouseImp implements AuctionHouse {
             String address,
             String bankAccount,
             String bankAuthCode) {
-        logger.fine(startBanner("registerBuyer " + name));
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(startBanner("registerBuyer " + name));
+        }
         Buyer buyer = new Buyer(name, address, bankAccount, bankAuthCode);
-        if (buyers.containsKey(name)) {
-            return Status.error("Buyer with this name is already registered");
+        CommandJournal j = journal;
+        long position = 0;
+        synchronized (buyerRegistryLock) {
+            if (buyers.containsKey(name)) {
+                return Status.error(Status.ErrorCode.BUYER_ALREADY_REGISTERED);
+            }
+            Buyer[] byId = buyersById;
+            if (buyerCount == byId.length) {
+                byId = Arrays.copyOf(byId, byId.length * 2);
+            }
+            buyer.setId(buyerCount);
+            // Journalled in id order, so replay assigns the same ids, and
+            // before the buyer is published, so no record naming the buyer
+            // can precede the registration.
+            if (j != null) {
+                position = j.appendRegisterBuyer(buyer);
+            }
+            byId[buyerCount++] = buyer;
+            buyersById = byId;
+            buyers.put(buyer.getName(), buyer);
+        }
+        awaitJournal(j, position);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Buyer " + name + " registered succesfully");
         }
-        buyers.put(buyer.getName(), buyer);
-        logger.fine("Buyer " + name + " registered succesfully");
         
         return Status.OK();
     }
@@ -76,13 +420,27 @@ public class AuctionHouseImp implements AuctionHouse {
             String name,
             String address,
             String bankAccount) {
-        logger.fine(startBanner("registerSeller " + name));
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(startBanner("registerSeller " + name));
+        }
         Seller seller = new Seller(name, address, bankAccount);
-        if (sellers.containsKey(name)) {
-            return Status.error("Seller with this name is already registered");
+        CommandJournal j = journal;
+        long position = 0;
+        synchronized (sellerRegistryLock) {
+            if (sellers.containsKey(name)) {
+                return Status.error(Status.ErrorCode.SELLER_ALREADY_REGISTERED);
+            }
+            // Journalled before the seller is published, so none of the
+            // seller's lots can be journalled ahead of the registration.
+            if (j != null) {
+                position = j.appendRegisterSeller(seller);
+            }
+            sellers.put(seller.getName(), seller);
+        }
+        awaitJournal(j, position);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Seller " + name + " regisered succesfully");
         }
-        sellers.put(seller.getName(), seller);
-        logger.fine("Seller " + name + " regisered succesfully");
         return Status.OK();      
     }
 
@@ -92,78 +450,149 @@ public class AuctionHouseImp implements AuctionHouse {
             String description,
             Money reservePrice) {
         
-        logger.fine(startBanner("addLot " + sellerName + " " + number));
-        
-        if (!(sellers.containsKey(sellerName))) {
-            return Status.error("Unregistered seller, cannot add lot");
-        }
-        if (onlineCatalogue.containsKey(number)) {
-        	return Status.error("Lot with this number already exists");
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(startBanner("addLot " + sellerName + " " + number));
         }
         
-        // Creates a new lot
-        Lot newLot = new Lot(sellerName, LotStatus.UNSOLD, number, reservePrice, description); 
-        // Creates a new onlineCatalogueEntry for the lot just created
-        CatalogueEntry newEntry = new CatalogueEntry(newLot.getId(), newLot.getLotDescription(), newLot.getLotStatus()); 
-        onlineCatalogue.put(newEntry.lotNumber, newEntry);
-        
-        reservePrices.put(number, reservePrice);
+        Seller seller = sellers.get(sellerName);
+        if (seller == null) {
+            return Status.error(Status.ErrorCode.UNREGISTERED_SELLER);
+        }
         
-        for (String name : sellers.keySet()) {
-            if (name.equals(sellerName)) {
-                lots.put(newLot.getId(), sellers.get(name));
+        // Creates a new lot, with its catalogue entry
+        Lot newLot = new Lot(seller, number, reservePrice, description); 
+        CommandJournal j = journal;
+        long position = 0;
+        synchronized (lockFor(number)) {
+            // Lots are only added under their lock, so the lot is still
+            // absent when it is published below.
+            if (lots.get(number) != null) {
+            	return Status.error(Status.ErrorCode.LOT_ALREADY_EXISTS);
             }
+            // Journalled before the lot is published, so a failed append
+            // leaves no lot that replay would not rebuild.
+            if (j != null) {
+                position = j.appendAddLot(sellerName, number, description, reservePrice);
+            }
+            // Logged under the lot's lock so the addition precedes any
+            // status change of the new lot in the change log.
+            lots.putIfAbsent(newLot);
+            catalogueChanged(newLot);
+        }
+        awaitJournal(j, position);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Lot " + number + " added by " + sellerName);
         }
-        logger.fine("Lot " + number + " added by " + sellerName);
         
         return Status.OK();    
     }
 
     public List<CatalogueEntry> viewCatalogue() {
-        logger.fine(startBanner("viewCatalog"));
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(startBanner("viewCatalog"));
+        }
         
-        List<CatalogueEntry> catalogue = new ArrayList<CatalogueEntry>();
+        List<CatalogueEntry> catalogue = getCatalogueSnapshot().getEntries();
         
-        Set<Integer> keys = new TreeSet<Integer>();
-        keys = onlineCatalogue.keySet();
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Catalogue: " + catalogue.size() + " lots");
+        }
+        // Formatting every entry is expensive; keep it to the most verbose level
+        if (logger.isLoggable(Level.FINER)) {
+            logger.finer("Catalogue: " + catalogue.toString());
+        }
+        return catalogue;
+    }
+
+    public List<CatalogueEntry> viewCatalogue(
+            int fromLot,
+            int limit) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(startBanner("viewCatalogue from " + fromLot + " limit " + limit));
+        }
         
-        for (int k : keys) {
-            catalogue.add(onlineCatalogue.get(k));
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<CatalogueEntry> page = new ArrayList<CatalogueEntry>(Math.min(limit, 16));
+        for (CatalogueEntry entry : catalogueIndex.tailMap(fromLot).values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(entry);
+        }
+        return Collections.unmodifiableList(page);
+    }
+
+    public List<CatalogueEntry> viewCatalogueRange(
+            int lo,
+            int hi) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(startBanner("viewCatalogueRange " + lo + " " + hi));
         }
-   
         
-        logger.fine("Catalogue: " + catalogue.toString());
-        return catalogue;
+        if (lo > hi) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<CatalogueEntry>(
+                catalogueIndex.subMap(lo, true, hi, true).values()));
+    }
+
+    public CatalogueChanges viewCatalogueSince(
+            long version) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(startBanner("viewCatalogueSince " + version));
+        }
+        
+        CatalogueChanges changes = catalogueChanges.changesSince(version);
+        if (changes == null) {
+            CatalogueSnapshot snapshot = getCatalogueSnapshot();
+            changes = new CatalogueChanges(snapshot.getVersion(), true, snapshot.getEntries());
+        }
+        return changes;
     }
 
     public Status noteInterest(
             String buyerName,
             int lotNumber) {
-        logger.fine(startBanner("noteInterest " + buyerName + " " + lotNumber));
-        
-        if (!(buyers.containsKey(buyerName))) {
-            return Status.error("Unregistered buyer, cannot note interest in lot");
-        }
-        
-        if (!(onlineCatalogue.containsKey(lotNumber))) {
-            return Status.error("Lot is not in the online catalogue");
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(startBanner("noteInterest " + buyerName + " " + lotNumber));
         }
         
         Buyer buyer = buyers.get(buyerName);
-        if (buyer.getLotsInterestedIn().contains(lotNumber)) {
-            return Status.error("Already interested in this lot");
+        if (buyer == null) {
+            return Status.error(Status.ErrorCode.UNREGISTERED_BUYER);
         }
         
-        CatalogueEntry entry = new CatalogueEntry(lotNumber, null, null);
-        entry = onlineCatalogue.get(lotNumber);
-        
-        if (entry.status == LotStatus.SOLD || entry.status == LotStatus.SOLD_PENDING_PAYMENT) {
-            return Status.error("Cannot note interest in this lot");
+        CommandJournal j = journal;
+        long position = 0;
+        synchronized (lockFor(lotNumber)) {
+            Lot lot = lots.get(lotNumber);
+            if (lot == null) {
+                return Status.error(Status.ErrorCode.LOT_NOT_IN_CATALOGUE);
+            }
+            
+            if (buyer.getLotsInterestedIn().contains(lotNumber)) {
+                return Status.error(Status.ErrorCode.ALREADY_INTERESTED);
+            }
+            
+            LotStatus status = lot.getLotStatus();
+            if (status == LotStatus.SOLD || status == LotStatus.SOLD_PENDING_PAYMENT) {
+                return Status.error(Status.ErrorCode.CANNOT_NOTE_INTEREST);
+            }
+            
+            // Journalled before the interest is recorded, as addLot does.
+            if (j != null) {
+                position = j.appendNoteInterest(buyer.getId(), lotNumber);
+            }
+            buyer.getLotsInterestedIn().add(lotNumber);
+            lot.getInterestedBuyerIds().add(buyer.getId());
         }
+        awaitJournal(j, position);
         
-        buyer.getLotsInterestedIn().add(lotNumber);
-        
-        logger.fine("Buyer " + buyerName + " noted Interest in lot " + lotNumber);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Buyer " + buyerName + " noted Interest in lot " + lotNumber);
+        }
         
         return Status.OK();   
     }
@@ -172,118 +601,138 @@ public class AuctionHouseImp implements AuctionHouse {
             String auctioneerName,
             String auctioneerAddress,
             int lotNumber) {
-        logger.fine(startBanner("openAuction " + auctioneerName + " " + lotNumber));
-        
-        if (!(onlineCatalogue.containsKey(lotNumber))) {
-            return Status.error("Lot is not in the online catalogue");
-        }
-        
-       
-        for (Auction auction : auctions.values()) {
-        	if (auction.getAuctioneerName().equals(auctioneerName)) {
-        		return Status.error("Auctioneer is already running different auction");
-        	}
-        }
-        
-        
-        
-        if (auctions.containsKey(lotNumber)) {
-            return Status.error("Lot is already being sold in another auction");
-        }
-        
-        CatalogueEntry entry = onlineCatalogue.get(lotNumber);
-        if (!(entry.status.equals(LotStatus.UNSOLD))) {
-            return Status.error("Lot cannot be sold");
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(startBanner("openAuction " + auctioneerName + " " + lotNumber));
         }
         
-        Auction auction = new Auction(auctioneerName, auctioneerAddress, lotNumber);
-        
-        for (Buyer buyer : buyers.values()) {
-            if ((buyer).getLotsInterestedIn().contains(lotNumber)) {
-                auction.getBuyersInterestedInLot().add(buyer);
+        CommandJournal j = journal;
+        long position = 0;
+        Auction auction;
+        synchronized (lockFor(lotNumber)) {
+            Lot lot = lots.get(lotNumber);
+            if (lot == null) {
+                return Status.error(Status.ErrorCode.LOT_NOT_IN_CATALOGUE);
             }
-        }
-        for (int number : lots.keySet()) {
-            if (number == lotNumber) {
-                auction.setLotSeller(lots.get(number));
+            
+            // Claiming the auctioneer is atomic across all lots; the claim is
+            // released again if the lot turns out not to be openable.
+            if (auctioneerLots.putIfAbsent(auctioneerName, lotNumber) != null) {
+            	return Status.error(Status.ErrorCode.AUCTIONEER_BUSY);
+            }
+            
+            if (lot.getAuction() != null) {
+                auctioneerLots.remove(auctioneerName, lotNumber);
+                return Status.error(Status.ErrorCode.LOT_IN_ANOTHER_AUCTION);
+            }
+            
+            if (!(lot.getLotStatus().equals(LotStatus.UNSOLD))) {
+                auctioneerLots.remove(auctioneerName, lotNumber);
+                return Status.error(Status.ErrorCode.LOT_CANNOT_BE_SOLD);
+            }
+            
+            // Journalled before the auction is published: makeBid takes no
+            // lock, so once the auction is visible its bids may be journalled
+            // at any moment, and replay drops bids of an auction not yet open.
+            if (j != null) {
+                position = j.appendOpenAuction(auctioneerName, auctioneerAddress, lotNumber,
+                        lot.getAuctionsOpened() + 1);
             }
+            auction = startAuction(auctioneerName, auctioneerAddress, lot);
         }
+        awaitJournal(j, position);
+        messaging().auctionOpened(auction.getWatcherAddresses(), lotNumber);
         
-        entry.setStatus(LotStatus.IN_AUCTION);
-            
-        auctions.put(lotNumber, auction);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(auctioneerName + " opened auction of lot " + lotNumber);
+        }
         
-        String sellerAddress = auction.getLotSeller().getAddress();
-        parameters.messagingService.auctionOpened(sellerAddress, lotNumber);
+        return Status.OK();
+    }
+    /*
+     * Creates the lot's auction and puts the lot in it. The caller holds the
+     * lot's lock and has checked that the lot can be auctioned.
+     */
+    private Auction startAuction(String auctioneerName, String auctioneerAddress, Lot lot) {
+        Auction auction = new Auction(auctioneerName, auctioneerAddress, lot.getId());
+        auction.setRound(lot.nextAuctionRound());
         
-        for (Buyer buyer : auction.getBuyersInterestedInLot()) {
-            String buyerAddress = buyer.getAddress();
-            parameters.messagingService.auctionOpened(buyerAddress, lotNumber);
+        IntList interested = lot.getInterestedBuyerIds();
+        Buyer[] byId = buyersById;
+        for (int i = 0; i < interested.size(); i++) {
+            auction.getBuyersInterestedInLot().add(byId[interested.get(i)]);
         }
+        auction.setLotSeller(lot.getSeller());
+        auction.resolveRecipients();
         
-        logger.fine(auctioneerName + " opened auction of lot " + lotNumber);
+        // Published before the status changes, so a bidder seeing
+        // IN_AUCTION always finds the auction.
+        lot.setAuction(auction);
         
-        return Status.OK();
+        setLotStatus(lot, LotStatus.IN_AUCTION);
+        return auction;
     }
+    
     public Status makeBid(
             String buyerName,
             int lotNumber,
             Money bid) {
-        logger.fine(startBanner("makeBid " + buyerName + " " + lotNumber + " " + bid));
-        
-        
-        Auction auction = auctions.get(lotNumber);
-        
-        if (!(buyers.containsKey(buyerName))) {
-            return Status.error("Unregistered buyer, cannot note interest in lot");
+        OperationMetrics metrics = bidMetrics;
+        if (metrics == null) {
+            return placeBid(buyerName, lotNumber, bid);
         }
-        
-        if (!(onlineCatalogue.containsKey(lotNumber))) {
-            return Status.error("Lot is not in the online catalogue");
+        long start = metrics.start(buyerName.hashCode() + 31 * (lotNumber + 31 * bid.hashCode()));
+        Status status = placeBid(buyerName, lotNumber, bid);
+        metrics.end(start, status.kind);
+        return status;
+    }
+
+    private Status placeBid(String buyerName, int lotNumber, Money bid) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(startBanner("makeBid " + buyerName + " " + lotNumber + " " + bid));
         }
         
-        
-        
-        CatalogueEntry entry = onlineCatalogue.get(lotNumber);
-        if (!(entry.status.equals(LotStatus.IN_AUCTION))) {
-            return Status.error("Lot is not being auctioned");
+        Buyer buyer = buyers.get(buyerName);
+        if (buyer == null) {
+            return Status.error(Status.ErrorCode.UNREGISTERED_BUYER);
         }
         
-        
-        if (!(auction.getBuyersInterestedInLot().contains(buyers.get(buyerName)))) {
-            return Status.error("Buyer is not interested in the lot being auctioned, cannot make bids");
+        // No lock: the auction's leading bid is swapped atomically, and a
+        // closed auction rejects every bid.
+        Lot lot = lots.get(lotNumber);
+        if (lot == null) {
+            return Status.error(Status.ErrorCode.LOT_NOT_IN_CATALOGUE);
         }
         
-        Money currenthighestBid = auction.getCurrentHighestBid();
-        Money increment = parameters.increment;
-        Money difference = bid.subtract(currenthighestBid);
-        
-        if (difference.lessEqual(increment) && !(currenthighestBid.equals(new Money("0")))) {
-        	return Status.error("Bid too low");
+        Auction auction = lot.getAuction();
+        if (!(lot.getLotStatus().equals(LotStatus.IN_AUCTION)) || auction == null) {
+            return Status.error(Status.ErrorCode.LOT_NOT_IN_AUCTION);
         }
         
+        if (!(auction.getBuyersInterestedInLot().contains(buyer))) {
+            return Status.error(Status.ErrorCode.BUYER_NOT_INTERESTED);
+        }
         
-        auction.setCurrentHighestBid(bid);
-        for (Buyer bidder : auction.getBuyersInterestedInLot()) {
-            if (bidder.getName().equals(buyerName)) {
-                auction.setCurrentHighestBidder(bidder);
+        Bid accepted = auction.placeBid(buyer, bid, parameters.increment);
+        if (accepted == null) {
+            if (auction.isClosed()) {
+                return Status.error(Status.ErrorCode.LOT_NOT_IN_AUCTION);
             }
+        	return Status.error(Status.ErrorCode.BID_TOO_LOW);
         }
         
-        String sellerAddress = auction.getLotSeller().getAddress();
-        parameters.messagingService.bidAccepted(sellerAddress, lotNumber, bid);
-        
-        for (Buyer buyer : auction.getBuyersInterestedInLot()) {
-            if (!(buyer.getName().equals(buyerName))) {
-                String buyerAddress = buyer.getAddress();
-                parameters.messagingService.bidAccepted(buyerAddress, lotNumber, bid);
-            }
+        // Bids take no lock, so their records may reach the journal out of
+        // order, even after the close; the round and sequence number let
+        // replay keep only the latest bid of the right auction.
+        CommandJournal j = journal;
+        if (j != null) {
+            awaitJournal(j, j.appendBid(buyer.getId(), lotNumber, auction.getRound(), bid, accepted.getSequence()));
         }
         
-        String auctioneerAddress = auction.getAuctioneerAddress();
-        parameters.messagingService.bidAccepted(auctioneerAddress, lotNumber, bid);
+        messaging().bidAccepted(auction.getBidRecipientAddresses(buyer), lotNumber, bid);
         
-        logger.fine("Buyer " + buyerName + " made bid " + bid + " on lot " + lotNumber);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Buyer " + buyerName + " made bid " + bid + " on lot " + lotNumber);
+        }
         
         return Status.OK();    
     }
@@ -291,98 +740,398 @@ public class AuctionHouseImp implements AuctionHouse {
     public Status closeAuction(
             String auctioneerName,
             int lotNumber) {
-        logger.fine(startBanner("closeAuction " + auctioneerName + " " + lotNumber));
+        // With the default settlement executor the sale has settled by now;
+        // otherwise the lot stays sold pending payment until it does.
+        return closeAuctionAsync(auctioneerName, lotNumber)
+                .getNow(Status.of(Status.Kind.SALE_PENDING_PAYMENT));
+    }
+    
+    /**
+     * Closes an auction, returning as soon as the hammer falls.
+     * 
+     * A sold lot is marked SOLD_PENDING_PAYMENT and paid for on the
+     * settlement executor: one transfer from the buyer to the house, then,
+     * if that succeeded, one from the house to the seller. When both succeed
+     * the lot becomes SOLD and the watchers are told; otherwise it stays
+     * SOLD_PENDING_PAYMENT.
+     * 
+     * @return  a future of the final outcome: SALE or SALE_PENDING_PAYMENT
+     *          once settlement finishes, or NO_SALE or ERROR straight away
+     */
+    public CompletableFuture<Status> closeAuctionAsync(
+            String auctioneerName,
+            int lotNumber) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(startBanner("closeAuction " + auctioneerName + " " + lotNumber));
+        }
         
-        if (!(onlineCatalogue.containsKey(lotNumber))) {
-            return Status.error("Lot is not in the online catalogue");
+        Settlement settlement = null;
+        Auction auction;
+        CommandJournal j = journal;
+        long position = 0;
+        synchronized (lockFor(lotNumber)) {
+            Lot lot = lots.get(lotNumber);
+            Status refusal = checkCanClose(auctioneerName, lot);
+            if (refusal != null) {
+                return CompletableFuture.completedFuture(refusal);
+            }
+            auction = lot.getAuction();
+            
+            // Sealing the auction fixes the winning bid; bids racing with the
+            // close either land before this point or are rejected.
+            Bid winningBid = auction.close();
+            auctioneerLots.remove(auctioneerName, lotNumber);
+            lot.setAuction(null);
+            
+            if (winningBid.getAmount().lessThan(lot.getReservePrice()) || 
+                    !winningBid.hasBidder()) {
+                setLotStatus(lot, LotStatus.UNSOLD);
+                if (j != null) {
+                    position = j.appendCloseAuction(
+                            lotNumber, auction.getRound(), -1, winningBid.getAmount(), LotStatus.UNSOLD);
+                }
+            } else {
+                settlement = newSettlement(lotNumber, auction, winningBid);
+                pendingSettlements.put(lotNumber, settlement);
+                setLotStatus(lot, LotStatus.SOLD_PENDING_PAYMENT);
+                if (j != null) {
+                    position = j.appendCloseAuction(lotNumber, auction.getRound(),
+                            winningBid.getBidder().getId(), winningBid.getAmount(), LotStatus.SOLD_PENDING_PAYMENT);
+                }
+            }
         }
+        awaitJournal(j, position);
         
+        if (settlement == null) {
+            messaging().lotUnsold(auction.getWatcherAddresses(), lotNumber);
+            
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(auctioneerName + " closed auction of lot " + lotNumber + LS
+                        + "Lot was not sold");
+            }
+            return CompletableFuture.completedFuture(Status.of(Status.Kind.NO_SALE));
+        }
         
-        CatalogueEntry entry = onlineCatalogue.get(lotNumber);
-        if (!(entry.status.equals(LotStatus.IN_AUCTION))) {
-            return Status.error("Lot is not being auctioned");
+        return settle(settlement);
+    }
+    
+    /**
+     * Runs a batch of commands in order, sharing per-call work across it.
+     * 
+     * Within the batch no command waits for the journal: the batch waits
+     * once, after its last command, for every record it appended, so a
+     * batched journal forces once per batch. Notifications are held until
+     * then and sent in order, so none goes out before the change it
+     * announces is durable; a house with no journal sends them as it goes.
+     * A run of consecutive commands on lots that
+     * share a lock stripe takes the stripe's lock once for the run.
+     * 
+     * A close may pay out money, so the batch first makes everything before
+     * it durable and sends its notifications, and the close then runs as an
+     * ordinary call.
+     */
+    @Override
+    public List<Status> submit(
+            List<Command> commands) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(startBanner("submit " + commands.size() + " commands"));
+        }
+        List<Status> statuses = new ArrayList<Status>(commands.size());
+        Batch batch = new Batch(this, journal != null);
+        BATCH.set(batch);
+        try {
+            int i = 0;
+            while (i < commands.size()) {
+                Command command = commands.get(i);
+                if (command.getKind() == Command.Kind.CLOSE_AUCTION) {
+                    flush(batch);
+                    BATCH.remove();
+                    try {
+                        statuses.add(command.applyTo(this));
+                    } finally {
+                        BATCH.set(batch);
+                    }
+                    i++;
+                } else if (command.locksLot()) {
+                    Object lock = lockFor(command.getLotNumber());
+                    synchronized (lock) {
+                        do {
+                            statuses.add(commands.get(i).applyTo(this));
+                            i++;
+                        } while (i < commands.size()
+                                && commands.get(i).locksLot()
+                                && commands.get(i).getKind() != Command.Kind.CLOSE_AUCTION
+                                && lockFor(commands.get(i).getLotNumber()) == lock);
+                    }
+                } else {
+                    statuses.add(command.applyTo(this));
+                    i++;
+                }
+            }
+        } finally {
+            BATCH.remove();
+            flush(batch);
+        }
+        return statuses;
+    }
+    
+    /*
+     * The payment for a winning bid: the buyer pays the hammer price plus
+     * premium, the seller gets it less commission.
+     */
+    private Settlement newSettlement(int lotNumber, Auction auction, Bid winningBid) {
+        Money bidAmount = winningBid.getAmount();
+        Money buyerTransferAmount = bidAmount.addBasisPoints(buyerPremiumBasisPoints);
+        Money commission = bidAmount.addBasisPoints(commissionBasisPoints);
+        commission = commission.subtract(bidAmount);
+        Money sellerTransferAmount = bidAmount.subtract(commission);
+        return new Settlement(lotNumber, auction.getAuctioneerName(), auction, winningBid,
+                buyerTransferAmount, sellerTransferAmount);
+    }
+    
+    /*
+     * Returns why the auctioneer may not close the lot's auction, or null
+     * if they may. The caller holds the lot's lock.
+     */
+    private Status checkCanClose(String auctioneerName, Lot lot) {
+        if (lot == null) {
+            return Status.error(Status.ErrorCode.LOT_NOT_IN_CATALOGUE);
         }
-
         
-        Auction auction = auctions.get(lotNumber);
+        if (!(lot.getLotStatus().equals(LotStatus.IN_AUCTION))) {
+            return Status.error(Status.ErrorCode.LOT_NOT_IN_AUCTION);
+        }
         
-        String correctAuctioneerName = auction.getAuctioneerName();
+        String correctAuctioneerName = lot.getAuction().getAuctioneerName();
         
         if (!(correctAuctioneerName.equals(auctioneerName))) {
-        	return Status.error(auctioneerName + " does not run this auction");
+        	return Status.error(Status.ErrorCode.NOT_AUCTIONEER, auctioneerName + " does not run this auction");
         }
+        return null;
+    }
+    
+    /*
+     * Runs both legs of a settlement on the settlement executor, one bank
+     * transfer each, without holding any lock. With a payout aggregator the
+     * seller's leg is credited to it instead. A settlement that fails is
+     * handed to the payment recovery scheduler, if there is one.
+     */
+    private CompletableFuture<Status> settle(final Settlement settlement) {
+        final BankingService bank = parameters.bankingService;
+        final String houseAccount = parameters.houseBankAccount;
         
+        return CompletableFuture
+                .supplyAsync(() -> settlement.collectFromBuyer(bank, houseAccount), settlementExecutor)
+                .thenApply(collected -> collected && paySellerLeg(settlement, bank))
+                .handle((paid, failure) -> {
+                    boolean settled = failure == null && paid;
+                    PaymentRecoveryScheduler recovery = paymentRecovery;
+                    if (!settled && recovery != null) {
+                        recovery.schedule(settlement);
+                    }
+                    return finishSettlement(settlement, settled);
+                });
+    }
+    
+    /*
+     * Pays the seller's leg, or credits it to the payout aggregator if set.
+     */
+    private boolean paySellerLeg(Settlement settlement, BankingService bank) {
+        PayoutAggregator payouts = payoutAggregator;
+        if (payouts != null) {
+            return settlement.creditSeller(payouts);
+        }
+        return settlement.paySeller(bank, parameters.houseBankAccount, parameters.houseBankAuthCode);
+    }
+    
+    /*
+     * Settlement callback: moves the lot to SOLD if it was paid for, else
+     * leaves it SOLD_PENDING_PAYMENT.
+     */
+    private Status finishSettlement(Settlement settlement, boolean paid) {
+        int lotNumber = settlement.getLotNumber();
+        String auctioneerName = settlement.getAuctioneerName();
         
-        if ((auction.getCurrentHighestBid().lessEqual(reservePrices.get(lotNumber)) &&
-                !(auction.getCurrentHighestBid().equals(reservePrices.get(lotNumber)))) || 
-                auction.getCurrentHighestBid() == null) {
-            entry.setStatus(LotStatus.UNSOLD);
-            
-            String sellerAddress = auction.getLotSeller().getAddress();
-            parameters.messagingService.lotUnsold(sellerAddress, lotNumber);
-            
-            for (Buyer buyer : auction.getBuyersInterestedInLot()) {
-                    String buyerAddress = buyer.getAddress();
-                    parameters.messagingService.lotUnsold(buyerAddress, lotNumber);
-                
-            }
-            logger.fine(auctioneerName + " closed auction of lot " + lotNumber + LS
-                    + "Lot was not sold");
-            auctions.remove(lotNumber, auction);
-            Status noSale = new Status (Status.Kind.NO_SALE);
-            return noSale;
-        } else {
-            String buyerAccount = auction.getCurrentHighestBidder().getBankAccount();
-            String buyerAuthCode = auction.getCurrentHighestBidder().getBankAuthCode();
-            String houseAccount = parameters.houseBankAccount;
-            String houseAuthCode = parameters.houseBankAuthCode;
-            String sellerAccount = auction.getLotSeller().getBankAccount();
-            
-            Money bidAmount = auction.getCurrentHighestBid();
-            Money buyerTransferAmount = bidAmount.addPercent(parameters.buyerPremium);
-            
-            // transfer amount from Buyer to Auction House
-            if (parameters.bankingService.transfer(buyerAccount, buyerAuthCode, houseAccount, buyerTransferAmount).kind
-                    == Status.Kind.ERROR) {
-                entry.setStatus(LotStatus.SOLD_PENDING_PAYMENT);
+        if (!paid) {
+            if (logger.isLoggable(Level.FINE)) {
                 logger.fine(auctioneerName + " closed auction of lot " + lotNumber + LS
                         + "Lot was sold but payment is still pending");
-                auctions.remove(lotNumber, auction);
-                Status salePendingPayment = new Status (Status.Kind.SALE_PENDING_PAYMENT);
-                return salePendingPayment;
-            } else {
-                parameters.bankingService.transfer(buyerAccount, buyerAuthCode, houseAccount, buyerTransferAmount);
-                
-                Money commission = bidAmount.addPercent(parameters.commission);
-                commission = commission.subtract(bidAmount);
-                Money sellerTransferAmount = bidAmount.subtract(commission);
-                
-                if (parameters.bankingService.transfer(houseAccount, houseAuthCode, sellerAccount, sellerTransferAmount).kind
-                        == Status.Kind.ERROR) {
-                    entry.setStatus(LotStatus.SOLD_PENDING_PAYMENT);
-                    logger.fine(auctioneerName + " closed auction of lot " + lotNumber + LS
-                            + "Lot was sold but payment is still pending");
-                    auctions.remove(lotNumber, auction);
-                    Status salePendingPayment = new Status (Status.Kind.SALE_PENDING_PAYMENT);
-                    return salePendingPayment;
-                } else {
-                    parameters.bankingService.transfer(houseAccount, houseAuthCode, sellerAccount, sellerTransferAmount);
-                    entry.setStatus(LotStatus.SOLD);
-                    
-                    String sellerAddress = auction.getLotSeller().getAddress();
-                    parameters.messagingService.lotSold(sellerAddress, lotNumber);
-                    
-                    for (Buyer buyer : auction.getBuyersInterestedInLot()) {
-                            String buyerAddress = buyer.getAddress();
-                            parameters.messagingService.lotSold(buyerAddress, lotNumber);
-                    }
-                    logger.fine(auctioneerName + " closed auction of lot " + lotNumber + LS
-                            + "Lot was sold");
-                    auctions.remove(lotNumber, auction);
-                    Status sold = new Status (Status.Kind.SALE);
-                    return sold;
-                }
-            
+            }
+            return Status.of(Status.Kind.SALE_PENDING_PAYMENT);
+        }
+        
+        CommandJournal j = journal;
+        long position = 0;
+        synchronized (lockFor(lotNumber)) {
+            // Retries racing each other may both see the sale paid; only
+            // the first finishes it.
+            if (!pendingSettlements.remove(lotNumber, settlement)) {
+                return Status.of(Status.Kind.SALE);
+            }
+            setLotStatus(lots.get(lotNumber), LotStatus.SOLD);
+            if (j != null) {
+                position = j.appendLotStatus(lotNumber, LotStatus.SOLD);
+            }
+        }
+        awaitJournal(j, position);
+        messaging().lotSold(settlement.getAuction().getWatcherAddresses(), lotNumber);
+        
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(auctioneerName + " closed auction of lot " + lotNumber + LS
+                    + "Lot was sold");
+        }
+        return Status.of(Status.Kind.SALE);
+    }
+    
+    /*
+     * Journal replay. These rebuild state exactly as journalled, without
+     * checks, messages or payments; JournalReplayer calls them, along with
+     * the public registration methods, on a house with no journal set.
+     * Each is idempotent, so records already reflected in a loaded snapshot
+     * can be replayed again harmlessly.
+     */
+    
+    Buyer getBuyer(int id) {
+        return buyersById[id];
+    }
+    
+    void restoreOpenAuction(String auctioneerName, String auctioneerAddress, int lotNumber, int round) {
+        synchronized (lockFor(lotNumber)) {
+            Lot lot = lots.get(lotNumber);
+            if (lot.getAuctionsOpened() >= round) {
+                return;
+            }
+            auctioneerLots.put(auctioneerName, lotNumber);
+            startAuction(auctioneerName, auctioneerAddress, lot);
+        }
+    }
+    
+    void restoreBid(int buyerId, int lotNumber, int round, Money amount, long sequence) {
+        Auction auction = lots.get(lotNumber).getAuction();
+        if (auction != null && auction.getRound() == round) {
+            auction.restoreBid(buyersById[buyerId], amount, sequence);
+        }
+    }
+    
+    /*
+     * The close record fixes the winner, so a winning bid the journal lost
+     * is reinstated before the auction is sealed. A sale still to be paid
+     * for gets its settlement back.
+     */
+    void restoreCloseAuction(int lotNumber, int round, int winnerId, Money amount, LotStatus outcome) {
+        synchronized (lockFor(lotNumber)) {
+            Lot lot = lots.get(lotNumber);
+            Auction auction = lot.getAuction();
+            if (auction == null || auction.getRound() != round) {
+                return;
+            }
+            Bid leading = auction.getLeadingBid();
+            if (winnerId >= 0 && (!leading.hasBidder() || leading.getBidder().getId() != winnerId
+                    || !leading.getAmount().equals(amount))) {
+                auction.restoreBid(buyersById[winnerId], amount, leading.getSequence() + 1);
+            }
+            Bid winningBid = auction.close();
+            auctioneerLots.remove(auction.getAuctioneerName(), lotNumber);
+            lot.setAuction(null);
+            setLotStatus(lot, outcome);
+            if (outcome == LotStatus.SOLD_PENDING_PAYMENT) {
+                pendingSettlements.put(lotNumber, newSettlement(lotNumber, auction, winningBid));
+            }
+        }
+    }
+    
+    void restoreLotStatus(int lotNumber, LotStatus status) {
+        synchronized (lockFor(lotNumber)) {
+            setLotStatus(lots.get(lotNumber), status);
+            if (status != LotStatus.SOLD_PENDING_PAYMENT) {
+                pendingSettlements.remove(lotNumber);
+            }
+        }
+    }
+    
+    /*
+     * A credit is made once both legs of a sale have gone through.
+     */
+    void restoreCredit(String sellerAccount, int lotNumber, Money amount) {
+        requirePayoutAggregator().restoreCredit(sellerAccount, lotNumber, amount);
+        synchronized (lockFor(lotNumber)) {
+            Settlement settlement = pendingSettlements.get(lotNumber);
+            if (settlement != null) {
+                settlement.restoreCredited();
+            }
+        }
+    }
+    
+    void restorePayout(String sellerAccount, int lotNumber) {
+        requirePayoutAggregator().restorePayout(sellerAccount, lotNumber);
+    }
+    
+    PayoutAggregator requirePayoutAggregator() {
+        PayoutAggregator payouts = payoutAggregator;
+        if (payouts == null) {
+            throw new IllegalStateException("Seller credits to restore, but no payout aggregator is set");
+        }
+        return payouts;
+    }
+    
+    /*
+     * Snapshots. StateSnapshot captures each lot under its own lock, so
+     * traffic never pauses for a snapshot, and loads lots with restoreLot
+     * into a house that has its buyers and sellers but no lots yet.
+     */
+    
+    Object lockForLot(int lotNumber) {
+        return lockFor(lotNumber);
+    }
+    
+    CommandJournal getJournal() {
+        return journal;
+    }
+    
+    Lot[] getLots() {
+        return lots.toArray();
+    }
+    
+    Buyer[] getBuyers() {
+        synchronized (buyerRegistryLock) {
+            return Arrays.copyOf(buyersById, buyerCount);
+        }
+    }
+    
+    Collection<Seller> getSellers() {
+        return sellers.values();
+    }
+    
+    PayoutAggregator getPayoutAggregator() {
+        return payoutAggregator;
+    }
+    
+    /*
+     * The caller holds the lot's lock.
+     */
+    Settlement getPendingSettlement(int lotNumber) {
+        return pendingSettlements.get(lotNumber);
+    }
+    
+    void restorePendingSettlement(Settlement settlement) {
+        pendingSettlements.put(settlement.getLotNumber(), settlement);
+    }
+    
+    Seller getSeller(String name) {
+        return sellers.get(name);
+    }
+    
+    void restoreLot(Lot lot) {
+        synchronized (lockFor(lot.getId())) {
+            lots.putIfAbsent(lot);
+            catalogueChanged(lot);
+            IntList interested = lot.getInterestedBuyerIds();
+            for (int i = 0; i < interested.size(); i++) {
+                buyersById[interested.get(i)].getLotsInterestedIn().add(lot.getId());
+            }
+            Auction auction = lot.getAuction();
+            if (auction != null) {
+                auctioneerLots.put(auction.getAuctioneerName(), lot.getId());
             }
         }
     }
@@ -0,0 +1,165 @@
+package auctionhouse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the metrics of one house: an {@link OperationMetrics} for
+ * every house operation, every kind of notification and bank transfers,
+ * and gauges for live auctions and catalogue size.
+ *
+ * The metrics are recorded by {@link MeteredAuctionHouse},
+ * {@link MeteredMessagingService} and {@link MeteredBankingService};
+ * {@link #watch} connects the gauges to a house. Recording uses adders
+ * and striped histograms, so it never waits for another thread. House
+ * operations are all counted but only a sample of them timed, one in
+ * {@link #DEFAULT_SAMPLE_EVERY} unless set otherwise; notifications and
+ * transfers are slow enough that every one is timed.
+ * {@link #register} exposes everything as MXBeans under the
+ * {@value #DOMAIN} domain, for JConsole or any other JMX client.
+ */
+public class AuctionHouseMetrics implements AuctionHouseMetricsMXBean {
+
+    public static final String DOMAIN = "auctionhouse";
+    public static final int DEFAULT_SAMPLE_EVERY = 256;
+
+    public static final String VIEW_CATALOGUE = "VIEW_CATALOGUE";
+    public static final String VIEW_CATALOGUE_SINCE = "VIEW_CATALOGUE_SINCE";
+    public static final String SUBMIT = "SUBMIT";
+    public static final String AUCTION_OPENED = "MESSAGE_AUCTION_OPENED";
+    public static final String BID_ACCEPTED = "MESSAGE_BID_ACCEPTED";
+    public static final String LOT_SOLD = "MESSAGE_LOT_SOLD";
+    public static final String LOT_UNSOLD = "MESSAGE_LOT_UNSOLD";
+    public static final String TRANSFER = "BANK_TRANSFER";
+    public static final String TRANSFER_BATCH = "BANK_TRANSFER_BATCH";
+
+    private final String name;
+    private final Map<String, OperationMetrics> operations = new LinkedHashMap<String, OperationMetrics>();
+    private volatile IntSupplier liveAuctions = () -> 0;
+    private volatile IntSupplier catalogueSize = () -> 0;
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+    private MBeanServer server = null;
+
+    /**
+     * @param  name         name of the house, used in the MBeans' object names
+     * @param  sampleEvery  one house operation in how many is timed, a
+     *                      power of two
+     */
+    public AuctionHouseMetrics(String name, int sampleEvery) {
+        this.name = name;
+        for (Command.Kind kind : Command.Kind.values()) {
+            add(kind.name(), sampleEvery);
+        }
+        add(VIEW_CATALOGUE, sampleEvery);
+        add(VIEW_CATALOGUE_SINCE, sampleEvery);
+        add(SUBMIT, sampleEvery);
+        add(AUCTION_OPENED, 1);
+        add(BID_ACCEPTED, 1);
+        add(LOT_SOLD, 1);
+        add(LOT_UNSOLD, 1);
+        add(TRANSFER, 1);
+        add(TRANSFER_BATCH, 1);
+    }
+
+    public AuctionHouseMetrics(String name) {
+        this(name, DEFAULT_SAMPLE_EVERY);
+    }
+
+    private void add(String operation, int sampleEvery) {
+        operations.put(operation, new OperationMetrics(operation, sampleEvery));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the metrics of an operation: a command kind's name or one
+     * of the constants above.
+     */
+    public OperationMetrics operation(String operation) {
+        OperationMetrics metrics = operations.get(operation);
+        if (metrics == null) {
+            throw new IllegalArgumentException("No metrics for operation " + operation);
+        }
+        return metrics;
+    }
+
+    public OperationMetrics operation(Command.Kind kind) {
+        return operation(kind.name());
+    }
+
+    /**
+     * Takes the live auction and catalogue size gauges from a house.
+     */
+    public void watch(AuctionHouseImp house) {
+        liveAuctions = house::getLiveAuctionCount;
+        catalogueSize = house::getLotCount;
+    }
+
+    public int getLiveAuctions() {
+        return liveAuctions.getAsInt();
+    }
+
+    public int getCatalogueSize() {
+        return catalogueSize.getAsInt();
+    }
+
+    public List<String> getOperationNames() {
+        return Collections.unmodifiableList(new ArrayList<String>(operations.keySet()));
+    }
+
+    /**
+     * Registers this registry as {@code auctionhouse:type=AuctionHouse,name=<name>}
+     * and each operation as
+     * {@code auctionhouse:type=Operation,house=<name>,name=<operation>}.
+     */
+    public synchronized void register(MBeanServer server) throws JMException {
+        if (this.server != null) {
+            throw new IllegalStateException("Metrics of " + name + " are already registered");
+        }
+        this.server = server;
+        try {
+            registerBean(this, new ObjectName(DOMAIN + ":type=AuctionHouse,name=" + ObjectName.quote(name)));
+            for (OperationMetrics metrics : operations.values()) {
+                registerBean(metrics, new ObjectName(DOMAIN + ":type=Operation,house=" + ObjectName.quote(name)
+                        + ",name=" + metrics.getName()));
+            }
+        } catch (JMException e) {
+            unregister();
+            throw e;
+        }
+    }
+
+    private void registerBean(Object bean, ObjectName objectName) throws JMException {
+        server.registerMBean(bean, objectName);
+        registered.add(objectName);
+    }
+
+    /**
+     * Removes every MBean {@link #register} added.
+     */
+    public synchronized void unregister() throws JMException {
+        if (server == null) {
+            return;
+        }
+        try {
+            for (ObjectName objectName : registered) {
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+            }
+        } finally {
+            registered.clear();
+            server = null;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package auctionhouse;
+
+import java.util.List;
+
+/**
+ * Management view of an {@link AuctionHouseMetrics}. Each operation has
+ * its own {@link OperationMetricsMXBean}.
+ */
+public interface AuctionHouseMetricsMXBean {
+
+    int getLiveAuctions();
+
+    int getCatalogueSize();
+
+    List<String> getOperationNames();
+}
@@ -0,0 +1,220 @@
+package auctionhouse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class AuctionHouseMetricsTest {
+
+    private static class SilentMessagingService implements MessagingService {
+        public void auctionOpened(String address, int lotNumber) { }
+        public void bidAccepted(String address, int lotNumber, Money amount) { }
+        public void lotSold(String address, int lotNumber) { }
+        public void lotUnsold(String address, int lotNumber) { }
+    }
+
+    private static void assertClose(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected + expected / 8);
+    }
+
+    @Test
+    public void testHistogramPercentiles() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99.0));
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (long v = 1; v <= 10000; v++) {
+                    histogram.record(v);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, histogram.getCount());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000.5, histogram.getMean(), 1e-9);
+        assertEquals(1, histogram.getValueAtPercentile(0.0));
+        assertClose(5000, histogram.getValueAtPercentile(50.0));
+        assertClose(9900, histogram.getValueAtPercentile(99.0));
+        assertEquals(10000, histogram.getValueAtPercentile(100.0));
+    }
+
+    private static AuctionHouseMetrics sale(AuctionHouseMetrics metrics) {
+        AuctionHouseImp imp = new AuctionHouseImp(
+                new Parameters(10.0, 15.0, new Money("1.00"), "AH A/C", "AH-auth",
+                        new MeteredMessagingService(new SilentMessagingService(), metrics),
+                        new MeteredBankingService(new MockBankingService(), metrics)));
+        metrics.watch(imp);
+        AuctionHouse house = new MeteredAuctionHouse(imp, metrics);
+
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth");
+        house.registerBuyer("BuyerB", "@BuyerB", "BB A/C", "BB-auth");
+        house.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth");
+        house.addLot("SellerY", 1, "Bicycle", new Money("50.00"));
+        house.noteInterest("BuyerA", 1);
+        house.noteInterest("BuyerB", 1);
+        house.viewCatalogue();
+        house.openAuction("Auctioneer1", "@Auctioneer1", 1);
+        assertEquals(1, metrics.getLiveAuctions());
+        house.makeBid("BuyerA", 1, new Money("60.00"));
+        house.makeBid("BuyerB", 1, new Money("60.50"));
+        house.makeBid("BuyerB", 1, new Money("70.00"));
+        house.closeAuction("Auctioneer1", 1);
+        return metrics;
+    }
+
+    @Test
+    public void testMeteredSaleCountsOutcomes() {
+        AuctionHouseMetrics metrics = sale(new AuctionHouseMetrics("test", 1));
+
+        assertEquals(0, metrics.getLiveAuctions());
+        assertEquals(1, metrics.getCatalogueSize());
+
+        OperationMetrics register = metrics.operation(Command.Kind.REGISTER_BUYER);
+        assertEquals(3, register.getCount());
+        assertEquals(2, register.getCount(Status.Kind.OK));
+        assertEquals(1, register.getCount(Status.Kind.ERROR));
+        assertEquals(3, register.getLatency().getCount());
+
+        OperationMetrics bids = metrics.operation(Command.Kind.MAKE_BID);
+        assertEquals(2, bids.getCount(Status.Kind.OK));
+        assertEquals(1, bids.getCount(Status.Kind.ERROR));
+        assertEquals(1, metrics.operation(Command.Kind.CLOSE_AUCTION).getCount(Status.Kind.SALE));
+        assertEquals(1, metrics.operation(AuctionHouseMetrics.VIEW_CATALOGUE).getCount());
+
+        assertEquals(1, metrics.operation(AuctionHouseMetrics.AUCTION_OPENED).getCount());
+        assertEquals(2, metrics.operation(AuctionHouseMetrics.BID_ACCEPTED).getCount());
+        assertEquals(1, metrics.operation(AuctionHouseMetrics.LOT_SOLD).getCount());
+        OperationMetrics transfers = metrics.operation(AuctionHouseMetrics.TRANSFER);
+        assertTrue(transfers.getCount() > 0);
+        assertEquals(transfers.getCount(), transfers.getCount(Status.Kind.OK));
+    }
+
+    @Test
+    public void testBatchCountsEachCommand() {
+        AuctionHouseMetrics metrics = new AuctionHouseMetrics("batch");
+        AuctionHouse house = new MeteredAuctionHouse(new AuctionHouseImp(
+                new Parameters(10.0, 15.0, new Money("1.00"), "AH A/C", "AH-auth",
+                        new SilentMessagingService(), new MockBankingService())), metrics);
+        List<Command> commands = new ArrayList<Command>();
+        commands.add(Command.registerSeller("SellerY", "@SellerY", "SY A/C"));
+        commands.add(Command.addLot("SellerY", 1, "Bicycle", new Money("50.00")));
+        commands.add(Command.addLot("SellerY", 1, "Bicycle", new Money("50.00")));
+        house.submit(commands);
+
+        assertEquals(1, metrics.operation(AuctionHouseMetrics.SUBMIT).getCount());
+        assertEquals(1, metrics.operation(Command.Kind.ADD_LOT).getCount(Status.Kind.OK));
+        assertEquals(1, metrics.operation(Command.Kind.ADD_LOT).getCount(Status.Kind.ERROR));
+        assertEquals(0, metrics.operation(Command.Kind.ADD_LOT).getLatency().getCount());
+    }
+
+    @Test
+    public void testSampledTiming() {
+        OperationMetrics metrics = new OperationMetrics("sampled", 16);
+        for (int i = 0; i < 16000; i++) {
+            metrics.end(metrics.start(), Status.Kind.OK);
+        }
+        assertEquals(16000, metrics.getCount(Status.Kind.OK));
+        long timed = metrics.getLatency().getCount();
+        assertTrue("Timed " + timed + " of 16000", timed > 500 && timed < 2000);
+    }
+
+    @Test
+    public void testHashedSamplingTimesAFraction() {
+        OperationMetrics metrics = new OperationMetrics("hashed", 16);
+        for (int i = 0; i < 16000; i++) {
+            metrics.end(metrics.start(i), Status.Kind.OK);
+        }
+        assertEquals(16000, metrics.getCount(Status.Kind.OK));
+        long timed = metrics.getLatency().getCount();
+        assertTrue("Timed " + timed + " of 16000", timed > 500 && timed < 2000);
+    }
+
+    private static void countCalls(OperationMetrics metrics, int calls) {
+        for (int i = 0; i < calls; i++) {
+            metrics.end(metrics.start(), i % 10 == 0 ? Status.Kind.ERROR : Status.Kind.OK);
+        }
+        metrics.count(Status.Kind.OK);
+    }
+
+    @Test
+    public void testCountsFromManyThreadsAreExact() throws InterruptedException {
+        // Many threads counting at once, then as many again one after
+        // another, so the counts must be exact under contention and across
+        // threads that have died.
+        final OperationMetrics metrics = new OperationMetrics("threads", 4);
+        final int threads = 100;
+        final int calls = 1000;
+        final CountDownLatch started = new CountDownLatch(threads);
+        final CountDownLatch counted = new CountDownLatch(threads);
+        List<Thread> together = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                started.countDown();
+                try {
+                    started.await();
+                    countCalls(metrics, calls);
+                    counted.countDown();
+                    counted.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.setDaemon(true);
+            together.add(thread);
+            thread.start();
+        }
+        for (Thread thread : together) {
+            thread.join();
+        }
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> countCalls(metrics, calls));
+            thread.setDaemon(true);
+            thread.start();
+            thread.join();
+        }
+
+        assertEquals(2 * threads * (calls / 10), metrics.getCount(Status.Kind.ERROR));
+        assertEquals(2 * threads * (calls - calls / 10 + 1), metrics.getCount(Status.Kind.OK));
+        assertEquals(2 * threads * (calls + 1), metrics.getCount());
+        assertTrue(metrics.getLatency().getCount() > 0);
+    }
+
+    @Test
+    public void testMBeansExposeMetrics() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        AuctionHouseMetrics metrics = sale(new AuctionHouseMetrics("jmx-test", 1));
+        metrics.register(server);
+        ObjectName house = new ObjectName("auctionhouse:type=AuctionHouse,name=\"jmx-test\"");
+        ObjectName bids = new ObjectName("auctionhouse:type=Operation,house=\"jmx-test\",name=MAKE_BID");
+        try {
+            assertEquals(1, server.getAttribute(house, "CatalogueSize"));
+            assertEquals(0, server.getAttribute(house, "LiveAuctions"));
+            assertEquals(3L, server.getAttribute(bids, "Count"));
+            assertTrue((Long) server.getAttribute(bids, "MaxLatencyNanos") > 0);
+            assertTrue(server.getAttribute(bids, "OutcomeCounts") != null);
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(server.isRegistered(house));
+        assertFalse(server.isRegistered(bids));
+    }
+}
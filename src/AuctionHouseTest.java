@@ -4,6 +4,7 @@
 package auctionhouse;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -456,4 +457,105 @@ public class AuctionHouseTest {
     	assertNoSale(house.closeAuction("Auctioneer1",  1));
     	assertTrue(house.getOnlineCatalogue().get(1).status == LotStatus.UNSOLD);
     }
+    @Test
+    public void testLotRunByAuctioneer() {
+        logger.info(makeBanner("testLotRunByAuctioneer"));
+        runFullStory(4);
+        assertEquals(Integer.valueOf(1), house.getLotRunBy("Auctioneer1"));
+        assertEquals(null, house.getLotRunBy("Auctioneer2"));
+        assertNoSale(house.closeAuction("Auctioneer1", 1));
+        assertEquals(null, house.getLotRunBy("Auctioneer1"));
+    }
+    @Test
+    public void testCatalogueSnapshotIsStable() {
+        logger.info(makeBanner("testCatalogueSnapshotIsStable"));
+        runFullStory(3);
+        CatalogueSnapshot before = house.getCatalogueSnapshot();
+        assertTrue(before == house.getCatalogueSnapshot());
+        List<CatalogueEntry> entries = house.viewCatalogue();
+        
+        assertOK(house.openAuction("Auctioneer1", "@Auctioneer1", 1));
+        CatalogueSnapshot after = house.getCatalogueSnapshot();
+        assertTrue(after.getVersion() > before.getVersion());
+        assertEquals(LotStatus.UNSOLD, entries.get(0).status);
+        assertEquals(LotStatus.IN_AUCTION, after.getEntries().get(0).status);
+    }
+    @Test
+    public void testViewCataloguePages() {
+        logger.info(makeBanner("testViewCataloguePages"));
+        runStory(2);
+        
+        List<CatalogueEntry> firstPage = house.viewCatalogue(Integer.MIN_VALUE, 2);
+        assertEquals(2, firstPage.size());
+        assertEquals(1, firstPage.get(0).lotNumber);
+        assertEquals(2, firstPage.get(1).lotNumber);
+        
+        List<CatalogueEntry> secondPage = house.viewCatalogue(firstPage.get(1).lotNumber + 1, 2);
+        assertEquals(1, secondPage.size());
+        assertEquals(5, secondPage.get(0).lotNumber);
+        assertTrue(house.viewCatalogue(6, 2).isEmpty());
+        assertTrue(house.viewCatalogue(1, 0).isEmpty());
+    }
+
+    @Test
+    public void testViewCataloguePagesSeeEveryChange() {
+        logger.info(makeBanner("testViewCataloguePagesSeeEveryChange"));
+        runFullStory(3);
+
+        assertOK(house.addLot("SellerY", 3, "Lamp", new Money("10.00")));
+        assertEquals(new CatalogueEntry(3, "Lamp", LotStatus.UNSOLD), house.viewCatalogue(3, 1).get(0));
+
+        assertOK(house.openAuction("Auctioneer1", "@Auctioneer1", 2));
+        List<CatalogueEntry> expected = new ArrayList<CatalogueEntry>();
+        expected.add(new CatalogueEntry(2, "Painting", LotStatus.IN_AUCTION));
+        expected.add(new CatalogueEntry(3, "Lamp", LotStatus.UNSOLD));
+        assertEquals(expected, house.viewCatalogue(2, 2));
+        assertEquals(expected, house.viewCatalogueRange(2, 4));
+    }
+
+    @Test
+    public void testViewCatalogueRange() {
+        logger.info(makeBanner("testViewCatalogueRange"));
+        runStory(2);
+        
+        List<CatalogueEntry> expected = new ArrayList<CatalogueEntry>();
+        expected.add(new CatalogueEntry(2, "Painting", LotStatus.UNSOLD));
+        expected.add(new CatalogueEntry(5, "Table", LotStatus.UNSOLD));
+        assertEquals(expected, house.viewCatalogueRange(2, 5));
+        assertEquals(expected, house.viewCatalogueRange(2, Integer.MAX_VALUE));
+        assertTrue(house.viewCatalogueRange(3, 4).isEmpty());
+        assertTrue(house.viewCatalogueRange(5, 1).isEmpty());
+    }
+    @Test
+    public void testViewCatalogueSince() {
+        logger.info(makeBanner("testViewCatalogueSince"));
+        runFullStory(3);
+        CatalogueChanges initial = house.viewCatalogueSince(0);
+        assertFalse(initial.isFullSnapshot());
+        assertEquals(3, initial.getEntries().size());
+        
+        assertOK(house.openAuction("Auctioneer1", "@Auctioneer1", 1));
+        CatalogueChanges changes = house.viewCatalogueSince(initial.getVersion());
+        assertFalse(changes.isFullSnapshot());
+        assertEquals(1, changes.getEntries().size());
+        assertEquals(new CatalogueEntry(1, "Bicycle", LotStatus.IN_AUCTION), changes.getEntries().get(0));
+        
+        assertTrue(house.viewCatalogueSince(changes.getVersion()).getEntries().isEmpty());
+        
+        // A version the house never issued gets the full catalogue
+        CatalogueChanges full = house.viewCatalogueSince(changes.getVersion() + 100);
+        assertTrue(full.isFullSnapshot());
+        assertEquals(house.viewCatalogue(), full.getEntries());
+    }
+    @Test
+    public void testChangeLogForgetsOldChanges() {
+        logger.info(makeBanner("testChangeLogForgetsOldChanges"));
+        CatalogueChangeLog log = new CatalogueChangeLog(2);
+        for (int lot = 1; lot <= 3; lot++) {
+            log.append(new CatalogueEntry(lot, "Lot", LotStatus.UNSOLD));
+        }
+        assertEquals(null, log.changesSince(0));
+        assertEquals(2, log.changesSince(1).getEntries().size());
+        assertEquals(3, log.changesSince(1).getEntries().get(1).lotNumber);
+    }
 }
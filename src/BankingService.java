@@ -3,6 +3,9 @@
  */
 package auctionhouse;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author pbj
  *
@@ -14,5 +17,24 @@ public interface BankingService {
             String senderAuthCode,
             String receiverAccount,
             Money amount);
+    
+    /**
+     * Makes several transfers from one account in a single request.
+     * 
+     * The default makes each transfer in turn; a bank with a bulk payment
+     * API should override it.
+     * 
+     * @return  one status per transfer, in the same order
+     */
+    default List<Status> transferBatch(
+            String senderAccount,
+            String senderAuthCode,
+            List<Transfer> transfers) {
+        List<Status> statuses = new ArrayList<Status>(transfers.size());
+        for (Transfer t : transfers) {
+            statuses.add(transfer(senderAccount, senderAuthCode, t.receiverAccount, t.amount));
+        }
+        return statuses;
+    }
 
 }
@@ -0,0 +1,75 @@
+package auctionhouse;
+
+/**
+ * Immutable record of the leading bid in an auction.
+ * 
+ * The amount, the bidder and the bid's sequence number are held together so
+ * that an auction can swap the whole record in one compare-and-set. A record
+ * with no bidder and sequence 0 stands for an auction with no bids yet. Once
+ * the auction closes its record is sealed and no further bid can replace it.
+ */
+public final class Bid {
+    
+    private static final Bid NONE = new Bid(Money.ZERO, null, 0, true);
+    
+    private final Money amount;
+    private final Buyer bidder;
+    private final long sequence;
+    private final boolean open;
+    
+    private Bid(Money amount, Buyer bidder, long sequence, boolean open) {
+        this.amount = amount;
+        this.bidder = bidder;
+        this.sequence = sequence;
+        this.open = open;
+    }
+    
+    /**
+     * Returns the record of an auction that has just opened.
+     */
+    public static Bid none() {
+        return NONE;
+    }
+    
+    /**
+     * Returns the record that would replace this one if the given bid won.
+     */
+    Bid next(Buyer bidder, Money amount) {
+        return new Bid(amount, bidder, sequence + 1, true);
+    }
+    
+    /**
+     * Returns the record of a bid as recovered from a journal.
+     */
+    static Bid restored(Buyer bidder, Money amount, long sequence) {
+        return new Bid(amount, bidder, sequence, true);
+    }
+    
+    /**
+     * Returns a copy of this record that no bid can replace.
+     */
+    Bid sealed() {
+        return new Bid(amount, bidder, sequence, false);
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    public Buyer getBidder() {
+        return bidder;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+    
+    public boolean hasBidder() {
+        return bidder != null;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+}
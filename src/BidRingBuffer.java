@@ -0,0 +1,259 @@
+package auctionhouse;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ingestion stage for bursts of bids: a fixed ring of reusable slots in
+ * front of an {@link AuctionHouse}, with any number of producers and one
+ * consumer thread that applies the bids to the house in sequence.
+ *
+ * A producer claims the next sequence number, waits until the slot that
+ * number maps to has been released by its previous use, writes the bid's
+ * fields into the slot and publishes it. The consumer takes slots strictly
+ * in sequence order, calls makeBid and stores the status in the slot.
+ * {@link #makeBid} waits for that status, then releases the slot;
+ * {@link #offerBid} does not wait, and the consumer releases the slot
+ * itself.
+ *
+ * Slots are allocated once, up front, so handing a bid over allocates
+ * nothing. Threads spin briefly, then yield, then park while they wait;
+ * a caller waiting for its status is unparked by the consumer. An idle
+ * consumer parks until a producer publishes or the ring closes, so an
+ * empty ring costs no CPU.
+ */
+public class BidRingBuffer implements AutoCloseable {
+
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    /*
+     * One reusable bid. A slot moves through its uses in sequence numbers
+     * spaced one capacity apart; each field below holds the sequence
+     * number of the latest use to reach that point.
+     */
+    private static final class Slot {
+        String buyerName;
+        int lotNumber;
+        Money amount;
+        Status result;
+        boolean callerWaiting;
+        volatile Thread waiter;
+        volatile long published;
+        volatile long completed;
+        volatile long released;
+    }
+
+    private final AuctionHouse house;
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong(); // next sequence to claim, with CLOSED once closed
+    private final Thread consumer;
+    private volatile long consumed = 0;               // sequences below this have been applied
+    private volatile long end = -1;                   // first sequence never claimed, once closed
+    private volatile boolean consumerParked = false;  // set before the consumer's last check, then parks
+
+    /**
+     * Starts the consumer thread.
+     *
+     * @param  house     house the bids are made on
+     * @param  capacity  slots in the ring, a power of two
+     */
+    public BidRingBuffer(AuctionHouse house, int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two");
+        }
+        this.house = house;
+        this.slots = new Slot[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            Slot slot = new Slot();
+            // As if each slot's previous use had finished.
+            slot.published = i - capacity;
+            slot.completed = i - capacity;
+            slot.released = i - capacity;
+            slots[i] = slot;
+        }
+        consumer = new Thread(this::consume, "auctionhouse-bid-ring");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /*
+     * Waiting: spin, then yield, then park briefly.
+     */
+    private static int idle(int spins) {
+        if (spins < 100) {
+            Thread.onSpinWait();
+        } else if (spins < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(10_000);
+        }
+        return spins + 1;
+    }
+
+    /*
+     * Claims a sequence number and its slot, once the slot is free.
+     */
+    private long claim() {
+        long sequence;
+        do {
+            sequence = next.get();
+            if (sequence < 0) {
+                throw new IllegalStateException("Bid ring is closed");
+            }
+        } while (!next.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = slots[(int) sequence & mask];
+        long previous = sequence - slots.length;
+        for (int spins = 0; slot.released != previous; ) {
+            spins = idle(spins);
+        }
+        return sequence;
+    }
+
+    private Slot publish(long sequence, String buyerName, int lotNumber, Money amount, boolean callerWaiting) {
+        Slot slot = slots[(int) sequence & mask];
+        slot.buyerName = buyerName;
+        slot.lotNumber = lotNumber;
+        slot.amount = amount;
+        slot.result = null;
+        slot.callerWaiting = callerWaiting;
+        slot.waiter = callerWaiting ? Thread.currentThread() : null;
+        slot.published = sequence;
+        wakeConsumer();
+        return slot;
+    }
+
+    /*
+     * Called after publishing or closing. The consumer sets its flag before
+     * checking again, so either it sees the change or this sees the flag.
+     */
+    private void wakeConsumer() {
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Makes a bid through the ring and waits for its status.
+     */
+    public Status makeBid(String buyerName, int lotNumber, Money amount) {
+        long sequence = claim();
+        Slot slot = publish(sequence, buyerName, lotNumber, amount, true);
+        for (int spins = 0; slot.completed != sequence; ) {
+            if (spins < 200) {
+                spins = idle(spins);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+        Status result = slot.result;
+        slot.result = null;
+        slot.released = sequence;
+        return result;
+    }
+
+    /**
+     * Makes a bid through the ring without waiting for it to be applied.
+     *
+     * @return  the bid's sequence number; see {@link #getConsumedCount}
+     */
+    public long offerBid(String buyerName, int lotNumber, Money amount) {
+        long sequence = claim();
+        publish(sequence, buyerName, lotNumber, amount, false);
+        return sequence;
+    }
+
+    private void consume() {
+        long sequence = 0;
+        int spins = 0;
+        while (true) {
+            Slot slot = slots[(int) sequence & mask];
+            if (slot.published != sequence) {
+                if (isEnd(sequence)) {
+                    return;
+                }
+                if (spins < 200) {
+                    spins = idle(spins);
+                    continue;
+                }
+                consumerParked = true;
+                if (slot.published != sequence && !isEnd(sequence)) {
+                    LockSupport.park(this);
+                }
+                consumerParked = false;
+                continue;
+            }
+            spins = 0;
+
+            Status result;
+            try {
+                result = house.makeBid(slot.buyerName, slot.lotNumber, slot.amount);
+            } catch (RuntimeException e) {
+                result = Status.error(Status.ErrorCode.OTHER, "Bid failed: " + e);
+            }
+            slot.buyerName = null;
+            slot.amount = null;
+            if (slot.callerWaiting) {
+                slot.result = result;
+                Thread waiter = slot.waiter;
+                slot.completed = sequence;
+                LockSupport.unpark(waiter);
+            } else {
+                slot.completed = sequence;
+                slot.released = sequence;
+            }
+            sequence++;
+            consumed = sequence;
+        }
+    }
+
+    private boolean isEnd(long sequence) {
+        long last = end;
+        return last >= 0 && sequence >= last;
+    }
+
+    /**
+     * Returns the number of bids applied to the house so far.
+     */
+    public long getConsumedCount() {
+        return consumed;
+    }
+
+    /**
+     * Returns the number of bids claimed but not yet applied.
+     */
+    public long getBacklog() {
+        long claimed = next.get() & ~CLOSED;
+        return claimed - consumed;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Refuses further bids, applies every bid already handed over and
+     * stops the consumer. If the calling thread is interrupted, close stops
+     * waiting for the consumer, which still drains the ring, and returns
+     * with the thread's interrupt status set.
+     */
+    public void close() {
+        long claimed;
+        do {
+            claimed = next.get();
+            if (claimed < 0) {
+                return;
+            }
+        } while (!next.compareAndSet(claimed, claimed | CLOSED));
+        end = claimed;
+        wakeConsumer();
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
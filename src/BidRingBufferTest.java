@@ -0,0 +1,165 @@
+package auctionhouse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class BidRingBufferTest {
+
+    /*
+     * Counts the bids that reach the house.
+     */
+    private static class CountingHouse extends AuctionHouseImp {
+        final AtomicLong bids = new AtomicLong();
+
+        CountingHouse() {
+            super(new Parameters(10.0, 15.0, new Money("1.00"), "AH A/C", "AH-auth",
+                    new MockMessagingService(), new MockBankingService()));
+        }
+
+        @Override
+        public Status makeBid(String buyerName, int lotNumber, Money bid) {
+            bids.incrementAndGet();
+            return super.makeBid(buyerName, lotNumber, bid);
+        }
+    }
+
+    private static CountingHouse openLots(int lots, int buyers) {
+        CountingHouse house = new CountingHouse();
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        for (int b = 0; b < buyers; b++) {
+            house.registerBuyer("Buyer" + b, "@Buyer" + b, "B" + b + " A/C", "B" + b + "-auth");
+        }
+        for (int lot = 1; lot <= lots; lot++) {
+            house.addLot("SellerY", lot, "Lot " + lot, new Money("50.00"));
+            for (int b = 0; b < buyers; b++) {
+                house.noteInterest("Buyer" + b, lot);
+            }
+            house.openAuction("Auctioneer" + lot, "@Auctioneer" + lot, lot);
+        }
+        return house;
+    }
+
+    @Test
+    public void testAppliesBidsFromManyProducers() throws Exception {
+        final int producers = 8;
+        final int bids = 2000;
+        CountingHouse house = openLots(producers, producers);
+        final BidRingBuffer ring = new BidRingBuffer(house, 64);
+        final AtomicLong failures = new AtomicLong();
+
+        // Each producer raises the bid on its own lot, waiting for each.
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int lot = p + 1;
+            final String buyer = "Buyer" + p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < bids; i++) {
+                    if (ring.makeBid(buyer, lot, Money.ofPence(5000 + 200 * i)).kind != Status.Kind.OK) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        ring.close();
+
+        assertEquals(0, failures.get());
+        assertEquals(producers * bids, house.bids.get());
+        assertEquals(producers * bids, ring.getConsumedCount());
+        for (int lot = 1; lot <= producers; lot++) {
+            assertEquals(Status.Kind.SALE, house.closeAuction("Auctioneer" + lot, lot).kind);
+        }
+    }
+
+    @Test
+    public void testReportsRejectedBids() throws Exception {
+        CountingHouse house = openLots(1, 2);
+        BidRingBuffer ring = new BidRingBuffer(house, 4);
+        assertEquals(Status.Kind.OK, ring.makeBid("Buyer0", 1, new Money("60.00")).kind);
+        assertEquals(Status.Kind.ERROR, ring.makeBid("Buyer1", 1, new Money("60.50")).kind);
+        assertEquals(Status.Kind.ERROR, ring.makeBid("Nobody", 1, new Money("90.00")).kind);
+        ring.close();
+    }
+
+    @Test
+    public void testCloseAppliesOfferedBids() throws Exception {
+        CountingHouse house = openLots(4, 1);
+        BidRingBuffer ring = new BidRingBuffer(house, 8);
+        for (int i = 0; i < 1000; i++) {
+            ring.offerBid("Buyer0", 1 + i % 4, Money.ofPence(5000 + 200 * i));
+        }
+        ring.close();
+        assertEquals(1000, house.bids.get());
+        assertEquals(0, ring.getBacklog());
+    }
+
+    private static Thread.State consumerState() {
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("auctionhouse-bid-ring") && t.isAlive()) {
+                return t.getState();
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testIdleConsumerParksUntilABidArrives() throws Exception {
+        CountingHouse house = openLots(1, 1);
+        BidRingBuffer ring = new BidRingBuffer(house, 8);
+        assertEquals(Status.Kind.OK, ring.makeBid("Buyer0", 1, new Money("60.00")).kind);
+
+        // Parked without a timeout, not polling.
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (consumerState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.WAITING, consumerState());
+
+        assertEquals(Status.Kind.OK, ring.makeBid("Buyer0", 1, new Money("70.00")).kind);
+        ring.offerBid("Buyer0", 1, new Money("80.00"));
+        ring.close();
+        assertEquals(3, house.bids.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRefusesBidsOnceClosed() throws Exception {
+        BidRingBuffer ring = new BidRingBuffer(openLots(1, 1), 8);
+        ring.close();
+        ring.offerBid("Buyer0", 1, new Money("60.00"));
+    }
+
+    @Test
+    public void testHandingOverBidsAllocatesNothing() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        CountingHouse house = openLots(1, 1);
+        BidRingBuffer ring = new BidRingBuffer(house, 1024);
+        Money amount = new Money("10.00");
+
+        // Warm up, then measure this producer thread only.
+        for (int i = 0; i < 20000; i++) {
+            ring.offerBid("Buyer0", 1, amount);
+        }
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 100000; i++) {
+            ring.offerBid("Buyer0", 1, amount);
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        ring.close();
+
+        assertEquals(120000, house.bids.get());
+        assertTrue("Allocated " + allocated + " bytes", allocated < 100000);
+    }
+}
@@ -0,0 +1,600 @@
+package auctionhouse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary form of the domain types and of the events that change an
+ * auction house, read and written directly in a {@link ByteBuffer}, heap or
+ * direct.
+ *
+ * Every encoded value starts with a one-byte type tag and a one-byte format
+ * version, followed by its fields in big-endian order: fixed-size fields
+ * first, then strings, each an int byte count and that many UTF-8 bytes.
+ * Amounts are whole pence. Readers reject a value whose version is newer
+ * than {@link #VERSION}; a format change must bump the version and keep
+ * reading the old one.
+ *
+ * Encoding writes straight into the buffer and allocates nothing; the
+ * caller makes sure there is room, using the <code>maxLength</code>
+ * methods or the fixed lengths below. The <code>read</code> methods decode
+ * a whole object from the buffer's position. The views are flyweights: one
+ * wraps an encoded value in place and reads single fields from it on
+ * demand, so the fixed-size fields of an event can be inspected without
+ * decoding its strings or allocating anything, and a view can be reused
+ * for value after value.
+ */
+public final class BinaryCodec {
+
+    /*
+     * 1: first format.
+     * 2: a status carries its error code, after its kind.
+     */
+    public static final byte VERSION = 2;
+
+    /*
+     * Type tags
+     */
+    public static final byte MONEY = 1;
+    public static final byte CATALOGUE_ENTRY = 2;
+    public static final byte STATUS = 3;
+    public static final byte BUYER = 4;
+    public static final byte SELLER = 5;
+    public static final byte ADD_LOT_EVENT = 6;
+    public static final byte INTEREST_EVENT = 7;
+    public static final byte OPEN_EVENT = 8;
+    public static final byte BID_EVENT = 9;
+    public static final byte CLOSE_EVENT = 10;
+    public static final byte LOT_STATUS_EVENT = 11;
+    public static final byte CREDIT_EVENT = 12;
+    public static final byte PAYOUT_EVENT = 13;
+
+    private static final int TAG = 2; // tag and version bytes
+
+    public static final int MONEY_LENGTH = TAG + 8;
+    public static final int INTEREST_EVENT_LENGTH = TAG + 8;
+    public static final int BID_EVENT_LENGTH = TAG + 28;
+    public static final int CLOSE_EVENT_LENGTH = TAG + 21;
+    public static final int LOT_STATUS_EVENT_LENGTH = TAG + 5;
+
+    private static final LotStatus[] LOT_STATUSES = LotStatus.values();
+    private static final Status.Kind[] KINDS = Status.Kind.values();
+    private static final Status.ErrorCode[] CODES = Status.ErrorCode.values();
+
+    private BinaryCodec() {
+    }
+
+    /*
+     * Strings
+     */
+
+    /**
+     * Returns the most bytes a string can take once encoded.
+     */
+    public static int maxLength(String value) {
+        return 4 + 3 * value.length();
+    }
+
+    /**
+     * Writes a string as its UTF-8 byte count and bytes, encoding it
+     * character by character rather than through a byte array.
+     */
+    public static void putString(ByteBuffer b, String value) {
+        int lengthAt = b.position();
+        b.putInt(0);
+        int start = b.position();
+        int n = value.length();
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                b.put((byte) c);
+            } else if (c < 0x800) {
+                b.put((byte) (0xC0 | (c >> 6)));
+                b.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                b.put((byte) (0xF0 | (cp >> 18)));
+                b.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                b.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                b.put((byte) (0x80 | (cp & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // An unpaired surrogate, replaced as String.getBytes does.
+                b.put((byte) '?');
+            } else {
+                b.put((byte) (0xE0 | (c >> 12)));
+                b.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                b.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        b.putInt(lengthAt, b.position() - start);
+    }
+
+    /**
+     * Reads a string written by {@link #putString}, advancing the position.
+     */
+    public static String getString(ByteBuffer b) {
+        int offset = b.position();
+        String value = getString(b, offset);
+        b.position(offset + 4 + b.getInt(offset));
+        return value;
+    }
+
+    /**
+     * Reads the string at an absolute offset, leaving the position alone.
+     */
+    public static String getString(ByteBuffer b, int offset) {
+        int length = b.getInt(offset);
+        if (b.hasArray()) {
+            return new String(b.array(), b.arrayOffset() + offset + 4, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = b.get(offset + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int skipString(ByteBuffer b, int offset) {
+        return offset + 4 + b.getInt(offset);
+    }
+
+    /*
+     * Tags
+     */
+
+    private static void putTag(ByteBuffer b, byte tag) {
+        b.put(tag).put(VERSION);
+    }
+
+    /**
+     * Returns the type tag of the value at an absolute offset.
+     */
+    public static byte tagAt(ByteBuffer b, int offset) {
+        return b.get(offset);
+    }
+
+    private static void checkTag(ByteBuffer b, int offset, byte tag) {
+        byte found = b.get(offset);
+        if (found != tag) {
+            throw new IllegalArgumentException("Expected value of type " + tag + " but found type " + found);
+        }
+        byte version = b.get(offset + 1);
+        if (version > VERSION) {
+            throw new IllegalArgumentException("Unsupported version " + version + " of type " + tag);
+        }
+    }
+
+    /*
+     * Reads and checks the tag at the position, advancing past it, and
+     * returns the value's version.
+     */
+    private static byte readTag(ByteBuffer b, byte tag) {
+        checkTag(b, b.position(), tag);
+        byte version = b.get(b.position() + 1);
+        b.position(b.position() + TAG);
+        return version;
+    }
+
+    /*
+     * Domain types
+     */
+
+    public static void putMoney(ByteBuffer b, Money value) {
+        putTag(b, MONEY);
+        b.putLong(value.getPence());
+    }
+
+    public static Money readMoney(ByteBuffer b) {
+        readTag(b, MONEY);
+        return Money.ofPence(b.getLong());
+    }
+
+    public static int maxLength(CatalogueEntry entry) {
+        return TAG + 5 + maxLength(entry.description);
+    }
+
+    public static void putCatalogueEntry(ByteBuffer b, CatalogueEntry entry) {
+        putTag(b, CATALOGUE_ENTRY);
+        b.putInt(entry.lotNumber).put((byte) entry.status.ordinal());
+        putString(b, entry.description);
+    }
+
+    public static CatalogueEntry readCatalogueEntry(ByteBuffer b) {
+        readTag(b, CATALOGUE_ENTRY);
+        int lotNumber = b.getInt();
+        LotStatus status = LOT_STATUSES[b.get()];
+        return new CatalogueEntry(lotNumber, getString(b), status);
+    }
+
+    public static int maxLength(Status status) {
+        return TAG + 2 + maxLength(status.message);
+    }
+
+    public static void putStatus(ByteBuffer b, Status status) {
+        putTag(b, STATUS);
+        b.put((byte) status.kind.ordinal()).put((byte) status.code.ordinal());
+        putString(b, status.message);
+    }
+
+    /**
+     * Reads a status, returning the shared instance if it is one of the
+     * standard statuses.
+     */
+    public static Status readStatus(ByteBuffer b) {
+        byte version = readTag(b, STATUS);
+        Status.Kind kind = KINDS[b.get()];
+        if (version == 1) {
+            return readStatusV1(kind, getString(b));
+        }
+        Status.ErrorCode code = CODES[b.get()];
+        int length = b.getInt(b.position());
+        if (kind != Status.Kind.ERROR && length == 0) {
+            b.position(b.position() + 4);
+            return Status.of(kind);
+        }
+        if (kind == Status.Kind.ERROR && length == code.getMessage().length() && length > 0) {
+            Status standard = Status.error(code);
+            if (standard.message.equals(getString(b, b.position()))) {
+                b.position(b.position() + 4 + length);
+                return standard;
+            }
+        }
+        return new Status(kind, code, getString(b));
+    }
+
+    /*
+     * Version 1 statuses have no error code; an error with a standard
+     * message gets that message's code back.
+     */
+    private static Status readStatusV1(Status.Kind kind, String message) {
+        if (kind != Status.Kind.ERROR) {
+            return message.isEmpty() ? Status.of(kind) : new Status(kind, message);
+        }
+        for (Status.ErrorCode code : CODES) {
+            if (code != Status.ErrorCode.NONE && code != Status.ErrorCode.OTHER
+                    && code.getMessage().equals(message)) {
+                return Status.error(code);
+            }
+        }
+        return new Status(kind, message);
+    }
+
+    public static int maxLength(Buyer buyer) {
+        return TAG + 4 + maxLength(buyer.getName()) + maxLength(buyer.getAddress())
+                + maxLength(buyer.getBankAccount()) + maxLength(buyer.getBankAuthCode());
+    }
+
+    public static void putBuyer(ByteBuffer b, Buyer buyer) {
+        putTag(b, BUYER);
+        b.putInt(buyer.getId());
+        putString(b, buyer.getName());
+        putString(b, buyer.getAddress());
+        putString(b, buyer.getBankAccount());
+        putString(b, buyer.getBankAuthCode());
+    }
+
+    /**
+     * Reads a buyer, with its id but no lots of interest.
+     */
+    public static Buyer readBuyer(ByteBuffer b) {
+        readTag(b, BUYER);
+        int id = b.getInt();
+        Buyer buyer = new Buyer(getString(b), getString(b), getString(b), getString(b));
+        buyer.setId(id);
+        return buyer;
+    }
+
+    public static int maxLength(Seller seller) {
+        return TAG + maxLength(seller.getName()) + maxLength(seller.getAddress())
+                + maxLength(seller.getBankAccount());
+    }
+
+    public static void putSeller(ByteBuffer b, Seller seller) {
+        putTag(b, SELLER);
+        putString(b, seller.getName());
+        putString(b, seller.getAddress());
+        putString(b, seller.getBankAccount());
+    }
+
+    public static Seller readSeller(ByteBuffer b) {
+        readTag(b, SELLER);
+        return new Seller(getString(b), getString(b), getString(b));
+    }
+
+    /*
+     * Events. Every event starts with its lot number.
+     */
+
+    public static int maxAddLotEventLength(String sellerName, String description) {
+        return TAG + 12 + maxLength(sellerName) + maxLength(description);
+    }
+
+    public static void putAddLotEvent(
+            ByteBuffer b, int lotNumber, Money reservePrice, String sellerName, String description) {
+        putTag(b, ADD_LOT_EVENT);
+        b.putInt(lotNumber).putLong(reservePrice.getPence());
+        putString(b, sellerName);
+        putString(b, description);
+    }
+
+    public static void putInterestEvent(ByteBuffer b, int lotNumber, int buyerId) {
+        putTag(b, INTEREST_EVENT);
+        b.putInt(lotNumber).putInt(buyerId);
+    }
+
+    public static int maxOpenEventLength(String auctioneerName, String auctioneerAddress) {
+        return TAG + 8 + maxLength(auctioneerName) + maxLength(auctioneerAddress);
+    }
+
+    public static void putOpenEvent(
+            ByteBuffer b, int lotNumber, int round, String auctioneerName, String auctioneerAddress) {
+        putTag(b, OPEN_EVENT);
+        b.putInt(lotNumber).putInt(round);
+        putString(b, auctioneerName);
+        putString(b, auctioneerAddress);
+    }
+
+    public static void putBidEvent(ByteBuffer b, int lotNumber, int round, int buyerId, Money amount, long sequence) {
+        putTag(b, BID_EVENT);
+        b.putInt(lotNumber).putInt(round).putInt(buyerId).putLong(amount.getPence()).putLong(sequence);
+    }
+
+    /**
+     * @param  winnerId  id of the winning buyer, or -1 if the lot did not sell
+     */
+    public static void putCloseEvent(
+            ByteBuffer b, int lotNumber, int round, int winnerId, Money amount, LotStatus outcome) {
+        putTag(b, CLOSE_EVENT);
+        b.putInt(lotNumber).putInt(round).putInt(winnerId).putLong(amount.getPence())
+                .put((byte) outcome.ordinal());
+    }
+
+    public static void putLotStatusEvent(ByteBuffer b, int lotNumber, LotStatus status) {
+        putTag(b, LOT_STATUS_EVENT);
+        b.putInt(lotNumber).put((byte) status.ordinal());
+    }
+
+    public static int maxCreditEventLength(String sellerAccount) {
+        return TAG + 12 + maxLength(sellerAccount);
+    }
+
+    /**
+     * A seller's net amount for a lot, credited to be paid out later.
+     */
+    public static void putCreditEvent(ByteBuffer b, int lotNumber, Money amount, String sellerAccount) {
+        putTag(b, CREDIT_EVENT);
+        b.putInt(lotNumber).putLong(amount.getPence());
+        putString(b, sellerAccount);
+    }
+
+    public static int maxPayoutEventLength(String sellerAccount) {
+        return TAG + 4 + maxLength(sellerAccount);
+    }
+
+    /**
+     * A credit for a lot, paid out to the seller.
+     */
+    public static void putPayoutEvent(ByteBuffer b, int lotNumber, String sellerAccount) {
+        putTag(b, PAYOUT_EVENT);
+        b.putInt(lotNumber);
+        putString(b, sellerAccount);
+    }
+
+    /*
+     * Flyweight views
+     */
+
+    /**
+     * A reusable window onto one encoded value in a buffer. Wrapping checks
+     * the tag and version; the getters read the buffer in place.
+     */
+    public abstract static class View {
+        private final byte tag;
+        ByteBuffer buffer;
+        int offset;
+
+        View(byte tag) {
+            this.tag = tag;
+        }
+
+        /**
+         * Points this view at the value at an absolute offset.
+         */
+        public View wrap(ByteBuffer buffer, int offset) {
+            checkTag(buffer, offset, tag);
+            this.buffer = buffer;
+            this.offset = offset;
+            return this;
+        }
+
+        /**
+         * Returns the value's lot number.
+         */
+        public int getLotNumber() {
+            return buffer.getInt(offset + TAG);
+        }
+
+        /**
+         * Returns the number of bytes the value takes.
+         */
+        public abstract int getLength();
+    }
+
+    public static final class CatalogueEntryView extends View {
+        public CatalogueEntryView() {
+            super(CATALOGUE_ENTRY);
+        }
+
+        public LotStatus getStatus() {
+            return LOT_STATUSES[buffer.get(offset + TAG + 4)];
+        }
+
+        public String getDescription() {
+            return getString(buffer, offset + TAG + 5);
+        }
+
+        public int getLength() {
+            return skipString(buffer, offset + TAG + 5) - offset;
+        }
+    }
+
+    public static final class AddLotEventView extends View {
+        public AddLotEventView() {
+            super(ADD_LOT_EVENT);
+        }
+
+        public long getReservePence() {
+            return buffer.getLong(offset + TAG + 4);
+        }
+
+        public String getSellerName() {
+            return getString(buffer, offset + TAG + 12);
+        }
+
+        public String getDescription() {
+            return getString(buffer, skipString(buffer, offset + TAG + 12));
+        }
+
+        public int getLength() {
+            return skipString(buffer, skipString(buffer, offset + TAG + 12)) - offset;
+        }
+    }
+
+    public static final class InterestEventView extends View {
+        public InterestEventView() {
+            super(INTEREST_EVENT);
+        }
+
+        public int getBuyerId() {
+            return buffer.getInt(offset + TAG + 4);
+        }
+
+        public int getLength() {
+            return INTEREST_EVENT_LENGTH;
+        }
+    }
+
+    public static final class OpenEventView extends View {
+        public OpenEventView() {
+            super(OPEN_EVENT);
+        }
+
+        public int getRound() {
+            return buffer.getInt(offset + TAG + 4);
+        }
+
+        public String getAuctioneerName() {
+            return getString(buffer, offset + TAG + 8);
+        }
+
+        public String getAuctioneerAddress() {
+            return getString(buffer, skipString(buffer, offset + TAG + 8));
+        }
+
+        public int getLength() {
+            return skipString(buffer, skipString(buffer, offset + TAG + 8)) - offset;
+        }
+    }
+
+    public static final class BidEventView extends View {
+        public BidEventView() {
+            super(BID_EVENT);
+        }
+
+        public int getRound() {
+            return buffer.getInt(offset + TAG + 4);
+        }
+
+        public int getBuyerId() {
+            return buffer.getInt(offset + TAG + 8);
+        }
+
+        public long getAmountPence() {
+            return buffer.getLong(offset + TAG + 12);
+        }
+
+        public long getSequence() {
+            return buffer.getLong(offset + TAG + 20);
+        }
+
+        public int getLength() {
+            return BID_EVENT_LENGTH;
+        }
+    }
+
+    public static final class CloseEventView extends View {
+        public CloseEventView() {
+            super(CLOSE_EVENT);
+        }
+
+        public int getRound() {
+            return buffer.getInt(offset + TAG + 4);
+        }
+
+        /**
+         * Returns the id of the winning buyer, or -1 if the lot did not sell.
+         */
+        public int getWinnerId() {
+            return buffer.getInt(offset + TAG + 8);
+        }
+
+        public long getAmountPence() {
+            return buffer.getLong(offset + TAG + 12);
+        }
+
+        public LotStatus getOutcome() {
+            return LOT_STATUSES[buffer.get(offset + TAG + 20)];
+        }
+
+        public int getLength() {
+            return CLOSE_EVENT_LENGTH;
+        }
+    }
+
+    public static final class LotStatusEventView extends View {
+        public LotStatusEventView() {
+            super(LOT_STATUS_EVENT);
+        }
+
+        public LotStatus getStatus() {
+            return LOT_STATUSES[buffer.get(offset + TAG + 4)];
+        }
+
+        public int getLength() {
+            return LOT_STATUS_EVENT_LENGTH;
+        }
+    }
+
+    public static final class CreditEventView extends View {
+        public CreditEventView() {
+            super(CREDIT_EVENT);
+        }
+
+        public long getAmountPence() {
+            return buffer.getLong(offset + TAG + 4);
+        }
+
+        public String getSellerAccount() {
+            return getString(buffer, offset + TAG + 12);
+        }
+
+        public int getLength() {
+            return skipString(buffer, offset + TAG + 12) - offset;
+        }
+    }
+
+    public static final class PayoutEventView extends View {
+        public PayoutEventView() {
+            super(PAYOUT_EVENT);
+        }
+
+        public String getSellerAccount() {
+            return getString(buffer, offset + TAG + 4);
+        }
+
+        public int getLength() {
+            return skipString(buffer, offset + TAG + 4) - offset;
+        }
+    }
+
+}
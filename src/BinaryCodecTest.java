@@ -0,0 +1,157 @@
+package auctionhouse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class BinaryCodecTest {
+
+    private static final String AWKWARD = "Caf\u00e9 \u20ac5 \ud83d\udd28 lot";
+
+    private static ByteBuffer[] buffers() {
+        return new ByteBuffer[] { ByteBuffer.allocate(1024), ByteBuffer.allocateDirect(1024) };
+    }
+
+    @Test
+    public void testRoundTripsDomainTypes() {
+        for (ByteBuffer b : buffers()) {
+            Buyer buyer = new Buyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth");
+            buyer.setId(42);
+            BinaryCodec.putMoney(b, new Money("-12.34"));
+            BinaryCodec.putCatalogueEntry(b, new CatalogueEntry(7, AWKWARD, LotStatus.SOLD_PENDING_PAYMENT));
+            BinaryCodec.putStatus(b, Status.error("No such lot"));
+            BinaryCodec.putBuyer(b, buyer);
+            BinaryCodec.putSeller(b, new Seller("SellerY", "@SellerY", "SY A/C"));
+            b.flip();
+
+            assertEquals(new Money("-12.34"), BinaryCodec.readMoney(b));
+            assertEquals(new CatalogueEntry(7, AWKWARD, LotStatus.SOLD_PENDING_PAYMENT),
+                    BinaryCodec.readCatalogueEntry(b));
+            Status status = BinaryCodec.readStatus(b);
+            assertEquals(Status.Kind.ERROR, status.kind);
+            assertEquals("No such lot", status.message);
+            Buyer read = BinaryCodec.readBuyer(b);
+            assertEquals(42, read.getId());
+            assertEquals("BuyerA", read.getName());
+            assertEquals("@BuyerA", read.getAddress());
+            assertEquals("BA A/C", read.getBankAccount());
+            assertEquals("BA-auth", read.getBankAuthCode());
+            Seller seller = BinaryCodec.readSeller(b);
+            assertEquals("SellerY", seller.getName());
+            assertEquals("SY A/C", seller.getBankAccount());
+            assertEquals(0, b.remaining());
+        }
+    }
+
+    @Test
+    public void testReadsVersion1Statuses() {
+        // Version 1 had no error code: tag, version, kind, message.
+        ByteBuffer b = ByteBuffer.allocate(256);
+        b.put(BinaryCodec.STATUS).put((byte) 1).put((byte) Status.Kind.ERROR.ordinal());
+        BinaryCodec.putString(b, Status.ErrorCode.BID_TOO_LOW.getMessage());
+        b.put(BinaryCodec.STATUS).put((byte) 1).put((byte) Status.Kind.ERROR.ordinal());
+        BinaryCodec.putString(b, "Transfer failed");
+        b.put(BinaryCodec.STATUS).put((byte) 1).put((byte) Status.Kind.SALE.ordinal());
+        BinaryCodec.putString(b, "");
+        b.flip();
+
+        assertSame(Status.error(Status.ErrorCode.BID_TOO_LOW), BinaryCodec.readStatus(b));
+        Status other = BinaryCodec.readStatus(b);
+        assertEquals(Status.ErrorCode.OTHER, other.code);
+        assertEquals("Transfer failed", other.message);
+        assertSame(Status.of(Status.Kind.SALE), BinaryCodec.readStatus(b));
+        assertEquals(0, b.remaining());
+    }
+
+    @Test
+    public void testStringsMatchStandardUtf8() {
+        ByteBuffer b = ByteBuffer.allocate(256);
+        BinaryCodec.putString(b, AWKWARD);
+        byte[] expected = AWKWARD.getBytes(StandardCharsets.UTF_8);
+        assertEquals(4 + expected.length, b.position());
+        assertEquals(expected.length, b.getInt(0));
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], b.get(4 + i));
+        }
+        b.flip();
+        assertEquals(AWKWARD, BinaryCodec.getString(b));
+    }
+
+    @Test
+    public void testViewsReadEventsInPlace() {
+        for (ByteBuffer b : buffers()) {
+            BinaryCodec.putOpenEvent(b, 3, 2, "Auctioneer1", "@Auctioneer1");
+            int bidAt = b.position();
+            BinaryCodec.putBidEvent(b, 3, 2, 17, new Money("90.00"), 5);
+            int closeAt = b.position();
+            BinaryCodec.putCloseEvent(b, 3, 2, 17, new Money("90.00"), LotStatus.SOLD);
+            int entryAt = b.position();
+            BinaryCodec.putCatalogueEntry(b, new CatalogueEntry(3, "Bicycle", LotStatus.IN_AUCTION));
+
+            BinaryCodec.OpenEventView open = new BinaryCodec.OpenEventView();
+            open.wrap(b, 0);
+            assertEquals(3, open.getLotNumber());
+            assertEquals(2, open.getRound());
+            assertEquals("Auctioneer1", open.getAuctioneerName());
+            assertEquals("@Auctioneer1", open.getAuctioneerAddress());
+            assertEquals(bidAt, open.getLength());
+
+            BinaryCodec.BidEventView bid = new BinaryCodec.BidEventView();
+            bid.wrap(b, bidAt);
+            assertEquals(3, bid.getLotNumber());
+            assertEquals(2, bid.getRound());
+            assertEquals(17, bid.getBuyerId());
+            assertEquals(9000, bid.getAmountPence());
+            assertEquals(5, bid.getSequence());
+            assertEquals(closeAt - bidAt, bid.getLength());
+
+            BinaryCodec.CloseEventView close = new BinaryCodec.CloseEventView();
+            close.wrap(b, closeAt);
+            assertEquals(17, close.getWinnerId());
+            assertEquals(LotStatus.SOLD, close.getOutcome());
+            assertEquals(entryAt - closeAt, close.getLength());
+
+            BinaryCodec.CatalogueEntryView entry = new BinaryCodec.CatalogueEntryView();
+            entry.wrap(b, entryAt);
+            assertEquals(3, entry.getLotNumber());
+            assertEquals(LotStatus.IN_AUCTION, entry.getStatus());
+            assertEquals("Bicycle", entry.getDescription());
+            assertEquals(b.position() - entryAt, entry.getLength());
+        }
+    }
+
+    @Test
+    public void testViewIsReusable() {
+        ByteBuffer b = ByteBuffer.allocateDirect(BinaryCodec.BID_EVENT_LENGTH * 100);
+        for (int i = 0; i < 100; i++) {
+            BinaryCodec.putBidEvent(b, 1, 1, i % 10, Money.ofPence(1000 + i), i);
+        }
+        BinaryCodec.BidEventView bid = new BinaryCodec.BidEventView();
+        long total = 0;
+        for (int offset = 0; offset < b.position(); offset += bid.getLength()) {
+            bid.wrap(b, offset);
+            total += bid.getAmountPence();
+        }
+        assertEquals(100 * 1000 + 99 * 100 / 2, total);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsWrongType() {
+        ByteBuffer b = ByteBuffer.allocate(64);
+        BinaryCodec.putMoney(b, new Money("1.00"));
+        new BinaryCodec.BidEventView().wrap(b, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNewerVersion() {
+        ByteBuffer b = ByteBuffer.allocate(64);
+        BinaryCodec.putMoney(b, new Money("1.00"));
+        b.put(1, (byte) (BinaryCodec.VERSION + 1));
+        b.flip();
+        BinaryCodec.readMoney(b);
+    }
+}
@@ -0,0 +1,101 @@
+package auctionhouse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds notifications until {@link #flushTo} sends them, in order, as batch
+ * calls on another messaging service. Not thread-safe: one belongs to one
+ * submitted batch of commands.
+ */
+public class BufferedMessagingService implements MessagingService {
+
+    private static final byte OPENED = 0;
+    private static final byte BID = 1;
+    private static final byte SOLD = 2;
+    private static final byte UNSOLD = 3;
+
+    private static final class Notification {
+        final byte type;
+        final List<String> addresses;
+        final int lotNumber;
+        final Money amount;
+
+        Notification(byte type, List<String> addresses, int lotNumber, Money amount) {
+            this.type = type;
+            this.addresses = addresses;
+            this.lotNumber = lotNumber;
+            this.amount = amount;
+        }
+    }
+
+    private final List<Notification> pending = new ArrayList<Notification>();
+
+    public void auctionOpened(String address, int lotNumber) {
+        auctionOpened(Collections.singletonList(address), lotNumber);
+    }
+
+    public void bidAccepted(String address, int lotNumber, Money amount) {
+        bidAccepted(Collections.singletonList(address), lotNumber, amount);
+    }
+
+    public void lotSold(String address, int lotNumber) {
+        lotSold(Collections.singletonList(address), lotNumber);
+    }
+
+    public void lotUnsold(String address, int lotNumber) {
+        lotUnsold(Collections.singletonList(address), lotNumber);
+    }
+
+    // The address lists the house passes are immutable, so they are kept
+    // as they are rather than copied.
+
+    public void auctionOpened(List<String> addresses, int lotNumber) {
+        pending.add(new Notification(OPENED, addresses, lotNumber, null));
+    }
+
+    public void bidAccepted(List<String> addresses, int lotNumber, Money amount) {
+        pending.add(new Notification(BID, addresses, lotNumber, amount));
+    }
+
+    public void lotSold(List<String> addresses, int lotNumber) {
+        pending.add(new Notification(SOLD, addresses, lotNumber, null));
+    }
+
+    public void lotUnsold(List<String> addresses, int lotNumber) {
+        pending.add(new Notification(UNSOLD, addresses, lotNumber, null));
+    }
+
+    /**
+     * Returns the number of notifications waiting to be sent.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Sends every held notification to a messaging service and forgets it.
+     */
+    public void flushTo(MessagingService delegate) {
+        for (int i = 0; i < pending.size(); i++) {
+            Notification n = pending.get(i);
+            switch (n.type) {
+            case OPENED:
+                delegate.auctionOpened(n.addresses, n.lotNumber);
+                break;
+            case BID:
+                delegate.bidAccepted(n.addresses, n.lotNumber, n.amount);
+                break;
+            case SOLD:
+                delegate.lotSold(n.addresses, n.lotNumber);
+                break;
+            default:
+                delegate.lotUnsold(n.addresses, n.lotNumber);
+                break;
+            }
+        }
+        pending.clear();
+    }
+
+}
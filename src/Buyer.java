@@ -1,14 +1,16 @@
 package auctionhouse;
 
-import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Buyer {
     
+    private int id = -1;        // dense id assigned by the auction house on registration
     private String name;        
     private String address;     
     private String bankAccount; 
     private String bankAuthCode;
-    private HashSet<Integer> lotsInterestedIn = new HashSet<Integer>();
+    private Set<Integer> lotsInterestedIn = ConcurrentHashMap.newKeySet();
     
     public Buyer(String name, String address, String bankAccount, String bankAuthCode) {
         super();
@@ -16,7 +18,14 @@ public class Buyer {
         this.address = address;
         this.bankAccount = bankAccount;
         this.bankAuthCode = bankAuthCode;
-        lotsInterestedIn = new HashSet<Integer>();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
     }
 
     public String getName() {
@@ -35,11 +44,11 @@ public class Buyer {
         this.address = address;
     }
 
-    public HashSet<Integer> getLotsInterestedIn() {
+    public Set<Integer> getLotsInterestedIn() {
         return lotsInterestedIn;
     }
 
-    public void setLotsInterestedIn(HashSet<Integer> lotsInterestedIn) {
+    public void setLotsInterestedIn(Set<Integer> lotsInterestedIn) {
         this.lotsInterestedIn = lotsInterestedIn;
     }
 
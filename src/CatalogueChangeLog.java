@@ -0,0 +1,80 @@
+package auctionhouse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, in-memory log of catalogue changes.
+ * 
+ * Each appended entry, a new lot or a lot with a new status, gets the next
+ * catalogue version. The log keeps the most recent changes in a ring, so a
+ * reader can ask for everything after the version it last saw; a reader
+ * further behind than the ring reaches must fall back to a full snapshot.
+ * 
+ * Writers are serialised by a lock; readers take no lock. A writer
+ * announces the version it is about to write before overwriting its slot,
+ * so a reader that copied a range of slots can tell afterwards whether any
+ * of them may have been overwritten under it.
+ */
+public class CatalogueChangeLog {
+    
+    private final AtomicReferenceArray<CatalogueEntry> ring;
+    private volatile long writingVersion = 0; // version whose slot is being written
+    private volatile long latestVersion = 0;  // version whose slot was last written
+    
+    public CatalogueChangeLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Change log capacity must be positive");
+        }
+        ring = new AtomicReferenceArray<CatalogueEntry>(capacity);
+    }
+    
+    /**
+     * Records a change.
+     * 
+     * @param  entry  the new or updated entry
+     * @return        the catalogue version the change produced
+     */
+    public synchronized long append(CatalogueEntry entry) {
+        long version = latestVersion + 1;
+        writingVersion = version;
+        ring.set((int) (version % ring.length()), entry);
+        latestVersion = version;
+        return version;
+    }
+    
+    /**
+     * Returns the version of the most recent change, 0 if there has been none.
+     */
+    public long getLatestVersion() {
+        return latestVersion;
+    }
+    
+    /**
+     * Returns the changes after the given version, oldest first.
+     * 
+     * @param  version  the version the reader has already seen
+     * @return          the changes up to and including the latest version,
+     *                  or <code>null</code> if some of them are no longer
+     *                  held or the version is not one this log issued
+     */
+    public CatalogueChanges changesSince(long version) {
+        int capacity = ring.length();
+        long latest = latestVersion;
+        if (version < 0 || version > latest || latest - version > capacity) {
+            return null;
+        }
+        List<CatalogueEntry> changes = new ArrayList<CatalogueEntry>((int) (latest - version));
+        for (long v = version + 1; v <= latest; v++) {
+            changes.add(ring.get((int) (v % capacity)));
+        }
+        // The oldest slot copied is reused by version + 1 + capacity. If no
+        // writer has got that far, every slot copied held its own version.
+        if (writingVersion - version > capacity) {
+            return null;
+        }
+        return new CatalogueChanges(latest, false, changes);
+    }
+    
+}
@@ -0,0 +1,38 @@
+package auctionhouse;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The answer to a request for catalogue changes since some version.
+ * 
+ * Either the changes themselves, oldest first, to be applied in order to the
+ * reader's copy of the catalogue, or, if the reader was too far behind, the
+ * full catalogue to replace that copy. In both cases the reader should ask
+ * for changes since {@link #getVersion} next time.
+ */
+public class CatalogueChanges {
+    
+    private final long version;
+    private final boolean fullSnapshot;
+    private final List<CatalogueEntry> entries;
+    
+    public CatalogueChanges(long version, boolean fullSnapshot, List<CatalogueEntry> entries) {
+        this.version = version;
+        this.fullSnapshot = fullSnapshot;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public boolean isFullSnapshot() {
+        return fullSnapshot;
+    }
+    
+    public List<CatalogueEntry> getEntries() {
+        return entries;
+    }
+    
+}
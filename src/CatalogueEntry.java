@@ -4,15 +4,18 @@
 package auctionhouse;
 
 /**
+ * An immutable catalogue entry. A lot whose status changes gets a new entry,
+ * so an entry handed to a reader never changes under it.
+ * 
  * @author pbj
  *
  */
 public class CatalogueEntry {
     private static final String LS = System.lineSeparator();
 
-    public int lotNumber;
-    public String description;
-    public LotStatus status;
+    public final int lotNumber;
+    public final String description;
+    public final LotStatus status;
     
     public CatalogueEntry(int lotNumber, String description, LotStatus status) {
         this.lotNumber = lotNumber;
@@ -29,6 +32,11 @@ public class CatalogueEntry {
                 status == oCE.status;
     }
     
+    @Override
+    public int hashCode() {
+        return 31 * lotNumber + (status == null ? 0 : status.hashCode());
+    }
+    
     @Override
     public String toString() {
         return LS + Integer.toString(lotNumber) +
@@ -40,8 +48,11 @@ public class CatalogueEntry {
         return status;
     }
 
-    public void setStatus(LotStatus status) {
-        this.status = status;
+    /**
+     * Returns an entry for the same lot with the given status.
+     */
+    public CatalogueEntry withStatus(LotStatus status) {
+        return new CatalogueEntry(lotNumber, description, status);
     }
     
 }
@@ -0,0 +1,51 @@
+package auctionhouse;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable, versioned copy of the online catalogue, sorted by lot
+ * number.
+ * 
+ * The house builds a snapshot at most once per catalogue version and hands
+ * the same one to every reader until the catalogue changes again, so
+ * readers never copy the catalogue and never see an entry change under
+ * them.
+ */
+public final class CatalogueSnapshot {
+    
+    static final CatalogueSnapshot EMPTY = new CatalogueSnapshot(0, new CatalogueEntry[0]);
+    
+    private final long version;
+    private final CatalogueEntry[] entries;
+    private final List<CatalogueEntry> entryList;
+    
+    /*
+     * entries must be sorted by lot number and not be changed afterwards.
+     */
+    CatalogueSnapshot(long version, CatalogueEntry[] entries) {
+        this.version = version;
+        this.entries = entries;
+        this.entryList = Collections.unmodifiableList(Arrays.asList(entries));
+    }
+    
+    /**
+     * Returns the catalogue version this snapshot reflects.
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Returns the entries, sorted by lot number, as an unmodifiable list.
+     */
+    public List<CatalogueEntry> getEntries() {
+        return entryList;
+    }
+    
+    public int size() {
+        return entries.length;
+    }
+    
+}
@@ -0,0 +1,154 @@
+package auctionhouse;
+
+/**
+ * One auction house operation and its arguments, for submitting in a batch
+ * with {@link AuctionHouse#submit}. Commands are immutable; build them with
+ * the static factory named after the operation.
+ */
+public final class Command {
+
+    public static enum Kind {
+        REGISTER_BUYER,
+        REGISTER_SELLER,
+        ADD_LOT,
+        NOTE_INTEREST,
+        OPEN_AUCTION,
+        MAKE_BID,
+        CLOSE_AUCTION
+    }
+
+    private final Kind kind;
+    private final String name;       // buyer, seller or auctioneer
+    private final String address;
+    private final String bankAccount;
+    private final String bankAuthCode;
+    private final int lotNumber;
+    private final String description;
+    private final Money amount;      // reserve price or bid
+
+    private Command(
+            Kind kind,
+            String name,
+            String address,
+            String bankAccount,
+            String bankAuthCode,
+            int lotNumber,
+            String description,
+            Money amount) {
+        this.kind = kind;
+        this.name = name;
+        this.address = address;
+        this.bankAccount = bankAccount;
+        this.bankAuthCode = bankAuthCode;
+        this.lotNumber = lotNumber;
+        this.description = description;
+        this.amount = amount;
+    }
+
+    public static Command registerBuyer(String name, String address, String bankAccount, String bankAuthCode) {
+        return new Command(Kind.REGISTER_BUYER, name, address, bankAccount, bankAuthCode, 0, null, null);
+    }
+
+    public static Command registerSeller(String name, String address, String bankAccount) {
+        return new Command(Kind.REGISTER_SELLER, name, address, bankAccount, null, 0, null, null);
+    }
+
+    public static Command addLot(String sellerName, int number, String description, Money reservePrice) {
+        return new Command(Kind.ADD_LOT, sellerName, null, null, null, number, description, reservePrice);
+    }
+
+    public static Command noteInterest(String buyerName, int lotNumber) {
+        return new Command(Kind.NOTE_INTEREST, buyerName, null, null, null, lotNumber, null, null);
+    }
+
+    public static Command openAuction(String auctioneerName, String auctioneerAddress, int lotNumber) {
+        return new Command(Kind.OPEN_AUCTION, auctioneerName, auctioneerAddress, null, null, lotNumber, null, null);
+    }
+
+    public static Command makeBid(String buyerName, int lotNumber, Money bid) {
+        return new Command(Kind.MAKE_BID, buyerName, null, null, null, lotNumber, null, bid);
+    }
+
+    public static Command closeAuction(String auctioneerName, int lotNumber) {
+        return new Command(Kind.CLOSE_AUCTION, auctioneerName, null, null, null, lotNumber, null, null);
+    }
+
+    /**
+     * Runs the command's operation on a house.
+     *
+     * @return  the operation's status
+     */
+    public Status applyTo(AuctionHouse house) {
+        switch (kind) {
+        case REGISTER_BUYER:
+            return house.registerBuyer(name, address, bankAccount, bankAuthCode);
+        case REGISTER_SELLER:
+            return house.registerSeller(name, address, bankAccount);
+        case ADD_LOT:
+            return house.addLot(name, lotNumber, description, amount);
+        case NOTE_INTEREST:
+            return house.noteInterest(name, lotNumber);
+        case OPEN_AUCTION:
+            return house.openAuction(name, address, lotNumber);
+        case MAKE_BID:
+            return house.makeBid(name, lotNumber, amount);
+        case CLOSE_AUCTION:
+            return house.closeAuction(name, lotNumber);
+        default:
+            throw new IllegalStateException("Unknown command " + kind);
+        }
+    }
+
+    /*
+     * Whether the operation locks its lot: every lot operation but makeBid,
+     * which takes no lock.
+     */
+    boolean locksLot() {
+        return kind == Kind.ADD_LOT || kind == Kind.NOTE_INTEREST
+                || kind == Kind.OPEN_AUCTION || kind == Kind.CLOSE_AUCTION;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the buyer, seller or auctioneer name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getBankAccount() {
+        return bankAccount;
+    }
+
+    public String getBankAuthCode() {
+        return bankAuthCode;
+    }
+
+    public int getLotNumber() {
+        return lotNumber;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Returns the reserve price of an addLot or the amount of a bid.
+     */
+    public Money getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + name + " " + lotNumber;
+    }
+
+}
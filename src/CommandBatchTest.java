@@ -0,0 +1,168 @@
+package auctionhouse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommandBatchTest {
+
+    private Path directory;
+
+    /*
+     * Records every notification, in the order received.
+     */
+    private static class RecordingService implements MessagingService {
+        final List<String> events = new ArrayList<String>();
+
+        public void auctionOpened(String address, int lotNumber) { events.add(address + " opened " + lotNumber); }
+        public void bidAccepted(String address, int lotNumber, Money amount) {
+            events.add(address + " bid " + lotNumber + " " + amount);
+        }
+        public void lotSold(String address, int lotNumber) { events.add(address + " sold " + lotNumber); }
+        public void lotUnsold(String address, int lotNumber) { events.add(address + " unsold " + lotNumber); }
+    }
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("auctionhouse-batch");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static AuctionHouseImp newHouse(MessagingService messaging) {
+        return new AuctionHouseImp(
+                new Parameters(10.0, 15.0, new Money("0.00"), "AH A/C", "AH-auth",
+                        messaging, new MockBankingService()));
+    }
+
+    /*
+     * A sale with some commands that fail along the way.
+     */
+    private static List<Command> sale() {
+        List<Command> commands = new ArrayList<Command>();
+        commands.add(Command.registerSeller("SellerY", "@SellerY", "SY A/C"));
+        commands.add(Command.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth"));
+        commands.add(Command.registerBuyer("BuyerB", "@BuyerB", "BB A/C", "BB-auth"));
+        commands.add(Command.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth"));
+        for (int lot = 1; lot <= 3; lot++) {
+            commands.add(Command.addLot("SellerY", lot, "Lot " + lot, new Money("50.00")));
+            commands.add(Command.noteInterest("BuyerA", lot));
+            commands.add(Command.noteInterest("BuyerB", lot));
+        }
+        commands.add(Command.addLot("SellerY", 2, "Lot 2 again", new Money("50.00")));
+        commands.add(Command.openAuction("Auctioneer1", "@Auctioneer1", 1));
+        commands.add(Command.openAuction("Auctioneer2", "@Auctioneer2", 2));
+        commands.add(Command.makeBid("BuyerA", 1, new Money("60.00")));
+        commands.add(Command.makeBid("BuyerB", 1, new Money("55.00")));
+        commands.add(Command.makeBid("BuyerB", 1, new Money("70.00")));
+        commands.add(Command.makeBid("BuyerA", 3, new Money("70.00")));
+        commands.add(Command.closeAuction("Auctioneer1", 1));
+        commands.add(Command.closeAuction("Auctioneer1", 2));
+        commands.add(Command.closeAuction("Auctioneer2", 2));
+        commands.add(Command.openAuction("Auctioneer1", "@Auctioneer1", 3));
+        return commands;
+    }
+
+    private static List<String> describe(List<Status> statuses) {
+        List<String> described = new ArrayList<String>();
+        for (Status s : statuses) {
+            described.add(s.kind + " " + s.message);
+        }
+        return described;
+    }
+
+    @Test
+    public void testBatchMatchesCallsOneByOne() {
+        RecordingService batchedMessages = new RecordingService();
+        RecordingService singleMessages = new RecordingService();
+        AuctionHouseImp batched = newHouse(batchedMessages);
+        AuctionHouseImp single = newHouse(singleMessages);
+
+        List<Status> batchStatuses = batched.submit(sale());
+        List<Status> singleStatuses = new ArrayList<Status>();
+        for (Command c : sale()) {
+            singleStatuses.add(c.applyTo(single));
+        }
+
+        assertEquals(describe(singleStatuses), describe(batchStatuses));
+        assertEquals(Status.Kind.ERROR, batchStatuses.get(3).kind);
+        assertEquals(Status.Kind.SALE, batchStatuses.get(batchStatuses.size() - 4).kind);
+        assertEquals(single.viewCatalogue(), batched.viewCatalogue());
+        // Buyers within one event come in set order, which may differ.
+        Collections.sort(singleMessages.events);
+        Collections.sort(batchedMessages.events);
+        assertEquals(singleMessages.events, batchedMessages.events);
+        assertTrue(batchedMessages.events.size() > 0);
+    }
+
+    @Test
+    public void testBatchForcesJournalOnce() throws Exception {
+        final CommandJournal journal = new CommandJournal(directory, 1 << 20, CommandJournal.Durability.BATCHED);
+        final List<String> early = new ArrayList<String>();
+        MessagingService checking = new MessagingService() {
+            private void check(String what) {
+                if (journal.getDurablePosition() < journal.getWritePosition()) {
+                    early.add(what);
+                }
+            }
+            public void auctionOpened(String address, int lotNumber) { check("opened " + lotNumber); }
+            public void bidAccepted(String address, int lotNumber, Money amount) { check("bid " + amount); }
+            public void lotSold(String address, int lotNumber) { check("sold " + lotNumber); }
+            public void lotUnsold(String address, int lotNumber) { check("unsold " + lotNumber); }
+        };
+        AuctionHouseImp house = newHouse(checking);
+        house.setJournal(journal);
+
+        List<Command> setup = new ArrayList<Command>();
+        setup.add(Command.registerSeller("SellerY", "@SellerY", "SY A/C"));
+        for (int b = 0; b < 10; b++) {
+            setup.add(Command.registerBuyer("Buyer" + b, "@Buyer" + b, "B" + b + " A/C", "B" + b + "-auth"));
+        }
+        for (int lot = 1; lot <= 20; lot++) {
+            setup.add(Command.addLot("SellerY", lot, "Lot " + lot, new Money("50.00")));
+            for (int b = 0; b < 10; b++) {
+                setup.add(Command.noteInterest("Buyer" + b, lot));
+            }
+            setup.add(Command.openAuction("Auctioneer" + lot, "@Auctioneer" + lot, lot));
+        }
+        long forces = journal.getForceCount();
+        for (Status s : house.submit(setup)) {
+            assertEquals(Status.Kind.OK, s.kind);
+        }
+        assertEquals(forces + 1, journal.getForceCount());
+
+        List<Command> bids = new ArrayList<Command>();
+        for (int i = 0; i < 500; i++) {
+            bids.add(Command.makeBid("Buyer" + (i % 10), 1 + i % 20, Money.ofPence(6000 + i)));
+        }
+        forces = journal.getForceCount();
+        for (Status s : house.submit(bids)) {
+            assertEquals(Status.Kind.OK, s.kind);
+        }
+        assertEquals(forces + 1, journal.getForceCount());
+        assertEquals(journal.getWritePosition(), journal.getDurablePosition());
+        assertTrue(early.toString(), early.isEmpty());
+        journal.close();
+
+        AuctionHouseImp recovered = newHouse(new MockMessagingService());
+        assertEquals(1 + 10 + 20 * 12 + 500, JournalReplayer.replay(directory, recovered));
+        assertEquals(house.viewCatalogue(), recovered.viewCatalogue());
+    }
+}
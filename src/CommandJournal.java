@@ -0,0 +1,606 @@
+package auctionhouse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary journal of the commands that change an auction house.
+ *
+ * Records are appended to fixed-size segment files mapped into memory, so an
+ * append is a copy into the page cache under a short lock. Each record is
+ * <code>[int length][int crc32][payload]</code>, the payload being one
+ * value in {@link BinaryCodec} form, a buyer, a seller or an event.
+ * Records never straddle segments; a record that does not fit starts a
+ * new segment. A zero length marks the end of a segment's records, and a
+ * record whose checksum fails (a write torn by a crash) ends the journal.
+ *
+ * Every append returns the journal position just after its record. How
+ * {@link #awaitDurable} treats that position depends on the
+ * {@link Durability}:
+ * <ul>
+ * <li>PER_OP: every append forces its own record to disk before returning.
+ * <li>BATCHED: group commit. The first caller to wait forces everything
+ *     appended so far, and every caller whose record that covered returns
+ *     without forcing again, so concurrent callers share one fsync.
+ * <li>ASYNC: nobody waits; a background thread forces the journal every
+ *     few milliseconds, so a crash can lose the most recent commands.
+ * </ul>
+ *
+ * Buyers are recorded by their id, which replay reassigns identically,
+ * so a bid record has a fixed size and appending it allocates nothing.
+ */
+public class CommandJournal implements AutoCloseable {
+
+    private static Logger logger = Logger.getLogger("auctionhouse");
+
+    public static enum Durability {
+        PER_OP,
+        BATCHED,
+        ASYNC
+    }
+
+    /**
+     * Receives the records of a journal in the order they were appended.
+     */
+    public static interface Handler {
+        void registerBuyer(String name, String address, String bankAccount, String bankAuthCode);
+        void registerSeller(String name, String address, String bankAccount);
+        void addLot(String sellerName, int lotNumber, String description, Money reservePrice);
+        void noteInterest(int buyerId, int lotNumber);
+        void openAuction(String auctioneerName, String auctioneerAddress, int lotNumber, int round);
+        void bid(int buyerId, int lotNumber, int round, Money amount, long sequence);
+        void closeAuction(int lotNumber, int round, int winnerId, Money amount, LotStatus outcome);
+        void lotStatus(int lotNumber, LotStatus status);
+        void credit(String sellerAccount, int lotNumber, Money amount);
+        void payout(String sellerAccount, int lotNumber);
+    }
+
+    static final byte REGISTER_BUYER = BinaryCodec.BUYER;
+    static final byte REGISTER_SELLER = BinaryCodec.SELLER;
+    static final byte ADD_LOT = BinaryCodec.ADD_LOT_EVENT;
+    static final byte NOTE_INTEREST = BinaryCodec.INTEREST_EVENT;
+    static final byte OPEN_AUCTION = BinaryCodec.OPEN_EVENT;
+    static final byte BID = BinaryCodec.BID_EVENT;
+    static final byte CLOSE_AUCTION = BinaryCodec.CLOSE_EVENT;
+    static final byte LOT_STATUS = BinaryCodec.LOT_STATUS_EVENT;
+    static final byte CREDIT = BinaryCodec.CREDIT_EVENT;
+    static final byte PAYOUT = BinaryCodec.PAYOUT_EVENT;
+
+    private static final int HEADER = 8;
+    private static final long ASYNC_FORCE_MILLIS = 10;
+
+    /*
+     * Per-thread buffer and checksum, so encoding a record allocates nothing.
+     */
+    private static final class Scratch {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        final CRC32 crc = new CRC32();
+
+        /*
+         * Clears the buffer for a record of at most the given payload size
+         * and positions it after the record header.
+         */
+        ByteBuffer begin(int maxPayload) {
+            if (buffer.capacity() < HEADER + maxPayload) {
+                buffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, HEADER + maxPayload));
+            }
+            buffer.clear();
+            buffer.position(HEADER);
+            return buffer;
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Durability durability;
+    private final ScheduledExecutorService asyncForcer;
+
+    // Guarded by this
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentBase;
+    private long writePosition;
+    private boolean closed = false;
+
+    private final Object forceLock = new Object();
+    private long forcedPosition; // guarded by forceLock
+    private long forceCount;     // guarded by forceLock
+    private volatile long durablePosition;
+
+    /**
+     * Opens the journal in a directory, creating it if need be. Appends
+     * continue after the last valid record already there.
+     *
+     * @param  directory    directory holding the segment files
+     * @param  segmentSize  bytes per segment file
+     * @param  durability   when appended records reach the disk
+     */
+    public CommandJournal(Path directory, int segmentSize, Durability durability) throws IOException {
+        if (segmentSize < 256) {
+            throw new IllegalArgumentException("Segment size must be at least 256 bytes");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.durability = durability;
+        Files.createDirectories(directory);
+
+        List<Path> existing = segmentFiles(directory);
+        if (existing.isEmpty()) {
+            openSegment(0);
+        } else {
+            Path last = existing.get(existing.size() - 1);
+            openSegment(baseOf(last));
+            int end = validEnd(segment, segmentSize);
+            // Clear anything after the last valid record, e.g. a torn write.
+            for (int i = end; i < segmentSize; i++) {
+                segment.put(i, (byte) 0);
+            }
+            segment.force();
+            writePosition = segmentBase + end;
+        }
+        forcedPosition = writePosition;
+        durablePosition = writePosition;
+
+        if (durability == Durability.ASYNC) {
+            asyncForcer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "auctionhouse-journal-force");
+                t.setDaemon(true);
+                return t;
+            });
+            asyncForcer.scheduleWithFixedDelay(
+                    this::forceQuietly, ASYNC_FORCE_MILLIS, ASYNC_FORCE_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            asyncForcer = null;
+        }
+    }
+
+    private static List<Path> segmentFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.journal")) {
+            for (Path p : stream) {
+                files.add(p);
+            }
+        }
+        // Names are zero-padded positions, so name order is journal order.
+        Collections.sort(files);
+        return files;
+    }
+
+    private static long baseOf(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - ".journal".length()));
+    }
+
+    private static String segmentName(long base) {
+        return String.format("%020d.journal", base);
+    }
+
+    private void openSegment(long base) throws IOException {
+        channel = FileChannel.open(directory.resolve(segmentName(base)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segmentBase = base;
+        writePosition = base;
+    }
+
+    /*
+     * Returns the offset just past the last intact record of a segment.
+     */
+    private static int validEnd(ByteBuffer segment, int limit) {
+        CRC32 crc = new CRC32();
+        int offset = 0;
+        while (offset + HEADER <= limit) {
+            int length = segment.getInt(offset);
+            if (length <= 0 || offset + HEADER + length > limit) {
+                break;
+            }
+            ByteBuffer payload = segment.duplicate();
+            payload.limit(offset + HEADER + length).position(offset + HEADER);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != segment.getInt(offset + 4)) {
+                break;
+            }
+            offset += HEADER + length;
+        }
+        return offset;
+    }
+
+    /*
+     * Encoding
+     */
+
+    /*
+     * Completes the record in the scratch buffer and appends it.
+     */
+    private long commit(Scratch s) {
+        ByteBuffer b = s.buffer;
+        int length = b.position() - HEADER;
+        b.flip();
+        b.position(HEADER);
+        s.crc.reset();
+        s.crc.update(b);
+        b.putInt(0, length);
+        b.putInt(4, (int) s.crc.getValue());
+        b.position(0);
+        return append(b);
+    }
+
+    private long append(ByteBuffer record) {
+        int size = record.remaining();
+        if (size > segmentSize) {
+            throw new IllegalArgumentException("Journal record larger than a segment");
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            int offset = (int) (writePosition - segmentBase);
+            try {
+                if (offset + size > segmentSize) {
+                    // Everything before a new segment is already on disk.
+                    segment.force();
+                    channel.close();
+                    openSegment(segmentBase + segmentSize);
+                    offset = 0;
+                }
+                segment.position(offset);
+                segment.put(record);
+                writePosition = segmentBase + offset + size;
+                if (durability == Durability.PER_OP) {
+                    segment.force(offset, size);
+                    durablePosition = writePosition;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return writePosition;
+        }
+    }
+
+    /*
+     * Appending, one method per command
+     */
+
+    /**
+     * Records the registration of a buyer, including the id it was given.
+     */
+    public long appendRegisterBuyer(Buyer buyer) {
+        Scratch s = SCRATCH.get();
+        BinaryCodec.putBuyer(s.begin(BinaryCodec.maxLength(buyer)), buyer);
+        return commit(s);
+    }
+
+    public long appendRegisterSeller(Seller seller) {
+        Scratch s = SCRATCH.get();
+        BinaryCodec.putSeller(s.begin(BinaryCodec.maxLength(seller)), seller);
+        return commit(s);
+    }
+
+    public long appendAddLot(String sellerName, int lotNumber, String description, Money reservePrice) {
+        Scratch s = SCRATCH.get();
+        BinaryCodec.putAddLotEvent(s.begin(BinaryCodec.maxAddLotEventLength(sellerName, description)),
+                lotNumber, reservePrice, sellerName, description);
+        return commit(s);
+    }
+
+    public long appendNoteInterest(int buyerId, int lotNumber) {
+        Scratch s = SCRATCH.get();
+        BinaryCodec.putInterestEvent(s.begin(BinaryCodec.INTEREST_EVENT_LENGTH), lotNumber, buyerId);
+        return commit(s);
+    }
+
+    /**
+     * Records the opening of an auction.
+     *
+     * @param  round  which auction of the lot this is
+     */
+    public long appendOpenAuction(String auctioneerName, String auctioneerAddress, int lotNumber, int round) {
+        Scratch s = SCRATCH.get();
+        BinaryCodec.putOpenEvent(s.begin(BinaryCodec.maxOpenEventLength(auctioneerName, auctioneerAddress)),
+                lotNumber, round, auctioneerName, auctioneerAddress);
+        return commit(s);
+    }
+
+    /**
+     * Records an accepted bid.
+     *
+     * @param  round     which auction of the lot the bid was made in
+     * @param  sequence  the bid's sequence number within that auction
+     */
+    public long appendBid(int buyerId, int lotNumber, int round, Money amount, long sequence) {
+        Scratch s = SCRATCH.get();
+        BinaryCodec.putBidEvent(s.begin(BinaryCodec.BID_EVENT_LENGTH), lotNumber, round, buyerId, amount, sequence);
+        return commit(s);
+    }
+
+    /**
+     * Records the fall of the hammer.
+     *
+     * @param  round     which auction of the lot closed
+     * @param  winnerId  id of the winning buyer, or -1 if the lot did not sell
+     * @param  outcome   status the lot was given
+     */
+    public long appendCloseAuction(int lotNumber, int round, int winnerId, Money amount, LotStatus outcome) {
+        Scratch s = SCRATCH.get();
+        BinaryCodec.putCloseEvent(s.begin(BinaryCodec.CLOSE_EVENT_LENGTH),
+                lotNumber, round, winnerId, amount, outcome);
+        return commit(s);
+    }
+
+    public long appendLotStatus(int lotNumber, LotStatus status) {
+        Scratch s = SCRATCH.get();
+        BinaryCodec.putLotStatusEvent(s.begin(BinaryCodec.LOT_STATUS_EVENT_LENGTH), lotNumber, status);
+        return commit(s);
+    }
+
+    /**
+     * Records a seller's net amount for a lot credited to a
+     * {@link PayoutAggregator}.
+     */
+    public long appendCredit(String sellerAccount, int lotNumber, Money amount) {
+        Scratch s = SCRATCH.get();
+        BinaryCodec.putCreditEvent(s.begin(BinaryCodec.maxCreditEventLength(sellerAccount)),
+                lotNumber, amount, sellerAccount);
+        return commit(s);
+    }
+
+    /**
+     * Records that the credit for a lot has been paid out to its seller.
+     */
+    public long appendPayout(String sellerAccount, int lotNumber) {
+        Scratch s = SCRATCH.get();
+        BinaryCodec.putPayoutEvent(s.begin(BinaryCodec.maxPayoutEventLength(sellerAccount)),
+                lotNumber, sellerAccount);
+        return commit(s);
+    }
+
+    /*
+     * Durability
+     */
+
+    /**
+     * Waits until everything up to the given position is on disk, as the
+     * journal's durability requires.
+     *
+     * @param  position  a position returned by an append
+     */
+    public void awaitDurable(long position) {
+        if (durability != Durability.BATCHED || position <= durablePosition) {
+            return;
+        }
+        synchronized (forceLock) {
+            // Whoever forced while this caller waited may have covered it.
+            if (position > durablePosition) {
+                forceAll();
+            }
+        }
+    }
+
+    /**
+     * Forces every record appended so far to disk.
+     */
+    public void sync() {
+        synchronized (forceLock) {
+            forceAll();
+        }
+    }
+
+    /*
+     * The caller holds forceLock. Segments before the current one were
+     * forced when the journal moved past them.
+     */
+    private void forceAll() {
+        MappedByteBuffer current;
+        long base;
+        long target;
+        synchronized (this) {
+            current = segment;
+            base = segmentBase;
+            target = writePosition;
+        }
+        if (target > forcedPosition) {
+            int from = (int) Math.max(forcedPosition - base, 0);
+            current.force(from, (int) (target - base) - from);
+            forcedPosition = target;
+            forceCount++;
+        }
+        if (target > durablePosition) {
+            durablePosition = target;
+        }
+    }
+
+    private void forceQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            if (logger.isLoggable(Level.WARNING)) {
+                logger.log(Level.WARNING, "Forcing the journal failed", e);
+            }
+        }
+    }
+
+    public long getWritePosition() {
+        synchronized (this) {
+            return writePosition;
+        }
+    }
+
+    public long getDurablePosition() {
+        return durablePosition;
+    }
+
+    /**
+     * Returns how many times the journal has been forced to disk by a
+     * waiting caller, {@link #sync} or the background forcer. PER_OP
+     * forces on every append are not counted.
+     */
+    public long getForceCount() {
+        synchronized (forceLock) {
+            return forceCount;
+        }
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Forces the journal to disk and closes it.
+     */
+    public void close() throws IOException {
+        if (asyncForcer != null) {
+            asyncForcer.shutdownNow();
+        }
+        sync();
+        synchronized (this) {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    /*
+     * Reading
+     */
+
+    /**
+     * Reads every record in a journal directory, oldest first, up to the
+     * first missing or damaged record.
+     *
+     * @return  the number of records read
+     */
+    public static long replay(Path directory, Handler handler) throws IOException {
+        return replay(directory, 0, handler);
+    }
+
+    /**
+     * Reads the records of a journal directory from a given position, such
+     * as one returned by an append or recorded in a snapshot.
+     *
+     * @return  the number of records read
+     */
+    public static long replay(Path directory, long fromPosition, Handler handler) throws IOException {
+        long records = 0;
+        Views views = new Views();
+        for (Path file : segmentFiles(directory)) {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                long base = baseOf(file);
+                if (base + ch.size() <= fromPosition) {
+                    continue;
+                }
+                MappedByteBuffer segment = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                int limit = (int) ch.size();
+                int end = validEnd(segment, limit);
+                int offset = (int) Math.max(fromPosition - base, 0);
+                while (offset < end) {
+                    int length = segment.getInt(offset);
+                    ByteBuffer payload = segment.duplicate();
+                    payload.limit(offset + HEADER + length).position(offset + HEADER);
+                    dispatch(payload, views, handler);
+                    records++;
+                    offset += HEADER + length;
+                }
+                if (end + HEADER <= limit && segment.getInt(end) != 0) {
+                    // A damaged record: nothing after it can be trusted.
+                    if (logger.isLoggable(Level.WARNING)) {
+                        logger.warning("Journal " + file + " damaged at offset " + end + "; replay stops there");
+                    }
+                    break;
+                }
+            }
+        }
+        return records;
+    }
+
+    /*
+     * One flyweight per event type, reused for every record of a replay.
+     */
+    private static final class Views {
+        final BinaryCodec.AddLotEventView addLot = new BinaryCodec.AddLotEventView();
+        final BinaryCodec.InterestEventView interest = new BinaryCodec.InterestEventView();
+        final BinaryCodec.OpenEventView open = new BinaryCodec.OpenEventView();
+        final BinaryCodec.BidEventView bid = new BinaryCodec.BidEventView();
+        final BinaryCodec.CloseEventView close = new BinaryCodec.CloseEventView();
+        final BinaryCodec.LotStatusEventView lotStatus = new BinaryCodec.LotStatusEventView();
+        final BinaryCodec.CreditEventView credit = new BinaryCodec.CreditEventView();
+        final BinaryCodec.PayoutEventView payout = new BinaryCodec.PayoutEventView();
+    }
+
+    private static void dispatch(ByteBuffer b, Views v, Handler handler) {
+        int offset = b.position();
+        byte type = BinaryCodec.tagAt(b, offset);
+        switch (type) {
+        case REGISTER_BUYER: {
+            Buyer buyer = BinaryCodec.readBuyer(b);
+            handler.registerBuyer(buyer.getName(), buyer.getAddress(), buyer.getBankAccount(), buyer.getBankAuthCode());
+            break;
+        }
+        case REGISTER_SELLER: {
+            Seller seller = BinaryCodec.readSeller(b);
+            handler.registerSeller(seller.getName(), seller.getAddress(), seller.getBankAccount());
+            break;
+        }
+        case ADD_LOT:
+            v.addLot.wrap(b, offset);
+            handler.addLot(v.addLot.getSellerName(), v.addLot.getLotNumber(), v.addLot.getDescription(),
+                    Money.ofPence(v.addLot.getReservePence()));
+            break;
+        case NOTE_INTEREST:
+            v.interest.wrap(b, offset);
+            handler.noteInterest(v.interest.getBuyerId(), v.interest.getLotNumber());
+            break;
+        case OPEN_AUCTION:
+            v.open.wrap(b, offset);
+            handler.openAuction(v.open.getAuctioneerName(), v.open.getAuctioneerAddress(),
+                    v.open.getLotNumber(), v.open.getRound());
+            break;
+        case BID:
+            v.bid.wrap(b, offset);
+            handler.bid(v.bid.getBuyerId(), v.bid.getLotNumber(), v.bid.getRound(),
+                    Money.ofPence(v.bid.getAmountPence()), v.bid.getSequence());
+            break;
+        case CLOSE_AUCTION:
+            v.close.wrap(b, offset);
+            handler.closeAuction(v.close.getLotNumber(), v.close.getRound(), v.close.getWinnerId(),
+                    Money.ofPence(v.close.getAmountPence()), v.close.getOutcome());
+            break;
+        case LOT_STATUS:
+            v.lotStatus.wrap(b, offset);
+            handler.lotStatus(v.lotStatus.getLotNumber(), v.lotStatus.getStatus());
+            break;
+        case CREDIT:
+            v.credit.wrap(b, offset);
+            handler.credit(v.credit.getSellerAccount(), v.credit.getLotNumber(),
+                    Money.ofPence(v.credit.getAmountPence()));
+            break;
+        case PAYOUT:
+            v.payout.wrap(b, offset);
+            handler.payout(v.payout.getSellerAccount(), v.payout.getLotNumber());
+            break;
+        default:
+            throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+}
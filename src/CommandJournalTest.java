@@ -0,0 +1,434 @@
+package auctionhouse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommandJournalTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("auctionhouse-journal");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static AuctionHouseImp newHouse() {
+        return new AuctionHouseImp(
+                new Parameters(10.0, 15.0, new Money("0.00"), "AH A/C", "AH-auth",
+                        new MockMessagingService(), new MockBankingService()));
+    }
+
+    private static List<String> catalogue(AuctionHouseImp house) {
+        List<String> entries = new ArrayList<String>();
+        for (CatalogueEntry entry : house.viewCatalogue()) {
+            entries.add(entry.lotNumber + " " + entry.status);
+        }
+        return entries;
+    }
+
+    /*
+     * Sells lot 1, leaves lot 2 unsold and re-opens it, and leaves lot 3
+     * in auction with a leading bid.
+     */
+    private static void runStory(AuctionHouseImp house) {
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth");
+        house.registerBuyer("BuyerB", "@BuyerB", "BB A/C", "BB-auth");
+        for (int lot = 1; lot <= 3; lot++) {
+            house.addLot("SellerY", lot, "Lot " + lot, new Money("50.00"));
+            house.noteInterest("BuyerA", lot);
+            house.noteInterest("BuyerB", lot);
+        }
+        house.openAuction("Auctioneer1", "@Auctioneer1", 1);
+        house.makeBid("BuyerA", 1, new Money("60.00"));
+        house.makeBid("BuyerB", 1, new Money("70.00"));
+        assertEquals(Status.Kind.SALE, house.closeAuction("Auctioneer1", 1).kind);
+
+        house.openAuction("Auctioneer2", "@Auctioneer2", 2);
+        house.makeBid("BuyerA", 2, new Money("20.00"));
+        assertEquals(Status.Kind.NO_SALE, house.closeAuction("Auctioneer2", 2).kind);
+        house.openAuction("Auctioneer2", "@Auctioneer2", 2);
+
+        house.openAuction("Auctioneer3", "@Auctioneer3", 3);
+        house.makeBid("BuyerB", 3, new Money("30.00"));
+        house.makeBid("BuyerA", 3, new Money("45.00"));
+    }
+
+    private void checkRecovered(AuctionHouseImp recovered) {
+        assertEquals("[1 SOLD, 2 IN_AUCTION, 3 IN_AUCTION]",
+                catalogue(recovered).toString());
+        assertEquals(Integer.valueOf(2), recovered.getLotRunBy("Auctioneer2"));
+        assertEquals(Integer.valueOf(3), recovered.getLotRunBy("Auctioneer3"));
+        assertEquals(null, recovered.getLotRunBy("Auctioneer1"));
+        assertEquals(Status.Kind.ERROR, recovered.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth").kind);
+
+        // Lot 3's leading bid survived: a low bid is refused, a higher one wins.
+        assertEquals(Status.Kind.ERROR, recovered.makeBid("BuyerB", 3, new Money("45.00")).kind);
+        assertEquals(Status.Kind.OK, recovered.makeBid("BuyerB", 3, new Money("80.00")).kind);
+        // Lot 2's earlier, failed auction left no bid behind.
+        assertEquals(Status.Kind.OK, recovered.makeBid("BuyerB", 2, new Money("1.00")).kind);
+    }
+
+    @Test
+    public void testReplayRestoresState() throws Exception {
+        AuctionHouseImp house = newHouse();
+        CommandJournal journal = new CommandJournal(directory, 1 << 16, CommandJournal.Durability.BATCHED);
+        house.setJournal(journal);
+        runStory(house);
+        journal.close();
+
+        AuctionHouseImp recovered = newHouse();
+        long records = JournalReplayer.replay(directory, recovered);
+        // 3 registrations, 3 lots, 6 interests, 4 opens, 5 bids, 2 closes, 1 settlement
+        assertEquals(24, records);
+        checkRecovered(recovered);
+    }
+
+    /*
+     * Auctions a lot that BuyerA has noted interest in and closes it with
+     * a winning bid.
+     */
+    private static Status.Kind sell(AuctionHouseImp house, String seller, int lot, Money amount) {
+        house.addLot(seller, lot, "Lot " + lot, new Money("1.00"));
+        house.noteInterest("BuyerA", lot);
+        house.openAuction("Auctioneer1", "@Auctioneer1", lot);
+        house.makeBid("BuyerA", lot, amount);
+        return house.closeAuction("Auctioneer1", lot).kind;
+    }
+
+    @Test
+    public void testReplayRestoresPendingPayouts() throws Exception {
+        AuctionHouseImp house = newHouse();
+        PayoutAggregator payouts = new PayoutAggregator();
+        house.setPayoutAggregator(payouts);
+        CommandJournal journal = new CommandJournal(directory, 1 << 16, CommandJournal.Durability.BATCHED);
+        house.setJournal(journal);
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.registerSeller("SellerZ", "@SellerZ", "SZ A/C");
+        house.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth");
+
+        assertEquals(Status.Kind.SALE, sell(house, "SellerY", 1, new Money("60.00")));
+        assertEquals(Status.Kind.SALE, sell(house, "SellerZ", 2, new Money("70.00")));
+        assertEquals(2, house.settlePayouts().getLines().size());
+        assertEquals(Status.Kind.SALE, sell(house, "SellerY", 3, new Money("80.00")));
+        assertEquals(Status.Kind.SALE, sell(house, "SellerZ", 4, new Money("90.00")));
+        journal.close();
+
+        // Lots 1 and 2 were paid out; only lots 3 and 4 are still owed.
+        AuctionHouseImp recovered = newHouse();
+        PayoutAggregator recoveredPayouts = new PayoutAggregator();
+        recovered.setPayoutAggregator(recoveredPayouts);
+        JournalReplayer.replay(directory, recovered);
+        assertEquals(2, recoveredPayouts.getSellersOwed());
+        assertEquals(payouts.getOwed("SY A/C"), recoveredPayouts.getOwed("SY A/C"));
+        assertEquals(payouts.getOwed("SZ A/C"), recoveredPayouts.getOwed("SZ A/C"));
+        assertEquals(0, recovered.getPendingSettlements().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReplayingCreditsNeedsAnAggregator() throws Exception {
+        AuctionHouseImp house = newHouse();
+        house.setPayoutAggregator(new PayoutAggregator());
+        CommandJournal journal = new CommandJournal(directory, 1 << 16, CommandJournal.Durability.BATCHED);
+        house.setJournal(journal);
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth");
+        sell(house, "SellerY", 1, new Money("60.00"));
+        journal.close();
+
+        JournalReplayer.replay(directory, newHouse());
+    }
+
+    @Test
+    public void testReplayRestoresUnpaidSales() throws Exception {
+        MockBankingService bank = new MockBankingService();
+        bank.setBadAccount("BA A/C");
+        AuctionHouseImp house = new AuctionHouseImp(
+                new Parameters(10.0, 15.0, new Money("0.00"), "AH A/C", "AH-auth",
+                        new MockMessagingService(), bank));
+        CommandJournal journal = new CommandJournal(directory, 1 << 16, CommandJournal.Durability.BATCHED);
+        house.setJournal(journal);
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth");
+        assertEquals(Status.Kind.SALE_PENDING_PAYMENT, sell(house, "SellerY", 1, new Money("60.00")));
+        journal.close();
+
+        AuctionHouseImp recovered = newHouse();
+        JournalReplayer.replay(directory, recovered);
+        assertEquals(1, recovered.getPendingSettlements().size());
+        Settlement settlement = recovered.getPendingSettlements().iterator().next();
+        assertEquals("BuyerA", settlement.getWinningBid().getBidder().getName());
+        assertEquals(new Money("60.00"), settlement.getWinningBid().getAmount());
+
+        // The recovered house's bank accepts the buyer's payment.
+        assertTrue(recovered.retrySettlement(settlement));
+        assertEquals("[1 SOLD]", catalogue(recovered).toString());
+        assertEquals(0, recovered.getPendingSettlements().size());
+    }
+
+    @Test
+    public void testSegmentsRollOver() throws Exception {
+        AuctionHouseImp house = newHouse();
+        CommandJournal journal = new CommandJournal(directory, 256, CommandJournal.Durability.PER_OP);
+        house.setJournal(journal);
+        runStory(house);
+        journal.close();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.count() >= 4);
+        }
+        AuctionHouseImp recovered = newHouse();
+        assertEquals(24, JournalReplayer.replay(directory, recovered));
+        checkRecovered(recovered);
+    }
+
+    @Test
+    public void testTornTailIsDiscardedAndOverwritten() throws Exception {
+        AuctionHouseImp house = newHouse();
+        CommandJournal journal = new CommandJournal(directory, 1 << 16, CommandJournal.Durability.ASYNC);
+        house.setJournal(journal);
+        runStory(house);
+        long end = journal.getWritePosition();
+        journal.close();
+
+        // A crash half way through writing one more record.
+        try (RandomAccessFile file = new RandomAccessFile(
+                directory.resolve(String.format("%020d.journal", 0L)).toFile(), "rw")) {
+            file.seek(end);
+            file.writeInt(40);
+            file.writeInt(12345);
+            file.write(new byte[] { CommandJournal.BID, 0, 0 });
+        }
+        AuctionHouseImp recovered = newHouse();
+        assertEquals(24, JournalReplayer.replay(directory, recovered));
+
+        // Reopening clears the torn record and appends in its place.
+        journal = new CommandJournal(directory, 1 << 16, CommandJournal.Durability.PER_OP);
+        assertEquals(end, journal.getWritePosition());
+        recovered.setJournal(journal);
+        recovered.registerSeller("SellerZ", "@SellerZ", "SZ A/C");
+        journal.close();
+        assertEquals(25, JournalReplayer.replay(directory, newHouse()));
+    }
+
+    @Test
+    public void testGroupCommitCoversConcurrentBids() throws Exception {
+        final AuctionHouseImp house = newHouse();
+        final CommandJournal journal = new CommandJournal(directory, 1 << 20, CommandJournal.Durability.BATCHED);
+        house.setJournal(journal);
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        for (int b = 0; b < 8; b++) {
+            house.registerBuyer("Buyer" + b, "@Buyer" + b, "B" + b + " A/C", "B" + b + "-auth");
+        }
+        for (int lot = 1; lot <= 8; lot++) {
+            house.addLot("SellerY", lot, "Lot " + lot, new Money("1.00"));
+            for (int b = 0; b < 8; b++) {
+                house.noteInterest("Buyer" + b, lot);
+            }
+            house.openAuction("Auctioneer" + lot, "@Auctioneer" + lot, lot);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> bidders = new ArrayList<Future<?>>();
+        for (int t = 0; t < 8; t++) {
+            final int buyer = t;
+            bidders.add(pool.submit(() -> {
+                for (int i = 1; i <= 200; i++) {
+                    int lot = 1 + (i % 8);
+                    house.makeBid("Buyer" + buyer, lot, Money.ofPence(i * 100 + buyer));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : bidders) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        // Every caller returned only once its record was on disk.
+        assertEquals(journal.getWritePosition(), journal.getDurablePosition());
+
+        for (int lot = 1; lot <= 8; lot++) {
+            assertEquals(Status.Kind.SALE, house.closeAuction("Auctioneer" + lot, lot).kind);
+        }
+        List<String> expected = catalogue(house);
+        journal.close();
+        AuctionHouseImp recovered = newHouse();
+        JournalReplayer.replay(directory, recovered);
+        assertEquals(expected, catalogue(recovered));
+    }
+
+    /*
+     * A journal that holds one kind of append until released, so a test can
+     * act while a writer is between its checks and its journal record.
+     */
+    private static class GatedJournal extends CommandJournal {
+        final int gatedType;
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        GatedJournal(Path directory, int gatedType) throws IOException {
+            super(directory, 1 << 16, CommandJournal.Durability.PER_OP);
+            this.gatedType = gatedType;
+        }
+
+        private void gate(int type) {
+            if (type == gatedType && entered.getCount() > 0) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        public long appendRegisterBuyer(Buyer buyer) {
+            gate(CommandJournal.REGISTER_BUYER);
+            return super.appendRegisterBuyer(buyer);
+        }
+
+        public long appendRegisterSeller(Seller seller) {
+            gate(CommandJournal.REGISTER_SELLER);
+            return super.appendRegisterSeller(seller);
+        }
+
+        public long appendOpenAuction(String auctioneerName, String auctioneerAddress, int lotNumber, int round) {
+            gate(CommandJournal.OPEN_AUCTION);
+            return super.appendOpenAuction(auctioneerName, auctioneerAddress, lotNumber, round);
+        }
+
+        public long appendAddLot(String sellerName, int number, String description, Money reservePrice) {
+            gate(CommandJournal.ADD_LOT);
+            return super.appendAddLot(sellerName, number, description, reservePrice);
+        }
+    }
+
+    /*
+     * Runs the writer on another thread, and the racer while the writer is
+     * held inside its journal append; returns the racer's status.
+     */
+    private static Status raceWithAppend(GatedJournal journal, Runnable writer, java.util.concurrent.Callable<Status> racer)
+            throws Exception {
+        Thread thread = new Thread(writer);
+        thread.start();
+        assertTrue(journal.entered.await(10, TimeUnit.SECONDS));
+        Status status;
+        try {
+            status = racer.call();
+        } finally {
+            journal.release.countDown();
+            thread.join(10000);
+        }
+        return status;
+    }
+
+    @Test
+    public void testNoBidIsJournalledBeforeItsAuctionOpens() throws Exception {
+        final AuctionHouseImp house = newHouse();
+        GatedJournal journal = new GatedJournal(directory, CommandJournal.OPEN_AUCTION);
+        house.setJournal(journal);
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth");
+        house.addLot("SellerY", 1, "Lot 1", new Money("50.00"));
+        house.noteInterest("BuyerA", 1);
+
+        Status during = raceWithAppend(journal,
+                () -> house.openAuction("Auctioneer1", "@Auctioneer1", 1),
+                () -> house.makeBid("BuyerA", 1, new Money("100.00")));
+        // The auction is not visible until its OPEN record is written.
+        assertEquals(Status.ErrorCode.LOT_NOT_IN_AUCTION, during.code);
+
+        assertEquals(Status.Kind.OK, house.makeBid("BuyerA", 1, new Money("100.00")).kind);
+        journal.close();
+
+        AuctionHouseImp recovered = newHouse();
+        JournalReplayer.replay(directory, recovered);
+        assertEquals(Status.ErrorCode.BID_TOO_LOW, recovered.makeBid("BuyerA", 1, new Money("100.00")).code);
+    }
+
+    @Test
+    public void testNoLotIsJournalledBeforeItsSellerRegisters() throws Exception {
+        final AuctionHouseImp house = newHouse();
+        GatedJournal journal = new GatedJournal(directory, CommandJournal.REGISTER_SELLER);
+        house.setJournal(journal);
+
+        Status during = raceWithAppend(journal,
+                () -> house.registerSeller("SellerY", "@SellerY", "SY A/C"),
+                () -> house.addLot("SellerY", 1, "Lot 1", new Money("50.00")));
+        assertEquals(Status.ErrorCode.UNREGISTERED_SELLER, during.code);
+
+        assertEquals(Status.Kind.OK, house.addLot("SellerY", 1, "Lot 1", new Money("50.00")).kind);
+        journal.close();
+
+        AuctionHouseImp recovered = newHouse();
+        JournalReplayer.replay(directory, recovered);
+        assertEquals(catalogue(house), catalogue(recovered));
+    }
+
+    @Test
+    public void testNoInterestIsJournalledBeforeItsBuyerRegisters() throws Exception {
+        final AuctionHouseImp house = newHouse();
+        GatedJournal journal = new GatedJournal(directory, CommandJournal.REGISTER_BUYER);
+        house.setJournal(journal);
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.addLot("SellerY", 1, "Lot 1", new Money("50.00"));
+
+        Status during = raceWithAppend(journal,
+                () -> house.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth"),
+                () -> house.noteInterest("BuyerA", 1));
+        assertEquals(Status.ErrorCode.UNREGISTERED_BUYER, during.code);
+
+        assertEquals(Status.Kind.OK, house.noteInterest("BuyerA", 1).kind);
+        journal.close();
+
+        AuctionHouseImp recovered = newHouse();
+        JournalReplayer.replay(directory, recovered);
+        assertEquals(Status.ErrorCode.ALREADY_INTERESTED, recovered.noteInterest("BuyerA", 1).code);
+    }
+
+    @Test
+    public void testNoLotIsVisibleBeforeItIsJournalled() throws Exception {
+        final AuctionHouseImp house = newHouse();
+        GatedJournal journal = new GatedJournal(directory, CommandJournal.ADD_LOT);
+        house.setJournal(journal);
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth");
+
+        // makeBid takes no lock, so it sees whatever addLot has published.
+        Status during = raceWithAppend(journal,
+                () -> house.addLot("SellerY", 1, "Lot 1", new Money("50.00")),
+                () -> house.makeBid("BuyerA", 1, new Money("100.00")));
+        assertEquals(Status.ErrorCode.LOT_NOT_IN_CATALOGUE, during.code);
+        assertEquals(1, house.getLotCount());
+        journal.close();
+
+        AuctionHouseImp recovered = newHouse();
+        JournalReplayer.replay(directory, recovered);
+        assertEquals(catalogue(house), catalogue(recovered));
+    }
+}
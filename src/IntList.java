@@ -0,0 +1,59 @@
+package auctionhouse;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints.
+ * 
+ * Used where a collection of ids would otherwise be a boxed
+ * <code>Set&lt;Integer&gt;</code>: four bytes per element and no per-element
+ * objects. An IntList is not thread-safe.
+ */
+public class IntList {
+    
+    private static final int[] EMPTY = new int[0];
+    
+    private int[] elements;
+    private int size;
+    
+    public IntList() {
+        elements = EMPTY;
+        size = 0;
+    }
+    
+    public void add(int value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(4, size + (size >> 1)));
+        }
+        elements[size++] = value;
+    }
+    
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return elements[index];
+    }
+    
+    public boolean contains(int value) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+    
+}
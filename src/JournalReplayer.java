@@ -0,0 +1,98 @@
+package auctionhouse;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Rebuilds an auction house from a {@link CommandJournal}.
+ * 
+ * Registrations, lots and interest are replayed through the house's own
+ * methods. Auctions, bids and closes are reinstated as journalled, without
+ * sending messages or moving money again: a close record carries its
+ * outcome, so a sale is never settled twice. Bids that reached the journal
+ * after their auction's close record are ignored: the close record already
+ * fixed the outcome. A sale the journal shows still unpaid gets its
+ * settlement back, to be retried from
+ * {@link AuctionHouseImp#getPendingSettlements}, and seller credits not yet
+ * paid out are restored to the house's payout aggregator, which must be
+ * set before replay.
+ * 
+ * Replay into a new house, then set the journal on it so that new commands
+ * are appended after the replayed ones. {@link #recover} starts from the
+ * latest {@link StateSnapshot} instead of the start of the journal.
+ */
+public class JournalReplayer implements CommandJournal.Handler {
+    
+    private final AuctionHouseImp house;
+    
+    public JournalReplayer(AuctionHouseImp house) {
+        this.house = house;
+    }
+    
+    /**
+     * Replays a journal directory into a house with no journal set.
+     * 
+     * @return  the number of records replayed
+     */
+    public static long replay(Path directory, AuctionHouseImp house) throws IOException {
+        return CommandJournal.replay(directory, new JournalReplayer(house));
+    }
+    
+    /**
+     * Recovers a house from the newest snapshot in a directory, if any,
+     * followed by the journal from the snapshot's position on.
+     * 
+     * @param  snapshotDirectory  directory of snapshots written by
+     *                            {@link StateSnapshot#writeToDirectory}
+     * @param  journalDirectory   the journal's directory
+     * @param  house              a new house with no journal set
+     * @return                    the number of journal records replayed
+     */
+    public static long recover(Path snapshotDirectory, Path journalDirectory, AuctionHouseImp house)
+            throws IOException {
+        Path snapshot = StateSnapshot.latest(snapshotDirectory);
+        long position = snapshot == null ? 0 : StateSnapshot.load(snapshot, house);
+        return CommandJournal.replay(journalDirectory, position, new JournalReplayer(house));
+    }
+    
+    public void registerBuyer(String name, String address, String bankAccount, String bankAuthCode) {
+        house.registerBuyer(name, address, bankAccount, bankAuthCode);
+    }
+    
+    public void registerSeller(String name, String address, String bankAccount) {
+        house.registerSeller(name, address, bankAccount);
+    }
+    
+    public void addLot(String sellerName, int lotNumber, String description, Money reservePrice) {
+        house.addLot(sellerName, lotNumber, description, reservePrice);
+    }
+    
+    public void noteInterest(int buyerId, int lotNumber) {
+        house.noteInterest(house.getBuyer(buyerId).getName(), lotNumber);
+    }
+    
+    public void openAuction(String auctioneerName, String auctioneerAddress, int lotNumber, int round) {
+        house.restoreOpenAuction(auctioneerName, auctioneerAddress, lotNumber, round);
+    }
+    
+    public void bid(int buyerId, int lotNumber, int round, Money amount, long sequence) {
+        house.restoreBid(buyerId, lotNumber, round, amount, sequence);
+    }
+    
+    public void closeAuction(int lotNumber, int round, int winnerId, Money amount, LotStatus outcome) {
+        house.restoreCloseAuction(lotNumber, round, winnerId, amount, outcome);
+    }
+    
+    public void lotStatus(int lotNumber, LotStatus status) {
+        house.restoreLotStatus(lotNumber, status);
+    }
+    
+    public void credit(String sellerAccount, int lotNumber, Money amount) {
+        house.restoreCredit(sellerAccount, lotNumber, amount);
+    }
+    
+    public void payout(String sellerAccount, int lotNumber) {
+        house.restorePayout(sellerAccount, lotNumber);
+    }
+    
+}
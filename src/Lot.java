@@ -1,71 +1,112 @@
 package auctionhouse;
 
+/**
+ * A lot and everything the auction house tracks about it.
+ * 
+ * One Lot object holds the lot's seller, reserve, description, status, the
+ * ids of interested buyers and the running auction, so any operation on a
+ * lot needs a single lookup. The seller, reserve and description never
+ * change. The status is held in the lot's immutable catalogue entry, which
+ * is replaced when the status changes. The entry and auction are volatile so
+ * that lock-free readers see them; all other mutable state is guarded by the
+ * lot's lock in the house.
+ */
 public class Lot {
     
-    private String sellerName;
-    private LotStatus lotStatus;
-    private Integer id;
-    private Money reservePrice;
-    private String lotDescription;
+    private final int id;
+    private final Seller seller;
+    private final Money reservePrice;
+    private final String lotDescription;
+    private final IntList interestedBuyerIds;
+    private volatile CatalogueEntry catalogueEntry;
+    private volatile Auction auction;
+    private int auctionsOpened = 0; // guarded by the lot's lock
     
 
-    public Lot(String sellerName, LotStatus lotStatus, Integer id, Money reservePrice, String lotDescription) {
+    public Lot(Seller seller, int id, Money reservePrice, String lotDescription) {
         super();
-        this.sellerName = sellerName;
-        this.lotStatus = lotStatus;
+        this.seller = seller;
         this.id = id;
         this.reservePrice = reservePrice;
         this.lotDescription = lotDescription;
+        this.interestedBuyerIds = new IntList();
+        this.catalogueEntry = new CatalogueEntry(id, lotDescription, LotStatus.UNSOLD);
     }
 
 
-    public String getSellerName() {
-        return sellerName;
+    public Seller getSeller() {
+        return seller;
     }
 
 
-    public void setSellerName(String sellerName) {
-        this.sellerName = sellerName;
+    public String getSellerName() {
+        return seller.getName();
     }
 
 
     public LotStatus getLotStatus() {
-        return lotStatus;
+        return catalogueEntry.status;
     }
 
 
     public void setLotStatus(LotStatus lotStatus) {
-        this.lotStatus = lotStatus;
+        catalogueEntry = catalogueEntry.withStatus(lotStatus);
     }
 
 
-    public Integer getId() {
+    public int getId() {
         return id;
     }
 
 
-    public void setId(Integer id) {
-        this.id = id;
-    }
-
-
     public Money getReservePrice() {
         return reservePrice;
     }
 
 
-    public void setReservePrice(Money reservePrice) {
-        this.reservePrice = reservePrice;
-    }
-
-
     public String getLotDescription() {
         return lotDescription;
     }
-
-
-    public void setLotDescription(String lotDescription) {
-        this.lotDescription = lotDescription;
+    
+    
+    public CatalogueEntry getCatalogueEntry() {
+        return catalogueEntry;
+    }
+    
+    
+    public IntList getInterestedBuyerIds() {
+        return interestedBuyerIds;
+    }
+    
+    
+    public Auction getAuction() {
+        return auction;
+    }
+    
+    
+    public void setAuction(Auction auction) {
+        this.auction = auction;
+    }
+    
+    
+    /**
+     * Counts the opening of another auction of this lot.
+     * 
+     * @return  the new auction's round: 1 for the first auction of the lot,
+     *          2 if it is re-auctioned after failing to sell, and so on
+     */
+    public int nextAuctionRound() {
+        return ++auctionsOpened;
+    }
+    
+    
+    public int getAuctionsOpened() {
+        return auctionsOpened;
+    }
+    
+    
+    public void setAuctionsOpened(int auctionsOpened) {
+        this.auctionsOpened = auctionsOpened;
     }
     
 }
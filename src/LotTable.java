@@ -0,0 +1,111 @@
+package auctionhouse;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lots keyed by their primitive int lot number.
+ * 
+ * An open-addressing hash table with linear probing over a single array of
+ * Lot references; each Lot carries its own number, so there are no boxed
+ * keys and no per-entry nodes. Lots are never removed. Lookups take no lock
+ * and see every lot whose insertion has completed; insertions are
+ * serialised on the table. The table doubles when it becomes half full,
+ * keeping probe sequences short.
+ */
+public class LotTable {
+    
+    private static final int INITIAL_CAPACITY = 64; // must be a power of two
+    
+    private volatile AtomicReferenceArray<Lot> slots = new AtomicReferenceArray<Lot>(INITIAL_CAPACITY);
+    private volatile int size = 0;
+    
+    private static int spread(int lotNumber) {
+        int h = lotNumber * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * Finds a lot by number.
+     * 
+     * @param  lotNumber  number of the lot
+     * @return            the lot, or <code>null</code> if there is none
+     */
+    public Lot get(int lotNumber) {
+        AtomicReferenceArray<Lot> table = slots;
+        int mask = table.length() - 1;
+        for (int i = spread(lotNumber) & mask; ; i = (i + 1) & mask) {
+            Lot lot = table.get(i);
+            if (lot == null || lot.getId() == lotNumber) {
+                return lot;
+            }
+        }
+    }
+    
+    /**
+     * Adds a lot unless one with the same number is already present.
+     * 
+     * @param  lot  lot to add
+     * @return      the lot already present with that number, or
+     *              <code>null</code> if the lot was added
+     */
+    public synchronized Lot putIfAbsent(Lot lot) {
+        Lot existing = get(lot.getId());
+        if (existing != null) {
+            return existing;
+        }
+        AtomicReferenceArray<Lot> table = slots;
+        if (2 * (size + 1) > table.length()) {
+            table = resized(table);
+            slots = table;
+        }
+        insert(table, lot);
+        size = size + 1;
+        return null;
+    }
+    
+    private static void insert(AtomicReferenceArray<Lot> table, Lot lot) {
+        int mask = table.length() - 1;
+        int i = spread(lot.getId()) & mask;
+        while (table.get(i) != null) {
+            i = (i + 1) & mask;
+        }
+        table.set(i, lot);
+    }
+    
+    private static AtomicReferenceArray<Lot> resized(AtomicReferenceArray<Lot> table) {
+        AtomicReferenceArray<Lot> bigger = new AtomicReferenceArray<Lot>(table.length() * 2);
+        for (int i = 0; i < table.length(); i++) {
+            Lot lot = table.get(i);
+            if (lot != null) {
+                insert(bigger, lot);
+            }
+        }
+        return bigger;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the lots in the table, in no particular order. Lots added
+     * while the copy is taken may or may not be included.
+     */
+    public Lot[] toArray() {
+        AtomicReferenceArray<Lot> table = slots;
+        Lot[] lots = new Lot[size];
+        int n = 0;
+        for (int i = 0; i < table.length(); i++) {
+            Lot lot = table.get(i);
+            if (lot != null) {
+                if (n == lots.length) {
+                    lots = Arrays.copyOf(lots, n * 2 + 1);
+                }
+                lots[n++] = lot;
+            }
+        }
+        return n == lots.length ? lots : Arrays.copyOf(lots, n);
+    }
+    
+}
@@ -0,0 +1,41 @@
+package auctionhouse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class LotTableTest {
+    
+    private static final Seller SELLER = new Seller("Seller", "@Seller", "S A/C");
+    
+    private static Lot lot(int number) {
+        return new Lot(SELLER, number, new Money("1.00"), "Lot " + number);
+    }
+
+    @Test
+    public void testGrowsAndFindsEveryLot() {
+        LotTable table = new LotTable();
+        // Sparse and negative numbers, enough to force several resizes
+        for (int i = -5000; i < 5000; i++) {
+            assertNull(table.putIfAbsent(lot(i * 7919)));
+        }
+        assertEquals(10000, table.size());
+        assertEquals(10000, table.toArray().length);
+        for (int i = -5000; i < 5000; i++) {
+            assertEquals(i * 7919, table.get(i * 7919).getId());
+        }
+        assertNull(table.get(1));
+    }
+    
+    @Test
+    public void testRejectsDuplicateNumber() {
+        LotTable table = new LotTable();
+        Lot first = lot(42);
+        assertNull(table.putIfAbsent(first));
+        assertSame(first, table.putIfAbsent(lot(42)));
+        assertSame(first, table.get(42));
+        assertEquals(1, table.size());
+    }
+}
@@ -0,0 +1,115 @@
+package auctionhouse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MakeBidAllocationTest {
+
+    private static final int BIDS = 100000;
+
+    private static class SilentMessagingService implements MessagingService {
+        public void auctionOpened(String address, int lotNumber) { }
+        public void bidAccepted(String address, int lotNumber, Money amount) { }
+        public void lotSold(String address, int lotNumber) { }
+        public void lotUnsold(String address, int lotNumber) { }
+    }
+
+    private com.sun.management.ThreadMXBean threads;
+    private AuctionHouseImp house;
+    private Level savedLevel;
+
+    @Before
+    public void setup() {
+        // Logging builds strings; the allocation counts are for the house alone.
+        Logger logger = Logger.getLogger("auctionhouse");
+        savedLevel = logger.getLevel();
+        logger.setLevel(Level.OFF);
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        threads = bean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) bean : null;
+
+        house = new AuctionHouseImp(
+                new Parameters(10.0, 15.0, new Money("1.00"), "AH A/C", "AH-auth",
+                        new SilentMessagingService(), new MockBankingService()));
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth");
+        house.registerBuyer("BuyerB", "@BuyerB", "BB A/C", "BB-auth");
+        house.registerBuyer("BuyerC", "@BuyerC", "BC A/C", "BC-auth");
+        house.addLot("SellerY", 1, "Bicycle", new Money("50.00"));
+        house.addLot("SellerY", 2, "Tricycle", new Money("50.00"));
+        house.noteInterest("BuyerA", 1);
+        house.noteInterest("BuyerB", 1);
+        house.openAuction("Auctioneer1", "@Auctioneer1", 1);
+    }
+
+    @After
+    public void restoreLogging() {
+        Logger.getLogger("auctionhouse").setLevel(savedLevel);
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private void rejectBids(int count, Money low) {
+        for (int i = 0; i < count; i++) {
+            assertSame(Status.error(Status.ErrorCode.BID_TOO_LOW), house.makeBid("BuyerB", 1, low));
+            assertSame(Status.error(Status.ErrorCode.BUYER_NOT_INTERESTED), house.makeBid("BuyerC", 1, low));
+            assertSame(Status.error(Status.ErrorCode.UNREGISTERED_BUYER), house.makeBid("Nobody", 1, low));
+            assertSame(Status.error(Status.ErrorCode.LOT_NOT_IN_AUCTION), house.makeBid("BuyerA", 2, low));
+            assertSame(Status.error(Status.ErrorCode.LOT_NOT_IN_CATALOGUE), house.makeBid("BuyerA", 3, low));
+        }
+    }
+
+    @Test
+    public void testRejectedBidsAllocateNothing() {
+        if (threads == null) {
+            return;
+        }
+        assertEquals(Status.Kind.OK, house.makeBid("BuyerA", 1, new Money("100.00")).kind);
+        Money low = new Money("60.00");
+
+        rejectBids(20000, low);
+        long before = allocatedBytes();
+        rejectBids(BIDS, low);
+        long allocated = allocatedBytes() - before;
+
+        assertTrue("Allocated " + allocated + " bytes for " + 5 * BIDS + " rejected bids", allocated < 1024);
+    }
+
+    @Test
+    public void testAcceptedBidsAllocateOnlyTheBid() {
+        if (threads == null) {
+            return;
+        }
+        // Amounts are the caller's, so made before measuring.
+        Money[] amounts = new Money[2 * (20000 + BIDS)];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = Money.ofPence(6000 + 200L * i);
+        }
+
+        int next = 0;
+        for (int i = 0; i < 20000; i++, next += 2) {
+            house.makeBid("BuyerA", 1, amounts[next]);
+            house.makeBid("BuyerB", 1, amounts[next + 1]);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < BIDS; i++, next += 2) {
+            assertSame(Status.OK(), house.makeBid("BuyerA", 1, amounts[next]));
+            assertSame(Status.OK(), house.makeBid("BuyerB", 1, amounts[next + 1]));
+        }
+        long perBid = (allocatedBytes() - before) / (2 * BIDS);
+
+        // The new leading Bid is the only allocation.
+        assertTrue("Allocated " + perBid + " bytes per accepted bid", perBid <= 40);
+    }
+}
@@ -1,5 +1,7 @@
 package auctionhouse;
 
+import java.util.List;
+
 public interface MessagingService {
     
     void auctionOpened(String address, int lotNumber);
@@ -9,5 +11,35 @@ public interface MessagingService {
     void lotSold(String address, int lotNumber);
     
     void lotUnsold(String address, int lotNumber);
+    
+    /*
+     * Batch variants, sending one event to every address in a list. The
+     * defaults send to each address in turn; a service with a multicast or
+     * bulk-send path should override them.
+     */
+    
+    default void auctionOpened(List<String> addresses, int lotNumber) {
+        for (int i = 0; i < addresses.size(); i++) {
+            auctionOpened(addresses.get(i), lotNumber);
+        }
+    }
+    
+    default void bidAccepted(List<String> addresses, int lotNumber, Money amount) {
+        for (int i = 0; i < addresses.size(); i++) {
+            bidAccepted(addresses.get(i), lotNumber, amount);
+        }
+    }
+    
+    default void lotSold(List<String> addresses, int lotNumber) {
+        for (int i = 0; i < addresses.size(); i++) {
+            lotSold(addresses.get(i), lotNumber);
+        }
+    }
+    
+    default void lotUnsold(List<String> addresses, int lotNumber) {
+        for (int i = 0; i < addresses.size(); i++) {
+            lotUnsold(addresses.get(i), lotNumber);
+        }
+    }
 
 }
@@ -0,0 +1,142 @@
+package auctionhouse;
+
+import java.util.List;
+
+/**
+ * Decorator that times calls made on a house and counts their outcomes
+ * in an {@link AuctionHouseMetrics}; see {@link OperationMetrics} for
+ * which calls are timed. Catalogue views count as OK. A batch
+ * is timed as a whole under SUBMIT, and each of its commands is counted
+ * under its own operation. Calls that throw are not counted.
+ *
+ * An {@link AuctionHouseImp} records its own bids, which spares the hot
+ * path a call through this decorator; see
+ * {@link AuctionHouseImp#setBidMetrics}.
+ */
+public class MeteredAuctionHouse implements AuctionHouse {
+
+    private final AuctionHouse house;
+    private final AuctionHouseMetrics metrics;
+    private final OperationMetrics[] byKind = new OperationMetrics[Command.Kind.values().length];
+    private final OperationMetrics registerBuyer;
+    private final OperationMetrics registerSeller;
+    private final OperationMetrics addLot;
+    private final OperationMetrics noteInterest;
+    private final OperationMetrics openAuction;
+    private final OperationMetrics makeBid;
+    private final OperationMetrics closeAuction;
+    private final OperationMetrics viewCatalogue;
+    private final OperationMetrics viewCatalogueSince;
+    private final OperationMetrics submit;
+    private final boolean houseRecordsBids;
+
+    public MeteredAuctionHouse(AuctionHouse house, AuctionHouseMetrics metrics) {
+        this.house = house;
+        this.metrics = metrics;
+        for (Command.Kind kind : Command.Kind.values()) {
+            byKind[kind.ordinal()] = metrics.operation(kind);
+        }
+        registerBuyer = metrics.operation(Command.Kind.REGISTER_BUYER);
+        registerSeller = metrics.operation(Command.Kind.REGISTER_SELLER);
+        addLot = metrics.operation(Command.Kind.ADD_LOT);
+        noteInterest = metrics.operation(Command.Kind.NOTE_INTEREST);
+        openAuction = metrics.operation(Command.Kind.OPEN_AUCTION);
+        makeBid = metrics.operation(Command.Kind.MAKE_BID);
+        closeAuction = metrics.operation(Command.Kind.CLOSE_AUCTION);
+        viewCatalogue = metrics.operation(AuctionHouseMetrics.VIEW_CATALOGUE);
+        viewCatalogueSince = metrics.operation(AuctionHouseMetrics.VIEW_CATALOGUE_SINCE);
+        submit = metrics.operation(AuctionHouseMetrics.SUBMIT);
+        houseRecordsBids = house instanceof AuctionHouseImp;
+        if (houseRecordsBids) {
+            ((AuctionHouseImp) house).setBidMetrics(makeBid);
+        }
+    }
+
+    public AuctionHouseMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static Status end(OperationMetrics operation, long start, Status status) {
+        operation.end(start, status.kind);
+        return status;
+    }
+
+    public Status registerBuyer(String name, String address, String bankAccount, String bankAuthCode) {
+        long start = registerBuyer.start();
+        return end(registerBuyer, start, house.registerBuyer(name, address, bankAccount, bankAuthCode));
+    }
+
+    public Status registerSeller(String name, String address, String bankAccount) {
+        long start = registerSeller.start();
+        return end(registerSeller, start, house.registerSeller(name, address, bankAccount));
+    }
+
+    public Status addLot(String sellerName, int number, String description, Money reservePrice) {
+        long start = addLot.start();
+        return end(addLot, start, house.addLot(sellerName, number, description, reservePrice));
+    }
+
+    public List<CatalogueEntry> viewCatalogue() {
+        long start = viewCatalogue.start();
+        List<CatalogueEntry> entries = house.viewCatalogue();
+        viewCatalogue.end(start, Status.Kind.OK);
+        return entries;
+    }
+
+    public List<CatalogueEntry> viewCatalogue(int fromLot, int limit) {
+        long start = viewCatalogue.start();
+        List<CatalogueEntry> entries = house.viewCatalogue(fromLot, limit);
+        viewCatalogue.end(start, Status.Kind.OK);
+        return entries;
+    }
+
+    public List<CatalogueEntry> viewCatalogueRange(int lo, int hi) {
+        long start = viewCatalogue.start();
+        List<CatalogueEntry> entries = house.viewCatalogueRange(lo, hi);
+        viewCatalogue.end(start, Status.Kind.OK);
+        return entries;
+    }
+
+    public CatalogueChanges viewCatalogueSince(long version) {
+        long start = viewCatalogueSince.start();
+        CatalogueChanges changes = house.viewCatalogueSince(version);
+        viewCatalogueSince.end(start, Status.Kind.OK);
+        return changes;
+    }
+
+    public Status noteInterest(String buyerName, int lotNumber) {
+        long start = noteInterest.start();
+        return end(noteInterest, start, house.noteInterest(buyerName, lotNumber));
+    }
+
+    public Status openAuction(String auctioneerName, String auctioneerAddress, int lotNumber) {
+        long start = openAuction.start();
+        return end(openAuction, start, house.openAuction(auctioneerName, auctioneerAddress, lotNumber));
+    }
+
+    public Status makeBid(String buyerName, int lotNumber, Money bid) {
+        if (houseRecordsBids) {
+            return house.makeBid(buyerName, lotNumber, bid);
+        }
+        long start = makeBid.start();
+        return end(makeBid, start, house.makeBid(buyerName, lotNumber, bid));
+    }
+
+    public Status closeAuction(String auctioneerName, int lotNumber) {
+        long start = closeAuction.start();
+        return end(closeAuction, start, house.closeAuction(auctioneerName, lotNumber));
+    }
+
+    public List<Status> submit(List<Command> commands) {
+        long start = submit.start();
+        List<Status> statuses = house.submit(commands);
+        submit.end(start, Status.Kind.OK);
+        for (int i = 0; i < statuses.size(); i++) {
+            Command.Kind kind = commands.get(i).getKind();
+            if (kind != Command.Kind.MAKE_BID || !houseRecordsBids) {
+                byKind[kind.ordinal()].count(statuses.get(i).kind);
+            }
+        }
+        return statuses;
+    }
+}
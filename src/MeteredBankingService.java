@@ -0,0 +1,56 @@
+package auctionhouse;
+
+import java.util.List;
+
+/**
+ * Decorator that counts and times every transfer made through a
+ * BankingService, by the status it returns. A transfer that throws counts
+ * as an ERROR. A batch is timed as a whole, and each of its transfers is
+ * counted.
+ */
+public class MeteredBankingService implements BankingService {
+
+    private final BankingService delegate;
+    private final OperationMetrics transfer;
+    private final OperationMetrics transferBatch;
+
+    public MeteredBankingService(BankingService delegate, AuctionHouseMetrics metrics) {
+        this.delegate = delegate;
+        this.transfer = metrics.operation(AuctionHouseMetrics.TRANSFER);
+        this.transferBatch = metrics.operation(AuctionHouseMetrics.TRANSFER_BATCH);
+    }
+
+    public Status transfer(
+            String senderAccount,
+            String senderAuthCode,
+            String receiverAccount,
+            Money amount) {
+        long start = System.nanoTime();
+        Status status = null;
+        try {
+            status = delegate.transfer(senderAccount, senderAuthCode, receiverAccount, amount);
+            return status;
+        } finally {
+            transfer.record(status != null ? status.kind : Status.Kind.ERROR, System.nanoTime() - start);
+        }
+    }
+
+    public List<Status> transferBatch(
+            String senderAccount,
+            String senderAuthCode,
+            List<Transfer> transfers) {
+        long start = System.nanoTime();
+        List<Status> statuses = null;
+        try {
+            statuses = delegate.transferBatch(senderAccount, senderAuthCode, transfers);
+            return statuses;
+        } finally {
+            transferBatch.record(statuses != null ? Status.Kind.OK : Status.Kind.ERROR, System.nanoTime() - start);
+            if (statuses != null) {
+                for (int i = 0; i < statuses.size(); i++) {
+                    transfer.count(statuses.get(i).kind);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package auctionhouse;
+
+import java.util.List;
+
+/**
+ * Decorator that counts and times every notification sent through a
+ * MessagingService. A batch call counts once. A call that throws counts
+ * as an ERROR.
+ */
+public class MeteredMessagingService implements MessagingService {
+
+    private final MessagingService delegate;
+    private final OperationMetrics auctionOpened;
+    private final OperationMetrics bidAccepted;
+    private final OperationMetrics lotSold;
+    private final OperationMetrics lotUnsold;
+
+    public MeteredMessagingService(MessagingService delegate, AuctionHouseMetrics metrics) {
+        this.delegate = delegate;
+        auctionOpened = metrics.operation(AuctionHouseMetrics.AUCTION_OPENED);
+        bidAccepted = metrics.operation(AuctionHouseMetrics.BID_ACCEPTED);
+        lotSold = metrics.operation(AuctionHouseMetrics.LOT_SOLD);
+        lotUnsold = metrics.operation(AuctionHouseMetrics.LOT_UNSOLD);
+    }
+
+    private static void record(OperationMetrics operation, long start, boolean completed) {
+        operation.record(completed ? Status.Kind.OK : Status.Kind.ERROR, System.nanoTime() - start);
+    }
+
+    public void auctionOpened(String address, int lotNumber) {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            delegate.auctionOpened(address, lotNumber);
+            completed = true;
+        } finally {
+            record(auctionOpened, start, completed);
+        }
+    }
+
+    public void bidAccepted(String address, int lotNumber, Money amount) {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            delegate.bidAccepted(address, lotNumber, amount);
+            completed = true;
+        } finally {
+            record(bidAccepted, start, completed);
+        }
+    }
+
+    public void lotSold(String address, int lotNumber) {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            delegate.lotSold(address, lotNumber);
+            completed = true;
+        } finally {
+            record(lotSold, start, completed);
+        }
+    }
+
+    public void lotUnsold(String address, int lotNumber) {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            delegate.lotUnsold(address, lotNumber);
+            completed = true;
+        } finally {
+            record(lotUnsold, start, completed);
+        }
+    }
+
+    public void auctionOpened(List<String> addresses, int lotNumber) {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            delegate.auctionOpened(addresses, lotNumber);
+            completed = true;
+        } finally {
+            record(auctionOpened, start, completed);
+        }
+    }
+
+    public void bidAccepted(List<String> addresses, int lotNumber, Money amount) {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            delegate.bidAccepted(addresses, lotNumber, amount);
+            completed = true;
+        } finally {
+            record(bidAccepted, start, completed);
+        }
+    }
+
+    public void lotSold(List<String> addresses, int lotNumber) {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            delegate.lotSold(addresses, lotNumber);
+            completed = true;
+        } finally {
+            record(lotSold, start, completed);
+        }
+    }
+
+    public void lotUnsold(List<String> addresses, int lotNumber) {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            delegate.lotUnsold(addresses, lotNumber);
+            completed = true;
+        } finally {
+            record(lotUnsold, start, completed);
+        }
+    }
+}
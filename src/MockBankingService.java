@@ -5,8 +5,9 @@ package auctionhouse;
 
 import static org.junit.Assert.assertEquals;
 
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -24,10 +25,10 @@ public class MockBankingService implements BankingService {
     private Set<String> badAccounts;
     
     public MockBankingService() {
-        expectedEvents = new HashSet<String>();
-        actualEvents = new HashSet<String>();
+        expectedEvents = ConcurrentHashMap.newKeySet();
+        actualEvents = ConcurrentHashMap.newKeySet();
         
-        badAccounts = new HashSet<String>();
+        badAccounts = ConcurrentHashMap.newKeySet();
     }
   
     
@@ -59,7 +60,9 @@ public class MockBankingService implements BankingService {
                 receiverAccount, 
                 amount);
         
-        logger.finer(s);
+        if (logger.isLoggable(Level.FINER)) {
+            logger.finer(s);
+        }
         
         actualEvents.add(LS + s);
         
@@ -5,8 +5,10 @@ package auctionhouse;
 
 import static org.junit.Assert.assertEquals;
 
-import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -20,8 +22,8 @@ public class MockMessagingService implements MessagingService {
     private Set<String> actualEvents;
 
     public MockMessagingService() {
-        expectedEvents = new HashSet<String>();
-        actualEvents = new HashSet<String>();
+        expectedEvents = ConcurrentHashMap.newKeySet();
+        actualEvents = ConcurrentHashMap.newKeySet();
     }
 
     private String makeOpenedEventString(
@@ -56,28 +58,65 @@ public class MockMessagingService implements MessagingService {
     public void auctionOpened(String address, int lotNumber) {
      
         String s = makeOpenedEventString(address, lotNumber);
-        logger.finer(s); 
+        if (logger.isLoggable(Level.FINER)) {
+            logger.finer(s);
+        }
         actualEvents.add(s);
     }
     
     public void bidAccepted(String address, int lotNumber,Money amount) {
         
         String s = makeBidEventString(address, lotNumber, amount);
-        logger.finer(s); 
+        if (logger.isLoggable(Level.FINER)) {
+            logger.finer(s);
+        }
         actualEvents.add(s);
     }
     
     public void lotSold(String address, int lotNumber) {
         
         String s = makeSoldEventString(address, lotNumber);
-        logger.finer(s); 
+        if (logger.isLoggable(Level.FINER)) {
+            logger.finer(s);
+        }
         actualEvents.add(s);
     }
     public void lotUnsold(String address, int lotNumber) {
         String s = makeUnsoldEventString(address, lotNumber);
-        logger.finer(s);        
+        if (logger.isLoggable(Level.FINER)) {
+            logger.finer(s);
+        }
         actualEvents.add(s);
     }
+    
+    /*
+     * Batch methods record one event per address, so expectations are
+     * checked the same way whichever form the house uses.
+     */
+    
+    public void auctionOpened(List<String> addresses, int lotNumber) {
+        for (String address : addresses) {
+            auctionOpened(address, lotNumber);
+        }
+    }
+    
+    public void bidAccepted(List<String> addresses, int lotNumber, Money amount) {
+        for (String address : addresses) {
+            bidAccepted(address, lotNumber, amount);
+        }
+    }
+    
+    public void lotSold(List<String> addresses, int lotNumber) {
+        for (String address : addresses) {
+            lotSold(address, lotNumber);
+        }
+    }
+    
+    public void lotUnsold(List<String> addresses, int lotNumber) {
+        for (String address : addresses) {
+            lotUnsold(address, lotNumber);
+        }
+    }
     /*
      * Test methods
      */
@@ -3,38 +3,167 @@
  */
 package auctionhouse;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
 /**
  * Money is a utility class for currency values.
  * A Money object represents the monetary value to be transferred between the
  * seller and the buyer when a lot is sold, which includes the pounds currency.
  * 
+ * Amounts are held as a whole number of pence, so arithmetic and comparison
+ * are exact and involve no floating-point work.
+ * 
  * @author      pbj
  * @version     %I%, %G%
  */
 public class Money implements Comparable<Money> {
     
+    /**
+     * The zero amount, shared so that callers need not allocate one.
+     */
+    public static final Money ZERO = new Money(0L);
+    
+    /**
+     * One penny, the smallest amount Money can represent.
+     */
+    public static final Money ONE_PENNY = new Money(1L);
+    
+    private static final BigDecimal HALF = new BigDecimal("0.5");
+    
+    /**
+     * Largest whole-pounds value the fast parser accepts before it could
+     * overflow when scaled to pence.
+     */
+    private static final long MAX_FAST_POUNDS = (Long.MAX_VALUE - 99) / 100;
+    
     /**
      * This variable declaration represents the amount of money that this
      * particular Money object specifies, to be transferred between the seller
-     * and buyer.
+     * and buyer, in pence.
      */
-    private double value;
+    private final long pence;
     
-    private static long getNearestPence(double pounds) {
-        return Math.round(pounds * 100.0);
+    /**
+     * Creates an amount from a decimal string of pounds, such as "12.34".
+     * Amounts finer than a penny are rounded to the nearest penny, halves
+     * rounding up.
+     * 
+     * @param  pounds   decimal amount in pounds
+     * @throws NumberFormatException if pounds is not a decimal number
+     */
+    public Money(String pounds) {
+        pence = parsePence(pounds);
     }
     
-    private static double normalise(double pounds) {
-        return getNearestPence(pounds)/100.0;
+    private Money(long pence) {
+        this.pence = pence;
+    }
+    
+    /**
+     * Returns the amount of the given number of pence.
+     * 
+     * @param  pence    amount in pence
+     * @return          Money of that amount
+     */
+    public static Money ofPence(long pence) {
+        return pence == 0 ? ZERO : new Money(pence);
+    }
+    
+    /**
+     * Converts a percentage to basis points (hundredths of a percent),
+     * the form {@link #addBasisPoints} takes. Callers applying the same
+     * percentage repeatedly should convert it once.
+     * 
+     * @param  percent  percentage, e.g. 12.5
+     * @return          the percentage in basis points, e.g. 1250
+     */
+    public static long basisPoints(double percent) {
+        return Math.round(percent * 100.0);
+    }
+    
+    /*
+     * Parses a plain decimal string directly to pence. Anything else that
+     * is a valid number, e.g. with an exponent, goes through BigDecimal.
+     * Either way the result is Math.round(pounds * 100), i.e. halves round
+     * towards positive infinity.
+     */
+    private static long parsePence(String s) {
+        int length = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) {
+            negative = s.charAt(0) == '-';
+            i++;
+        }
         
+        long pounds = 0;
+        int digits = 0;
+        while (i < length && isDigit(s.charAt(i))) {
+            if (pounds > MAX_FAST_POUNDS / 10) {
+                return parsePenceSlowly(s);
+            }
+            pounds = pounds * 10 + (s.charAt(i) - '0');
+            i++;
+            digits++;
+        }
+        
+        long fraction = 0;
+        int roundingDigit = 0;
+        boolean beyondRoundingDigit = false;
+        if (i < length && s.charAt(i) == '.') {
+            i++;
+            int position = 0;
+            while (i < length && isDigit(s.charAt(i))) {
+                int d = s.charAt(i) - '0';
+                if (position < 2) {
+                    fraction = fraction * 10 + d;
+                } else if (position == 2) {
+                    roundingDigit = d;
+                } else if (d != 0) {
+                    beyondRoundingDigit = true;
+                }
+                i++;
+                position++;
+                digits++;
+            }
+            if (position == 1) {
+                fraction *= 10;
+            }
+        }
+        if (i != length || digits == 0 || pounds > MAX_FAST_POUNDS) {
+            return parsePenceSlowly(s);
+        }
+        
+        long magnitude = pounds * 100 + fraction;
+        boolean roundUp = negative
+                ? roundingDigit > 5 || (roundingDigit == 5 && beyondRoundingDigit)
+                : roundingDigit >= 5;
+        if (roundUp) {
+            magnitude++;
+        }
+        return negative ? -magnitude : magnitude;
     }
- 
-    public Money(String pounds) {
-        value = normalise(Double.parseDouble(pounds));
+    
+    private static long parsePenceSlowly(String s) {
+        return new BigDecimal(s.trim())
+                .movePointRight(2)
+                .add(HALF)
+                .setScale(0, RoundingMode.FLOOR)
+                .longValueExact();
     }
     
-    private Money(double pounds) {
-        value = pounds;
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    /**
+     * Returns the amount in pence.
+     * 
+     * @return          the amount in pence
+     */
+    public long getPence() {
+        return pence;
     }
     
     /**
@@ -45,7 +174,7 @@ public class Money implements Comparable<Money> {
      *                  parameter amount
      */
     public Money add(Money m) {
-        return new Money(value + m.value);
+        return ofPence(pence + m.pence);
     }
     
     /**
@@ -57,23 +186,45 @@ public class Money implements Comparable<Money> {
      */
     
     public Money subtract(Money m) {
-        return new Money(value - m.value);
+        return ofPence(pence - m.pence);
     }
- 
+    
     /**
      * Adds the specified percentage amount to the existing monetary amount in
-     * value variable.
+     * value variable. The percentage is taken to the nearest basis point.
      * 
      * @param  percent  the amount in percentage to be added
-     * @return          resulting amount of adding a percentage to value variable 
+     * @return          resulting amount of adding a percentage to value variable
      */
     public Money addPercent(double percent) {
-        return new Money(normalise(value * (1 + percent/100.0)));
+        return addBasisPoints(basisPoints(percent));
     }
-     
+    
+    /**
+     * Adds the specified number of basis points (hundredths of a percent) to
+     * this amount, rounding to the nearest penny with halves rounding up.
+     * 
+     * @param  basisPoints  the percentage to be added, in basis points
+     * @return              resulting amount of adding the percentage
+     */
+    public Money addBasisPoints(long basisPoints) {
+        return ofPence(Math.floorDiv(pence * (10000 + basisPoints) + 5000, 10000));
+    }
+    
     @Override
     public String toString() {
-        return String.format("%.2f", value);
+        long magnitude = Math.abs(pence);
+        long pounds = magnitude / 100;
+        int remainder = (int) (magnitude % 100);
+        StringBuilder sb = new StringBuilder(24);
+        if (pence < 0) {
+            sb.append('-');
+        }
+        sb.append(pounds).append('.');
+        if (remainder < 10) {
+            sb.append('0');
+        }
+        return sb.append(remainder).toString();
     }
     
     /**
@@ -86,7 +237,7 @@ public class Money implements Comparable<Money> {
      *                  greater than 0 if m is lesser
      */
     public int compareTo(Money m) {
-        return Long.compare(getNearestPence(value),  getNearestPence(m.value)); 
+        return Long.compare(pence, m.pence);
     }
     
     /**
@@ -97,8 +248,45 @@ public class Money implements Comparable<Money> {
      *                  this value variable;
      *                  <code>false</code> otherwise
      */
-    public Boolean lessEqual(Money m) {
-        return compareTo(m) <= 0;
+    public boolean lessEqual(Money m) {
+        return pence <= m.pence;
+    }
+    
+    /**
+     * Checks if the money amount m is greater than this value variable.
+     * 
+     * @param  m        amount to check against this value variable
+     * @return          <code>true</code> if argument m is greater than
+     *                  this value variable;
+     *                  <code>false</code> otherwise
+     */
+    public boolean lessThan(Money m) {
+        return pence < m.pence;
+    }
+    
+    /**
+     * Checks if this amount is more than the given margin above base, i.e.
+     * whether <code>this - base &gt; margin</code>, without allocating the
+     * difference.
+     * 
+     * @param  base     amount to compare against
+     * @param  margin   amount this must exceed base by
+     * @return          <code>true</code> if this exceeds base by more than
+     *                  margin;
+     *                  <code>false</code> otherwise
+     */
+    public boolean exceedsBy(Money base, Money margin) {
+        return pence - base.pence > margin.pence;
+    }
+    
+    /**
+     * Checks if this amount is zero.
+     * 
+     * @return          <code>true</code> if this amount is zero;
+     *                  <code>false</code> otherwise
+     */
+    public boolean isZero() {
+        return pence == 0;
     }
     
     /**
@@ -114,13 +302,13 @@ public class Money implements Comparable<Money> {
     public boolean equals(Object o) {
         if (!(o instanceof Money)) return false;
         Money oM = (Money) o;
-        return compareTo(oM) == 0;       
+        return pence == oM.pence;
     }
     
     @Override
     public int hashCode() {
-        return Long.hashCode(getNearestPence(value));
+        return Long.hashCode(pence);
     }
-      
+
 
 }
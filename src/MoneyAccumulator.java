@@ -0,0 +1,54 @@
+package auctionhouse;
+
+/**
+ * Mutable running total of Money amounts.
+ * 
+ * Summing many amounts with {@link Money#add} allocates a new Money per
+ * step; an accumulator adds in place and only allocates when the total is
+ * read with {@link #toMoney}. An accumulator is not thread-safe.
+ */
+public class MoneyAccumulator {
+    
+    private long pence;
+    
+    public MoneyAccumulator() {
+        pence = 0;
+    }
+    
+    public MoneyAccumulator add(Money m) {
+        pence += m.getPence();
+        return this;
+    }
+    
+    public MoneyAccumulator subtract(Money m) {
+        pence -= m.getPence();
+        return this;
+    }
+    
+    public MoneyAccumulator addPence(long amount) {
+        pence += amount;
+        return this;
+    }
+    
+    public void reset() {
+        pence = 0;
+    }
+    
+    public long getPence() {
+        return pence;
+    }
+    
+    public boolean isZero() {
+        return pence == 0;
+    }
+    
+    public Money toMoney() {
+        return Money.ofPence(pence);
+    }
+    
+    @Override
+    public String toString() {
+        return toMoney().toString();
+    }
+    
+}
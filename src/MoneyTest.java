@@ -82,6 +82,56 @@ public class MoneyTest {
         assertTrue(same.equals(greater));
     }
 
+    @Test
+    public void testParseRounding() {
+        assertEquals(1234, new Money("12.34").getPence());
+        assertEquals(1250, new Money("12.5").getPence());
+        assertEquals(1200, new Money("12").getPence());
+        assertEquals(50, new Money(".5").getPence());
+        assertEquals(67, new Money("0.666").getPence());
+        assertEquals(13, new Money("0.125").getPence());
+        assertEquals(12, new Money("0.1249999").getPence());
+        assertEquals(-1234, new Money("-12.34").getPence());
+        assertEquals(-12, new Money("-0.125").getPence());
+        assertEquals(-13, new Money("-0.1251").getPence());
+        assertEquals(150000, new Money("1.5e3").getPence());
+    }
+    
+    @Test(expected = NumberFormatException.class)
+    public void testParseRejectsGarbage() {
+        new Money("12.3x");
+    }
+    
+    @Test
+    public void testToString() {
+        assertEquals("0.00", Money.ZERO.toString());
+        assertEquals("0.05", Money.ofPence(5).toString());
+        assertEquals("-0.05", Money.ofPence(-5).toString());
+        assertEquals("1234567.89", new Money("1234567.89").toString());
+    }
+    
+    @Test
+    public void testExceedsBy() {
+        Money current = new Money("100.00");
+        Money increment = new Money("10.00");
+        assertFalse(new Money("110.00").exceedsBy(current, increment));
+        assertTrue(new Money("110.01").exceedsBy(current, increment));
+        assertTrue(new Money("0").isZero());
+        assertTrue(Money.ZERO.lessThan(Money.ONE_PENNY));
+    }
+    
+    @Test
+    public void testAccumulator() {
+        MoneyAccumulator total = new MoneyAccumulator();
+        for (int i = 0; i < 100; i++) {
+            total.add(new Money("0.10"));
+        }
+        total.subtract(new Money("0.50"));
+        assertEquals("9.50", total.toMoney().toString());
+        total.reset();
+        assertTrue(total.isZero());
+    }
+    
     /*
      * Put all class modifications above.
      ***********************************************************************
@@ -0,0 +1,158 @@
+package auctionhouse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calls of one operation: how many ended with each {@link Status.Kind},
+ * and how long they took.
+ *
+ * Every call is counted, but only one in so many calls is timed: reading
+ * the clock twice can cost as much as a fast operation itself. A call is
+ * timed by taking {@link #start} before it and passing the result to
+ * {@link #end} after it. {@link #start()} picks the calls to time by
+ * counting them; {@link #start(int)} picks them by a hash of the call's
+ * arguments, which costs no write at all, for the hottest operations.
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+
+    private static final Status.Kind[] KINDS = Status.Kind.values();
+    private static final long UNTIMED = Long.MIN_VALUE;
+
+    private final String name;
+    private final int sampleMask;
+    private int calls; // racy: a lost increment only shifts which call is timed
+    private final LongAdder[] outcomes = new LongAdder[KINDS.length];
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param  name         name of the operation
+     * @param  sampleEvery  one call in how many is timed, a power of two
+     */
+    public OperationMetrics(String name, int sampleEvery) {
+        if (sampleEvery <= 0 || Integer.bitCount(sampleEvery) != 1) {
+            throw new IllegalArgumentException("Sampling interval must be a power of two");
+        }
+        this.name = name;
+        this.sampleMask = sampleEvery - 1;
+        for (int i = 0; i < KINDS.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Times every call.
+     */
+    public OperationMetrics(String name) {
+        this(name, 1);
+    }
+
+    /**
+     * Starts a call: returns the time if this call is to be timed.
+     */
+    public long start() {
+        if ((++calls & sampleMask) != 0) {
+            return UNTIMED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Starts a call, timing it if a hash of its arguments says so. Over
+     * varied calls one in so many is timed; a call repeated with the same
+     * arguments is timed every time or never.
+     */
+    public long start(int hash) {
+        // The finishing mix of MurmurHash3, so every bit of the hash counts
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        if ((h & sampleMask) != 0) {
+            return UNTIMED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends a call started with {@link #start}, counting its outcome.
+     */
+    public void end(long start, Status.Kind outcome) {
+        outcomes[outcome.ordinal()].increment();
+        if (start != UNTIMED) {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a call's outcome and latency.
+     */
+    public void record(Status.Kind outcome, long latencyNanos) {
+        outcomes[outcome.ordinal()].increment();
+        latency.record(latencyNanos);
+    }
+
+    /**
+     * Records a call's outcome only, for calls timed as part of a larger
+     * one.
+     */
+    public void count(Status.Kind outcome) {
+        outcomes[outcome.ordinal()].increment();
+    }
+
+    public long getCount(Status.Kind outcome) {
+        return outcomes[outcome.ordinal()].sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder outcome : outcomes) {
+            count += outcome.sum();
+        }
+        return count;
+    }
+
+    public Map<String, Long> getOutcomeCounts() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (Status.Kind kind : KINDS) {
+            counts.put(kind.name(), outcomes[kind.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    public double getMeanLatencyNanos() {
+        return latency.getMean();
+    }
+
+    public long getMedianLatencyNanos() {
+        return latency.getValueAtPercentile(50.0);
+    }
+
+    public long get99thPercentileLatencyNanos() {
+        return latency.getValueAtPercentile(99.0);
+    }
+
+    public long get999thPercentileLatencyNanos() {
+        return latency.getValueAtPercentile(99.9);
+    }
+
+    public long getMaxLatencyNanos() {
+        return latency.getMax();
+    }
+
+    public String toString() {
+        return name + ": " + getOutcomeCounts() + ", p50 " + getMedianLatencyNanos()
+                + "ns, p99 " + get99thPercentileLatencyNanos() + "ns";
+    }
+}
@@ -0,0 +1,28 @@
+package auctionhouse;
+
+import java.util.Map;
+
+/**
+ * Management view of one {@link OperationMetrics}.
+ */
+public interface OperationMetricsMXBean {
+
+    String getName();
+
+    long getCount();
+
+    /**
+     * Returns the number of calls with each outcome, by status kind.
+     */
+    Map<String, Long> getOutcomeCounts();
+
+    double getMeanLatencyNanos();
+
+    long getMedianLatencyNanos();
+
+    long get99thPercentileLatencyNanos();
+
+    long get999thPercentileLatencyNanos();
+
+    long getMaxLatencyNanos();
+}
@@ -0,0 +1,242 @@
+package auctionhouse;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Retries settlements of lots left SOLD_PENDING_PAYMENT, off the request
+ * path.
+ *
+ * Pending settlements wait in a queue ordered by when they are next due.
+ * A dispatcher thread takes each one when it falls due and runs an attempt
+ * on a worker; a semaphore caps how many attempts, and so bank calls, run
+ * at once. A failed attempt is requeued with exponential backoff and
+ * jitter: the nth retry waits a random time between half and all of
+ * <code>min(initialDelay * 2^(n-1), maxDelay)</code>, so settlements that
+ * failed together do not all retry together. After maxAttempts attempts a
+ * settlement is abandoned and left for an operator.
+ *
+ * What an attempt does is supplied by the caller, normally
+ * {@link AuctionHouseImp#retrySettlement}, which moves the lot to SOLD once
+ * payment succeeds.
+ */
+public class PaymentRecoveryScheduler implements AutoCloseable {
+
+    private static Logger logger = Logger.getLogger("auctionhouse");
+
+    /*
+     * A settlement waiting for its next attempt.
+     */
+    private static final class PendingPayment implements Delayed {
+        final Settlement settlement;
+        final int attempt;      // attempts made so far
+        final long dueNanos;
+
+        PendingPayment(Settlement settlement, int attempt, long dueNanos) {
+            this.settlement = settlement;
+            this.attempt = attempt;
+            this.dueNanos = dueNanos;
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        public int compareTo(Delayed other) {
+            if (other instanceof PendingPayment) {
+                return Long.compare(dueNanos, ((PendingPayment) other).dueNanos);
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    private final Predicate<Settlement> attempt;
+    private final long initialDelayNanos;
+    private final long maxDelayNanos;
+    private final int maxAttempts;
+    private final DelayQueue<PendingPayment> queue = new DelayQueue<PendingPayment>();
+    private final Semaphore bankCalls;
+    private final ExecutorService workers;
+    private final Thread dispatcher;
+    private volatile boolean closed = false;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+
+    /**
+     * @param  attempt             makes one attempt to complete a settlement,
+     *                             returning <code>true</code> on success
+     * @param  initialDelayMillis  delay before the first retry
+     * @param  maxDelayMillis      longest delay between retries
+     * @param  maxAttempts         attempts before giving up
+     * @param  maxConcurrentCalls  most attempts running at once
+     */
+    public PaymentRecoveryScheduler(
+            Predicate<Settlement> attempt,
+            long initialDelayMillis,
+            long maxDelayMillis,
+            int maxAttempts,
+            int maxConcurrentCalls) {
+        if (initialDelayMillis <= 0 || maxDelayMillis < initialDelayMillis
+                || maxAttempts <= 0 || maxConcurrentCalls <= 0) {
+            throw new IllegalArgumentException("Invalid payment recovery settings");
+        }
+        this.attempt = attempt;
+        this.initialDelayNanos = TimeUnit.MILLISECONDS.toNanos(initialDelayMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.maxAttempts = maxAttempts;
+        this.bankCalls = new Semaphore(maxConcurrentCalls);
+        this.workers = Executors.newFixedThreadPool(maxConcurrentCalls, r -> {
+            Thread t = new Thread(r, "auctionhouse-payment-recovery");
+            t.setDaemon(true);
+            return t;
+        });
+        this.dispatcher = new Thread(this::dispatch, "auctionhouse-payment-recovery-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queues a settlement whose payment has just failed for its first retry.
+     */
+    public void schedule(Settlement settlement) {
+        if (closed) {
+            throw new IllegalStateException("Payment recovery is closed");
+        }
+        queue.put(new PendingPayment(settlement, 1, System.nanoTime() + backoffNanos(1)));
+    }
+
+    /*
+     * Delay before the given retry: exponential, capped, with equal jitter.
+     */
+    private long backoffNanos(int retry) {
+        long delay = initialDelayNanos << Math.min(retry - 1, 30);
+        if (delay <= 0 || delay > maxDelayNanos) {
+            delay = maxDelayNanos;
+        }
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    private void dispatch() {
+        try {
+            while (!closed) {
+                final PendingPayment due = queue.take();
+                bankCalls.acquire();
+                inFlight.incrementAndGet();
+                workers.execute(() -> run(due));
+            }
+        } catch (InterruptedException | RejectedExecutionException e) {
+            // closed; a close that was itself interrupted may shut the
+            // workers down before this thread stops
+        }
+    }
+
+    private void run(PendingPayment due) {
+        boolean paid = false;
+        try {
+            attempts.incrementAndGet();
+            paid = attempt.test(due.settlement);
+        } catch (RuntimeException e) {
+            if (logger.isLoggable(Level.WARNING)) {
+                logger.log(Level.WARNING, "Payment retry for lot " + due.settlement.getLotNumber() + " failed", e);
+            }
+        } finally {
+            inFlight.decrementAndGet();
+            bankCalls.release();
+        }
+
+        if (paid) {
+            recovered.incrementAndGet();
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Payment for lot " + due.settlement.getLotNumber()
+                        + " recovered after " + (due.attempt + 1) + " attempts");
+            }
+        } else if (due.attempt + 1 >= maxAttempts) {
+            failedAttempts.incrementAndGet();
+            abandoned.incrementAndGet();
+            if (logger.isLoggable(Level.WARNING)) {
+                logger.warning("Giving up on payment for lot " + due.settlement.getLotNumber()
+                        + " after " + (due.attempt + 1) + " attempts");
+            }
+        } else {
+            failedAttempts.incrementAndGet();
+            int next = due.attempt + 1;
+            if (!closed) {
+                queue.put(new PendingPayment(due.settlement, next, System.nanoTime() + backoffNanos(next)));
+            }
+        }
+    }
+
+    /**
+     * Stops retrying. Settlements still queued stay SOLD_PENDING_PAYMENT.
+     * If the calling thread is interrupted, close stops waiting for retries
+     * in progress and returns with the thread's interrupt status set.
+     */
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        boolean interrupted = false;
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        workers.shutdown();
+        if (!interrupted) {
+            try {
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of settlements waiting for a retry.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of attempts running now.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getAttempts() {
+        return attempts.get();
+    }
+
+    public long getRecovered() {
+        return recovered.get();
+    }
+
+    public long getFailedAttempts() {
+        return failedAttempts.get();
+    }
+
+    public long getAbandoned() {
+        return abandoned.get();
+    }
+
+}
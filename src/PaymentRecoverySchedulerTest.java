@@ -0,0 +1,195 @@
+package auctionhouse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PaymentRecoverySchedulerTest {
+
+    /*
+     * Fails each buyer's first few transfers, and tracks how many retried
+     * transfers run at once.
+     */
+    private static class FlakyBankingService implements BankingService {
+        final int failuresPerBuyer;
+        final ConcurrentHashMap<String, AtomicInteger> calls = new ConcurrentHashMap<String, AtomicInteger>();
+        final AtomicInteger sellerLegs = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        FlakyBankingService(int failuresPerBuyer) {
+            this.failuresPerBuyer = failuresPerBuyer;
+        }
+
+        public Status transfer(
+                String senderAccount,
+                String senderAuthCode,
+                String receiverAccount,
+                Money amount) {
+            if (Thread.currentThread().getName().equals("auctionhouse-payment-recovery")) {
+                int now = running.incrementAndGet();
+                maxRunning.accumulateAndGet(now, Math::max);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            }
+            if (senderAccount.equals("AH A/C")) {
+                sellerLegs.incrementAndGet();
+                return Status.OK();
+            }
+            int n = calls.computeIfAbsent(senderAccount, a -> new AtomicInteger()).incrementAndGet();
+            return n <= failuresPerBuyer ? Status.error("Declined") : Status.OK();
+        }
+    }
+
+    /*
+     * Declines the buyer's first transfer, then counts the transfers made
+     * and holds the first retried one until released.
+     */
+    private static class HoldingBankingService implements BankingService {
+        final AtomicInteger buyerLegs = new AtomicInteger();
+        final AtomicInteger sellerLegs = new AtomicInteger();
+        final CountDownLatch held = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        public Status transfer(
+                String senderAccount,
+                String senderAuthCode,
+                String receiverAccount,
+                Money amount) {
+            if (senderAccount.equals("AH A/C")) {
+                sellerLegs.incrementAndGet();
+                return Status.OK();
+            }
+            int n = buyerLegs.incrementAndGet();
+            if (n == 1) {
+                return Status.error("Declined");
+            }
+            if (n == 2) {
+                held.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return Status.OK();
+        }
+    }
+
+    private PaymentRecoveryScheduler recovery;
+
+    private AuctionHouseImp house(BankingService bank, int maxAttempts) {
+        AuctionHouseImp house = new AuctionHouseImp(
+                new Parameters(10.0, 15.0, new Money("0.00"), "AH A/C", "AH-auth",
+                        new MockMessagingService(), bank));
+        recovery = new PaymentRecoveryScheduler(house::retrySettlement, 1, 8, maxAttempts, 2);
+        house.setPaymentRecovery(recovery);
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        return house;
+    }
+
+    private void sellToOwnBuyer(AuctionHouseImp house, int lot) {
+        house.registerBuyer("Buyer" + lot, "@Buyer" + lot, "B" + lot + " A/C", "B" + lot + "-auth");
+        house.addLot("SellerY", lot, "Lot " + lot, new Money("1.00"));
+        house.noteInterest("Buyer" + lot, lot);
+        house.openAuction("Auctioneer", "@Auctioneer", lot);
+        house.makeBid("Buyer" + lot, lot, new Money("5.00"));
+        assertEquals(Status.Kind.SALE_PENDING_PAYMENT, house.closeAuction("Auctioneer", lot).kind);
+    }
+
+    private void awaitQuiet(long expectedDone) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (recovery.getRecovered() + recovery.getAbandoned() < expectedDone
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @After
+    public void stop() {
+        recovery.close();
+    }
+
+    @Test
+    public void testRetriesUntilPaid() throws Exception {
+        FlakyBankingService bank = new FlakyBankingService(3);
+        AuctionHouseImp house = house(bank, 10);
+        for (int lot = 1; lot <= 8; lot++) {
+            sellToOwnBuyer(house, lot);
+        }
+        awaitQuiet(8);
+
+        assertEquals(8, recovery.getRecovered());
+        assertEquals(0, recovery.getAbandoned());
+        assertEquals(0, recovery.getQueueDepth());
+        // Each close fails once; of three retries per lot, two more fail.
+        assertEquals(8 * 3, recovery.getAttempts());
+        assertEquals(8 * 2, recovery.getFailedAttempts());
+        for (int lot = 1; lot <= 8; lot++) {
+            assertEquals(LotStatus.SOLD, house.getOnlineCatalogue().get(lot).status);
+        }
+        // The seller is paid once per lot, however often the buyer is retried.
+        assertEquals(8, bank.sellerLegs.get());
+        assertTrue(bank.maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testRacingRetriesPayOnce() throws Exception {
+        HoldingBankingService bank = new HoldingBankingService();
+        final AuctionHouseImp house = house(bank, 10);
+        sellToOwnBuyer(house, 1);
+        final Settlement settlement = house.getPendingSettlements().iterator().next();
+        assertTrue(bank.held.await(10, TimeUnit.SECONDS));
+
+        // A manual retry while the scheduler's retry is still at the bank.
+        final AtomicInteger manuallyPaid = new AtomicInteger();
+        Thread retry = new Thread(() -> {
+            if (house.retrySettlement(settlement)) {
+                manuallyPaid.incrementAndGet();
+            }
+        });
+        retry.setDaemon(true);
+        retry.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (retry.getState() != Thread.State.BLOCKED && bank.buyerLegs.get() < 3
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        bank.release.countDown();
+        retry.join();
+        awaitQuiet(1);
+
+        assertEquals(1, recovery.getRecovered());
+        assertEquals(1, manuallyPaid.get());
+        // The declined transfer and one payment; the seller paid once.
+        assertEquals(2, bank.buyerLegs.get());
+        assertEquals(1, bank.sellerLegs.get());
+        assertEquals(LotStatus.SOLD, house.getOnlineCatalogue().get(1).status);
+        assertTrue(house.getPendingSettlements().isEmpty());
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() throws Exception {
+        FlakyBankingService bank = new FlakyBankingService(Integer.MAX_VALUE);
+        AuctionHouseImp house = house(bank, 3);
+        sellToOwnBuyer(house, 1);
+        awaitQuiet(1);
+
+        assertEquals(1, recovery.getAbandoned());
+        assertEquals(2, recovery.getAttempts()); // the close was the first of three
+        assertEquals(0, recovery.getQueueDepth());
+        assertEquals(LotStatus.SOLD_PENDING_PAYMENT, house.getOnlineCatalogue().get(1).status);
+        assertEquals(0, bank.sellerLegs.get());
+    }
+}
@@ -0,0 +1,233 @@
+package auctionhouse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects what the house owes each seller and pays it out in batches.
+ * 
+ * Each sale credits the seller's net amount, commission already deducted.
+ * {@link #settle} then pays every seller owed money with one
+ * {@link BankingService#transferBatch} call, one transfer per seller, so a
+ * session's payouts cost O(sellers) transfers rather than O(lots). Call it
+ * at the end of a session or periodically, e.g. from a
+ * ScheduledExecutorService. A seller whose transfer fails stays owed and is
+ * paid in the next batch.
+ * 
+ * With a journal set, each credit and each lot paid out is journalled
+ * under this aggregator's lock, together with the change it records, and
+ * {@link StateSnapshot} captures the credits still to be paid, those in a
+ * batch being paid included. Replay rebuilds them with
+ * {@link #restoreCredit} and {@link #restorePayout}. A payout is journalled
+ * once its transfer has succeeded, so a crash between the two pays that
+ * seller again after recovery rather than not at all.
+ * 
+ * Crediting and settling may happen from any thread.
+ */
+public class PayoutAggregator {
+    
+    private static Logger logger = Logger.getLogger("auctionhouse");
+    
+    /*
+     * What one seller is owed, and for which lots.
+     */
+    private static final class Owed {
+        final MoneyAccumulator total = new MoneyAccumulator();
+        final IntList lotNumbers = new IntList();
+        final List<Money> lotAmounts = new ArrayList<Money>();
+        
+        void add(int lotNumber, Money amount) {
+            total.add(amount);
+            lotNumbers.add(lotNumber);
+            lotAmounts.add(amount);
+        }
+        
+        PayoutReport.Line toLine(String account, boolean paid) {
+            return new PayoutReport.Line(
+                    account, total.toMoney(), lotNumbers.toArray(), lotAmounts.toArray(new Money[0]), paid);
+        }
+    }
+    
+    private Map<String, Owed> owed = new LinkedHashMap<String, Owed>(); // guarded by this
+    private Map<String, Owed> inFlight = Collections.emptyMap(); // batch being paid, guarded by this
+    private CommandJournal journal = null; // guarded by this
+    private final Object settleLock = new Object(); // one batch at a time
+    
+    /**
+     * Sets the journal that records credits and payouts.
+     * {@link AuctionHouseImp} sets its own journal here.
+     */
+    public synchronized void setJournal(CommandJournal journal) {
+        this.journal = journal;
+    }
+    
+    /**
+     * Records that the house owes a seller for a lot.
+     * 
+     * @param  sellerAccount  seller's bank account
+     * @param  lotNumber      lot sold
+     * @param  amount         net amount owed for the lot
+     * @return                the journal position of the credit, or 0 if
+     *                        no journal is set
+     */
+    public synchronized long credit(String sellerAccount, int lotNumber, Money amount) {
+        long position = journal == null ? 0 : journal.appendCredit(sellerAccount, lotNumber, amount);
+        add(sellerAccount, lotNumber, amount);
+        return position;
+    }
+    
+    /*
+     * The caller holds this aggregator's lock.
+     */
+    private void add(String sellerAccount, int lotNumber, Money amount) {
+        Owed o = owed.get(sellerAccount);
+        if (o == null) {
+            o = new Owed();
+            owed.put(sellerAccount, o);
+        }
+        o.add(lotNumber, amount);
+    }
+    
+    /**
+     * Returns the number of sellers currently owed money.
+     */
+    public synchronized int getSellersOwed() {
+        return owed.size();
+    }
+    
+    /**
+     * Returns the total currently owed to one seller.
+     */
+    public synchronized Money getOwed(String sellerAccount) {
+        Owed o = owed.get(sellerAccount);
+        return o == null ? Money.ZERO : o.total.toMoney();
+    }
+    
+    /**
+     * Pays every seller owed money in one batch from the house account.
+     * 
+     * @return  a report of the batch, one line per seller
+     */
+    public PayoutReport settle(BankingService bank, String houseAccount, String houseAuthCode) {
+        synchronized (settleLock) {
+            Map<String, Owed> batch;
+            synchronized (this) {
+                if (owed.isEmpty()) {
+                    return new PayoutReport(Collections.<PayoutReport.Line>emptyList());
+                }
+                batch = owed;
+                owed = new LinkedHashMap<String, Owed>();
+                inFlight = batch;
+            }
+            
+            List<String> accounts = new ArrayList<String>(batch.keySet());
+            List<Transfer> transfers = new ArrayList<Transfer>(accounts.size());
+            for (String account : accounts) {
+                transfers.add(new Transfer(account, batch.get(account).total.toMoney()));
+            }
+            
+            List<Status> statuses;
+            try {
+                statuses = bank.transferBatch(houseAccount, houseAuthCode, transfers);
+            } catch (RuntimeException e) {
+                if (logger.isLoggable(Level.WARNING)) {
+                    logger.log(Level.WARNING, "Seller payout batch failed", e);
+                }
+                statuses = Collections.emptyList();
+            }
+            
+            List<PayoutReport.Line> lines = new ArrayList<PayoutReport.Line>(accounts.size());
+            for (int i = 0; i < accounts.size(); i++) {
+                String account = accounts.get(i);
+                boolean paid = i < statuses.size() && statuses.get(i).kind != Status.Kind.ERROR;
+                lines.add(batch.get(account).toLine(account, paid));
+            }
+            CommandJournal j;
+            long position = 0;
+            synchronized (this) {
+                j = journal;
+                for (PayoutReport.Line line : lines) {
+                    if (!line.isPaid()) {
+                        restore(line.getSellerAccount(), batch.get(line.getSellerAccount()));
+                    } else if (j != null) {
+                        for (int lotNumber : line.getLotNumbers()) {
+                            position = j.appendPayout(line.getSellerAccount(), lotNumber);
+                        }
+                    }
+                }
+                inFlight = Collections.emptyMap();
+            }
+            if (j != null) {
+                j.awaitDurable(position);
+            }
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Paid " + accounts.size() + " sellers in one batch: " + lines);
+            }
+            return new PayoutReport(lines);
+        }
+    }
+    
+    /*
+     * Puts a failed payout back, ahead of anything credited since. The
+     * caller holds this aggregator's lock.
+     */
+    private void restore(String account, Owed failed) {
+        Owed since = owed.put(account, failed);
+        if (since != null) {
+            for (int i = 0; i < since.lotNumbers.size(); i++) {
+                failed.add(since.lotNumbers.get(i), since.lotAmounts.get(i));
+            }
+        }
+    }
+    
+    /**
+     * Returns every credit not yet paid out, those in a batch being paid
+     * included, one line per seller and batch, none marked paid.
+     */
+    public synchronized List<PayoutReport.Line> getPending() {
+        List<PayoutReport.Line> pending = new ArrayList<PayoutReport.Line>(inFlight.size() + owed.size());
+        for (Map.Entry<String, Owed> e : inFlight.entrySet()) {
+            pending.add(e.getValue().toLine(e.getKey(), false));
+        }
+        for (Map.Entry<String, Owed> e : owed.entrySet()) {
+            pending.add(e.getValue().toLine(e.getKey(), false));
+        }
+        return pending;
+    }
+    
+    /*
+     * Journal replay and snapshots. Both are idempotent: a credit already
+     * held is not added again, and paying out a lot not held changes nothing.
+     */
+    
+    synchronized void restoreCredit(String sellerAccount, int lotNumber, Money amount) {
+        Owed o = owed.get(sellerAccount);
+        if (o == null || !o.lotNumbers.contains(lotNumber)) {
+            add(sellerAccount, lotNumber, amount);
+        }
+    }
+    
+    synchronized void restorePayout(String sellerAccount, int lotNumber) {
+        Owed o = owed.get(sellerAccount);
+        if (o == null || !o.lotNumbers.contains(lotNumber)) {
+            return;
+        }
+        Owed rest = new Owed();
+        for (int i = 0; i < o.lotNumbers.size(); i++) {
+            if (o.lotNumbers.get(i) != lotNumber) {
+                rest.add(o.lotNumbers.get(i), o.lotAmounts.get(i));
+            }
+        }
+        if (rest.lotNumbers.isEmpty()) {
+            owed.remove(sellerAccount);
+        } else {
+            owed.put(sellerAccount, rest);
+        }
+    }
+    
+}
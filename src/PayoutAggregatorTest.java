@@ -0,0 +1,141 @@
+package auctionhouse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class PayoutAggregatorTest {
+
+    /*
+     * Counts single and batch transfers; transfers to bad accounts fail.
+     */
+    private static class CountingBankingService implements BankingService {
+        int transfers = 0;
+        int batches = 0;
+        final List<Transfer> batched = new ArrayList<Transfer>();
+        final Set<String> badAccounts = new HashSet<String>();
+
+        public synchronized Status transfer(
+                String senderAccount,
+                String senderAuthCode,
+                String receiverAccount,
+                Money amount) {
+            transfers++;
+            return Status.OK();
+        }
+
+        public synchronized List<Status> transferBatch(
+                String senderAccount,
+                String senderAuthCode,
+                List<Transfer> transfers) {
+            batches++;
+            List<Status> statuses = new ArrayList<Status>();
+            for (Transfer t : transfers) {
+                batched.add(t);
+                statuses.add(badAccounts.contains(t.receiverAccount)
+                        ? Status.error("Bad account") : Status.OK());
+            }
+            return statuses;
+        }
+    }
+
+    private CountingBankingService bank = new CountingBankingService();
+    private PayoutAggregator payouts = new PayoutAggregator();
+
+    private AuctionHouseImp houseWithLots(int lotsPerSeller) {
+        AuctionHouseImp house = new AuctionHouseImp(
+                new Parameters(10.0, 15.0, new Money("0.00"), "AH A/C", "AH-auth",
+                        new MockMessagingService(), bank));
+        house.setPayoutAggregator(payouts);
+        house.registerSeller("SellerX", "@SellerX", "SX A/C");
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth");
+        for (int lot = 1; lot <= 2 * lotsPerSeller; lot++) {
+            house.addLot(lot <= lotsPerSeller ? "SellerX" : "SellerY", lot, "Lot " + lot, new Money("1.00"));
+            house.noteInterest("BuyerA", lot);
+        }
+        return house;
+    }
+
+    private void sell(AuctionHouseImp house, int lot, Money bid) {
+        assertEquals(Status.Kind.OK, house.openAuction("Auctioneer", "@Auctioneer", lot).kind);
+        assertEquals(Status.Kind.OK, house.makeBid("BuyerA", lot, bid).kind);
+        assertEquals(Status.Kind.SALE, house.closeAuction("Auctioneer", lot).kind);
+    }
+
+    @Test
+    public void testOneTransferPerSeller() {
+        AuctionHouseImp house = houseWithLots(20);
+        for (int lot = 1; lot <= 40; lot++) {
+            sell(house, lot, Money.ofPence(1000 + lot));
+        }
+        // Only the buyers' legs have been paid so far.
+        assertEquals(40, bank.transfers);
+        assertEquals(0, bank.batches);
+        assertEquals(LotStatus.SOLD, house.getOnlineCatalogue().get(1).status);
+        assertEquals(2, payouts.getSellersOwed());
+
+        PayoutReport report = house.settlePayouts();
+        assertEquals(1, bank.batches);
+        assertEquals(2, bank.batched.size());
+        assertEquals(40, bank.transfers);
+        assertTrue(report.reconciles());
+        assertEquals(0, report.getFailedCount());
+        assertEquals(0, payouts.getSellersOwed());
+
+        // Each line pays exactly the net amounts of the seller's own sales.
+        for (PayoutReport.Line line : report.getLines()) {
+            assertEquals(20, line.getLotNumbers().length);
+            MoneyAccumulator expected = new MoneyAccumulator();
+            for (int lot : line.getLotNumbers()) {
+                Money bid = Money.ofPence(1000 + lot);
+                Money commission = bid.addPercent(15.0).subtract(bid);
+                expected.add(bid.subtract(commission));
+            }
+            assertEquals(expected.toMoney(), line.getAmount());
+        }
+
+        assertEquals(0, house.settlePayouts().getLines().size());
+        assertEquals(1, bank.batches);
+    }
+
+    @Test
+    public void testFailedPayoutIsRetriedInNextBatch() {
+        AuctionHouseImp house = houseWithLots(2);
+        bank.badAccounts.add("SX A/C");
+        sell(house, 1, new Money("10.00"));
+        sell(house, 3, new Money("20.00"));
+
+        PayoutReport first = house.settlePayouts();
+        assertEquals(1, first.getFailedCount());
+        assertEquals(new Money("17.00"), first.getPaidTotal());
+        assertEquals(new Money("8.50"), payouts.getOwed("SX A/C"));
+
+        sell(house, 2, new Money("10.00"));
+        bank.badAccounts.clear();
+        PayoutReport second = house.settlePayouts();
+        assertEquals(1, second.getLines().size());
+        PayoutReport.Line line = second.getLines().get(0);
+        assertEquals("SX A/C", line.getSellerAccount());
+        assertEquals(new Money("17.00"), line.getAmount());
+        assertEquals(2, line.getLotNumbers().length);
+        assertTrue(line.isPaid());
+        assertTrue(second.reconciles());
+        assertEquals(Money.ZERO, payouts.getOwed("SX A/C"));
+    }
+
+    @Test
+    public void testReportDetectsMismatch() {
+        PayoutReport.Line line = new PayoutReport.Line(
+                "S A/C", new Money("5.00"), new int[] { 1, 2 },
+                new Money[] { new Money("2.00"), new Money("2.50") }, true);
+        assertFalse(line.reconciles());
+    }
+}
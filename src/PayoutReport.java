@@ -0,0 +1,120 @@
+package auctionhouse;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of one batch of seller payouts from a {@link PayoutAggregator}.
+ * 
+ * Each line is one transfer to one seller and lists the lots it pays for,
+ * with the amount owed for each, so a batch can be reconciled against the
+ * individual sales.
+ */
+public class PayoutReport {
+    
+    /**
+     * One seller's payout in the batch.
+     */
+    public static class Line {
+        private final String sellerAccount;
+        private final Money amount;
+        private final int[] lotNumbers;
+        private final Money[] lotAmounts;
+        private final boolean paid;
+        
+        public Line(String sellerAccount, Money amount, int[] lotNumbers, Money[] lotAmounts, boolean paid) {
+            this.sellerAccount = sellerAccount;
+            this.amount = amount;
+            this.lotNumbers = lotNumbers;
+            this.lotAmounts = lotAmounts;
+            this.paid = paid;
+        }
+        
+        public String getSellerAccount() {
+            return sellerAccount;
+        }
+        
+        public Money getAmount() {
+            return amount;
+        }
+        
+        public int[] getLotNumbers() {
+            return lotNumbers.clone();
+        }
+        
+        public Money[] getLotAmounts() {
+            return lotAmounts.clone();
+        }
+        
+        /**
+         * Whether the transfer succeeded. An unpaid line's lots stay owed
+         * and are paid in a later batch.
+         */
+        public boolean isPaid() {
+            return paid;
+        }
+        
+        /**
+         * Checks that the payout equals the sum owed for its lots.
+         */
+        public boolean reconciles() {
+            MoneyAccumulator sum = new MoneyAccumulator();
+            for (Money m : lotAmounts) {
+                sum.add(m);
+            }
+            return sum.getPence() == amount.getPence();
+        }
+        
+        @Override
+        public String toString() {
+            return sellerAccount + " " + amount + " for " + lotNumbers.length + " lots"
+                    + (paid ? "" : " (failed)");
+        }
+    }
+    
+    private final List<Line> lines;
+    
+    public PayoutReport(List<Line> lines) {
+        this.lines = Collections.unmodifiableList(lines);
+    }
+    
+    public List<Line> getLines() {
+        return lines;
+    }
+    
+    /**
+     * Returns the total actually transferred to sellers.
+     */
+    public Money getPaidTotal() {
+        MoneyAccumulator total = new MoneyAccumulator();
+        for (Line line : lines) {
+            if (line.isPaid()) {
+                total.add(line.getAmount());
+            }
+        }
+        return total.toMoney();
+    }
+    
+    public int getFailedCount() {
+        int failed = 0;
+        for (Line line : lines) {
+            if (!line.isPaid()) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+    
+    /**
+     * Checks every line against its lots.
+     */
+    public boolean reconciles() {
+        for (Line line : lines) {
+            if (!line.reconciles()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+}
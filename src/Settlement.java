@@ -0,0 +1,142 @@
+package auctionhouse;
+
+/**
+ * Payment for one sold lot.
+ *
+ * The buyer pays the house the hammer price plus the buyer's premium, then
+ * the house pays the seller the hammer price less commission. Each leg is
+ * exactly one bank transfer, and the seller is only paid once the buyer's
+ * payment has gone through.
+ *
+ * A settlement remembers which legs have succeeded, so retrying a failed
+ * settlement repeats only the legs still outstanding and never pays twice.
+ * Each leg is checked, made and marked under the settlement's lock, so a
+ * retry racing another waits for its transfer rather than making it again.
+ */
+public class Settlement {
+
+    private final int lotNumber;
+    private final String auctioneerName;
+    private final Auction auction;
+    private final Bid winningBid;
+    private final Money buyerAmount;
+    private final Money sellerAmount;
+    private volatile boolean buyerPaid = false;
+    private volatile boolean sellerPaid = false;
+
+    /**
+     * @param  lotNumber       lot being paid for
+     * @param  auctioneerName  auctioneer who closed the auction
+     * @param  auction         the closed auction
+     * @param  winningBid      the bid that won the lot
+     * @param  buyerAmount     amount the buyer pays the house
+     * @param  sellerAmount    amount the house pays the seller
+     */
+    public Settlement(
+            int lotNumber,
+            String auctioneerName,
+            Auction auction,
+            Bid winningBid,
+            Money buyerAmount,
+            Money sellerAmount) {
+        this.lotNumber = lotNumber;
+        this.auctioneerName = auctioneerName;
+        this.auction = auction;
+        this.winningBid = winningBid;
+        this.buyerAmount = buyerAmount;
+        this.sellerAmount = sellerAmount;
+    }
+
+    /**
+     * Transfers the buyer's payment to the house, unless that has already
+     * been done.
+     *
+     * @return  <code>true</code> if the buyer has now paid
+     */
+    public synchronized boolean collectFromBuyer(BankingService bank, String houseAccount) {
+        if (!buyerPaid) {
+            Buyer buyer = winningBid.getBidder();
+            buyerPaid = bank.transfer(buyer.getBankAccount(), buyer.getBankAuthCode(), houseAccount, buyerAmount).kind
+                    != Status.Kind.ERROR;
+        }
+        return buyerPaid;
+    }
+
+    /**
+     * Transfers the seller's share from the house to the seller, unless
+     * that has already been done.
+     *
+     * @return  <code>true</code> if the seller has now been paid
+     */
+    public synchronized boolean paySeller(BankingService bank, String houseAccount, String houseAuthCode) {
+        if (!sellerPaid) {
+            String sellerAccount = auction.getLotSeller().getBankAccount();
+            sellerPaid = bank.transfer(houseAccount, houseAuthCode, sellerAccount, sellerAmount).kind
+                    != Status.Kind.ERROR;
+        }
+        return sellerPaid;
+    }
+
+    /**
+     * Credits the seller's share to an aggregator, to be paid in its next
+     * batch, unless that has already been done.
+     *
+     * @return  <code>true</code>
+     */
+    public synchronized boolean creditSeller(PayoutAggregator payouts) {
+        if (!sellerPaid) {
+            payouts.credit(auction.getLotSeller().getBankAccount(), lotNumber, sellerAmount);
+            sellerPaid = true;
+        }
+        return true;
+    }
+
+    /*
+     * Replay: a journalled credit shows both legs were done.
+     */
+    void restoreCredited() {
+        buyerPaid = true;
+        sellerPaid = true;
+    }
+
+    /*
+     * Snapshot loading.
+     */
+    void restorePaid(boolean buyerPaid, boolean sellerPaid) {
+        this.buyerPaid = buyerPaid;
+        this.sellerPaid = sellerPaid;
+    }
+
+    public boolean isBuyerPaid() {
+        return buyerPaid;
+    }
+
+    public boolean isSellerPaid() {
+        return sellerPaid;
+    }
+
+    public int getLotNumber() {
+        return lotNumber;
+    }
+
+    public String getAuctioneerName() {
+        return auctioneerName;
+    }
+
+    public Auction getAuction() {
+        return auction;
+    }
+
+    public Bid getWinningBid() {
+        return winningBid;
+    }
+
+    public Money getBuyerAmount() {
+        return buyerAmount;
+    }
+
+    public Money getSellerAmount() {
+        return sellerAmount;
+    }
+
+}
@@ -0,0 +1,380 @@
+package auctionhouse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Auction house that partitions lots across single-threaded shards.
+ *
+ * Lot number n belongs to shard <code>n mod shards</code>. Each shard is an
+ * event loop, one thread draining a queue of commands, that owns an
+ * {@link AuctionHouseImp} holding its lots, their auctions and reserves.
+ * Only the shard's thread changes that house, so its locks are never
+ * contended, and shards never wait for one another: work on lots in
+ * different shards runs fully in parallel.
+ *
+ * Buyers and sellers are replicated: a registration is checked against a
+ * shared name index and then applied by every shard, so every shard can
+ * check bidders and sellers locally. Auctioneers may run one auction at a
+ * time across all shards, so opening and closing also claim and release
+ * the auctioneer in a shared index.
+ *
+ * Every operation has an asynchronous form returning a
+ * <code>CompletableFuture&lt;Status&gt;</code>; the {@link AuctionHouse}
+ * methods wait for it, and so behave as {@link AuctionHouseImp} does.
+ * Asynchronous calls on different shards are not ordered with respect to
+ * each other, so a caller that needs, say, a close to release an
+ * auctioneer before the next open should wait for the close. Never wait
+ * for a future on a shard's own thread, e.g. in a messaging callback.
+ *
+ * The catalogue is read from the shards' snapshots in the calling thread,
+ * without going through the event loops.
+ */
+public class ShardedAuctionHouse implements AuctionHouse, AutoCloseable {
+
+    private static final Comparator<CatalogueEntry> BY_LOT_NUMBER =
+            Comparator.comparingInt((CatalogueEntry e) -> e.lotNumber);
+
+    private static final class Shard {
+        final AuctionHouseImp house;
+        final ExecutorService loop;
+
+        Shard(Parameters parameters, int index) {
+            house = new AuctionHouseImp(parameters);
+            loop = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "auctionhouse-shard-" + index);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private final Shard[] shards;
+    private final ConcurrentHashMap<String, Boolean> buyerNames = new ConcurrentHashMap<String, Boolean>();
+    private final ConcurrentHashMap<String, Boolean> sellerNames = new ConcurrentHashMap<String, Boolean>();
+    private final ConcurrentHashMap<String, Integer> auctioneerLots = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * @param  parameters  parameters every shard's house is built with
+     * @param  shardCount  number of shards, normally one per core
+     */
+    public ShardedAuctionHouse(Parameters parameters, int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(parameters, i);
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the index of the shard owning a lot.
+     */
+    public int shardOf(int lotNumber) {
+        return Math.floorMod(lotNumber, shards.length);
+    }
+
+    private Shard shardFor(int lotNumber) {
+        return shards[shardOf(lotNumber)];
+    }
+
+    /*
+     * Runs an operation on a shard's event loop.
+     */
+    private static <T> CompletableFuture<T> on(Shard shard, Function<AuctionHouseImp, T> operation) {
+        return CompletableFuture.supplyAsync(() -> operation.apply(shard.house), shard.loop);
+    }
+
+    /*
+     * Runs an operation on every shard, completing with the first error or
+     * else with OK.
+     */
+    private CompletableFuture<Status> onEveryShard(Function<AuctionHouseImp, Status> operation) {
+        final List<CompletableFuture<Status>> results = new ArrayList<CompletableFuture<Status>>(shards.length);
+        for (Shard shard : shards) {
+            results.add(on(shard, operation));
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            for (CompletableFuture<Status> result : results) {
+                Status status = result.join();
+                if (status.kind == Status.Kind.ERROR) {
+                    return status;
+                }
+            }
+            return Status.OK();
+        });
+    }
+
+    /*
+     * Asynchronous operations
+     */
+
+    public CompletableFuture<Status> registerBuyerAsync(
+            final String name,
+            final String address,
+            final String bankAccount,
+            final String bankAuthCode) {
+        if (buyerNames.putIfAbsent(name, Boolean.TRUE) != null) {
+            return CompletableFuture.completedFuture(Status.error(Status.ErrorCode.BUYER_ALREADY_REGISTERED));
+        }
+        return onEveryShard(house -> house.registerBuyer(name, address, bankAccount, bankAuthCode));
+    }
+
+    public CompletableFuture<Status> registerSellerAsync(
+            final String name,
+            final String address,
+            final String bankAccount) {
+        if (sellerNames.putIfAbsent(name, Boolean.TRUE) != null) {
+            return CompletableFuture.completedFuture(Status.error(Status.ErrorCode.SELLER_ALREADY_REGISTERED));
+        }
+        return onEveryShard(house -> house.registerSeller(name, address, bankAccount));
+    }
+
+    public CompletableFuture<Status> addLotAsync(
+            final String sellerName,
+            final int number,
+            final String description,
+            final Money reservePrice) {
+        return on(shardFor(number), house -> house.addLot(sellerName, number, description, reservePrice));
+    }
+
+    public CompletableFuture<Status> noteInterestAsync(
+            final String buyerName,
+            final int lotNumber) {
+        return on(shardFor(lotNumber), house -> house.noteInterest(buyerName, lotNumber));
+    }
+
+    /**
+     * Opens an auction. The auctioneer is claimed across all shards once
+     * the lot is known to exist, and released again if the lot cannot be
+     * opened, so errors come in the same order as from AuctionHouseImp.
+     */
+    public CompletableFuture<Status> openAuctionAsync(
+            final String auctioneerName,
+            final String auctioneerAddress,
+            final int lotNumber) {
+        return on(shardFor(lotNumber), house -> {
+            if (!house.hasLot(lotNumber)) {
+                return house.openAuction(auctioneerName, auctioneerAddress, lotNumber);
+            }
+            if (auctioneerLots.putIfAbsent(auctioneerName, lotNumber) != null) {
+                return Status.error(Status.ErrorCode.AUCTIONEER_BUSY);
+            }
+            Status status = house.openAuction(auctioneerName, auctioneerAddress, lotNumber);
+            if (status.kind != Status.Kind.OK) {
+                auctioneerLots.remove(auctioneerName, lotNumber);
+            }
+            return status;
+        });
+    }
+
+    public CompletableFuture<Status> makeBidAsync(
+            final String buyerName,
+            final int lotNumber,
+            final Money bid) {
+        return on(shardFor(lotNumber), house -> house.makeBid(buyerName, lotNumber, bid));
+    }
+
+    public CompletableFuture<Status> closeAuctionAsync(
+            final String auctioneerName,
+            final int lotNumber) {
+        return on(shardFor(lotNumber), house -> {
+            Status status = house.closeAuction(auctioneerName, lotNumber);
+            if (status.kind != Status.Kind.ERROR) {
+                auctioneerLots.remove(auctioneerName, lotNumber);
+            }
+            return status;
+        });
+    }
+
+    /**
+     * Runs one command asynchronously.
+     */
+    public CompletableFuture<Status> execute(Command c) {
+        switch (c.getKind()) {
+        case REGISTER_BUYER:
+            return registerBuyerAsync(c.getName(), c.getAddress(), c.getBankAccount(), c.getBankAuthCode());
+        case REGISTER_SELLER:
+            return registerSellerAsync(c.getName(), c.getAddress(), c.getBankAccount());
+        case ADD_LOT:
+            return addLotAsync(c.getName(), c.getLotNumber(), c.getDescription(), c.getAmount());
+        case NOTE_INTEREST:
+            return noteInterestAsync(c.getName(), c.getLotNumber());
+        case OPEN_AUCTION:
+            return openAuctionAsync(c.getName(), c.getAddress(), c.getLotNumber());
+        case MAKE_BID:
+            return makeBidAsync(c.getName(), c.getLotNumber(), c.getAmount());
+        case CLOSE_AUCTION:
+            return closeAuctionAsync(c.getName(), c.getLotNumber());
+        default:
+            throw new IllegalStateException("Unknown command " + c.getKind());
+        }
+    }
+
+    /*
+     * Whether a command only touches the shard owning its lot.
+     */
+    private static boolean isShardLocal(Command c) {
+        Command.Kind kind = c.getKind();
+        return kind == Command.Kind.ADD_LOT || kind == Command.Kind.NOTE_INTEREST || kind == Command.Kind.MAKE_BID;
+    }
+
+    /**
+     * Runs a batch of commands with the same outcome as running them in
+     * order. Consecutive commands for one shard go to it as one batch, to
+     * be run by {@link AuctionHouseImp#submit}. Opens and closes depend on
+     * auctioneers across shards, so each is waited for before anything
+     * after it is queued.
+     */
+    @Override
+    public List<Status> submit(List<Command> commands) {
+        List<CompletableFuture<List<Status>>> parts = new ArrayList<CompletableFuture<List<Status>>>();
+        int i = 0;
+        while (i < commands.size()) {
+            Command c = commands.get(i);
+            if (isShardLocal(c)) {
+                Shard shard = shardFor(c.getLotNumber());
+                int end = i + 1;
+                while (end < commands.size() && isShardLocal(commands.get(end))
+                        && shardFor(commands.get(end).getLotNumber()) == shard) {
+                    end++;
+                }
+                final List<Command> run = new ArrayList<Command>(commands.subList(i, end));
+                parts.add(on(shard, house -> house.submit(run)));
+                i = end;
+            } else {
+                CompletableFuture<List<Status>> part = execute(c).thenApply(Collections::singletonList);
+                if (c.getKind() == Command.Kind.OPEN_AUCTION || c.getKind() == Command.Kind.CLOSE_AUCTION) {
+                    part.join();
+                }
+                parts.add(part);
+                i++;
+            }
+        }
+        List<Status> statuses = new ArrayList<Status>(commands.size());
+        for (CompletableFuture<List<Status>> part : parts) {
+            statuses.addAll(part.join());
+        }
+        return statuses;
+    }
+
+    /*
+     * AuctionHouse, waiting for each operation
+     */
+
+    public Status registerBuyer(String name, String address, String bankAccount, String bankAuthCode) {
+        return registerBuyerAsync(name, address, bankAccount, bankAuthCode).join();
+    }
+
+    public Status registerSeller(String name, String address, String bankAccount) {
+        return registerSellerAsync(name, address, bankAccount).join();
+    }
+
+    public Status addLot(String sellerName, int number, String description, Money reservePrice) {
+        return addLotAsync(sellerName, number, description, reservePrice).join();
+    }
+
+    public Status noteInterest(String buyerName, int lotNumber) {
+        return noteInterestAsync(buyerName, lotNumber).join();
+    }
+
+    public Status openAuction(String auctioneerName, String auctioneerAddress, int lotNumber) {
+        return openAuctionAsync(auctioneerName, auctioneerAddress, lotNumber).join();
+    }
+
+    public Status makeBid(String buyerName, int lotNumber, Money bid) {
+        return makeBidAsync(buyerName, lotNumber, bid).join();
+    }
+
+    public Status closeAuction(String auctioneerName, int lotNumber) {
+        return closeAuctionAsync(auctioneerName, lotNumber).join();
+    }
+
+    /*
+     * Catalogue, merged from the shards
+     */
+
+    private static List<CatalogueEntry> merge(List<CatalogueEntry> entries, int limit) {
+        entries.sort(BY_LOT_NUMBER);
+        if (entries.size() > limit) {
+            entries = new ArrayList<CatalogueEntry>(entries.subList(0, limit));
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    public List<CatalogueEntry> viewCatalogue() {
+        List<CatalogueEntry> entries = new ArrayList<CatalogueEntry>();
+        for (Shard shard : shards) {
+            entries.addAll(shard.house.getCatalogueSnapshot().getEntries());
+        }
+        return merge(entries, Integer.MAX_VALUE);
+    }
+
+    public List<CatalogueEntry> viewCatalogue(int fromLot, int limit) {
+        List<CatalogueEntry> entries = new ArrayList<CatalogueEntry>();
+        for (Shard shard : shards) {
+            entries.addAll(shard.house.viewCatalogue(fromLot, limit));
+        }
+        return merge(entries, limit);
+    }
+
+    public List<CatalogueEntry> viewCatalogueRange(int lo, int hi) {
+        List<CatalogueEntry> entries = new ArrayList<CatalogueEntry>();
+        for (Shard shard : shards) {
+            entries.addAll(shard.house.viewCatalogueRange(lo, hi));
+        }
+        return merge(entries, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The catalogue version is the sum of the shards' versions, which only
+     * grows. A caller already at the current version gets no changes; any
+     * other gets the full catalogue, as changes cannot be merged across
+     * shards by version.
+     */
+    public CatalogueChanges viewCatalogueSince(long version) {
+        long current = 0;
+        List<CatalogueEntry> entries = new ArrayList<CatalogueEntry>();
+        for (Shard shard : shards) {
+            CatalogueSnapshot snapshot = shard.house.getCatalogueSnapshot();
+            current += snapshot.getVersion();
+            entries.addAll(snapshot.getEntries());
+        }
+        if (current == version) {
+            return new CatalogueChanges(current, false, Collections.<CatalogueEntry>emptyList());
+        }
+        return new CatalogueChanges(current, true, merge(entries, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Stops the shards once they have run everything already queued. If the
+     * calling thread is interrupted, close stops waiting for them and
+     * returns with the thread's interrupt status set.
+     */
+    public void close() {
+        for (Shard shard : shards) {
+            shard.loop.shutdown();
+        }
+        try {
+            for (Shard shard : shards) {
+                shard.loop.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
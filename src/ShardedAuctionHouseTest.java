@@ -0,0 +1,180 @@
+package auctionhouse;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+public class ShardedAuctionHouseTest {
+
+    /*
+     * Records every notification; shards notify from their own threads.
+     */
+    private static class RecordingService implements MessagingService {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        public void auctionOpened(String address, int lotNumber) { events.add(address + " opened " + lotNumber); }
+        public void bidAccepted(String address, int lotNumber, Money amount) {
+            events.add(address + " bid " + lotNumber + " " + amount);
+        }
+        public void lotSold(String address, int lotNumber) { events.add(address + " sold " + lotNumber); }
+        public void lotUnsold(String address, int lotNumber) { events.add(address + " unsold " + lotNumber); }
+
+        List<String> sorted() {
+            List<String> copy = new ArrayList<String>(events);
+            Collections.sort(copy);
+            return copy;
+        }
+    }
+
+    private static Parameters parameters(MessagingService messaging) {
+        return new Parameters(10.0, 15.0, new Money("1.00"), "AH A/C", "AH-auth",
+                messaging, new MockBankingService());
+    }
+
+    /*
+     * Lots 1 to 8 across every shard, with auctioneers moving between
+     * lots on different shards, and some commands that fail.
+     */
+    private static List<Command> sale() {
+        List<Command> commands = new ArrayList<Command>();
+        commands.add(Command.registerSeller("SellerY", "@SellerY", "SY A/C"));
+        commands.add(Command.registerSeller("SellerY", "@SellerY", "SY A/C"));
+        commands.add(Command.registerBuyer("BuyerA", "@BuyerA", "BA A/C", "BA-auth"));
+        commands.add(Command.registerBuyer("BuyerB", "@BuyerB", "BB A/C", "BB-auth"));
+        commands.add(Command.registerBuyer("BuyerB", "@BuyerB", "BB A/C", "BB-auth"));
+        commands.add(Command.addLot("SellerZ", 9, "No such seller", new Money("10.00")));
+        for (int lot = 1; lot <= 8; lot++) {
+            commands.add(Command.addLot("SellerY", lot, "Lot " + lot, new Money("50.00")));
+            commands.add(Command.noteInterest("BuyerA", lot));
+            if (lot % 2 == 0) {
+                commands.add(Command.noteInterest("BuyerB", lot));
+            }
+        }
+        commands.add(Command.noteInterest("BuyerC", 1));
+        commands.add(Command.openAuction("Auctioneer1", "@Auctioneer1", 1));
+        commands.add(Command.openAuction("Auctioneer1", "@Auctioneer1", 2));
+        commands.add(Command.openAuction("Auctioneer1", "@Auctioneer1", 99));
+        commands.add(Command.openAuction("Auctioneer2", "@Auctioneer2", 1));
+        commands.add(Command.openAuction("Auctioneer2", "@Auctioneer2", 2));
+        commands.add(Command.makeBid("BuyerA", 1, new Money("60.00")));
+        commands.add(Command.makeBid("BuyerA", 2, new Money("40.00")));
+        commands.add(Command.makeBid("BuyerB", 2, new Money("40.50")));
+        commands.add(Command.makeBid("BuyerB", 1, new Money("70.00")));
+        commands.add(Command.makeBid("BuyerA", 3, new Money("70.00")));
+        commands.add(Command.closeAuction("Auctioneer2", 1));
+        commands.add(Command.closeAuction("Auctioneer1", 1));
+        commands.add(Command.closeAuction("Auctioneer2", 2));
+        commands.add(Command.openAuction("Auctioneer1", "@Auctioneer1", 2));
+        commands.add(Command.openAuction("Auctioneer2", "@Auctioneer2", 3));
+        commands.add(Command.makeBid("BuyerB", 2, new Money("55.00")));
+        commands.add(Command.makeBid("BuyerA", 3, new Money("80.00")));
+        commands.add(Command.closeAuction("Auctioneer1", 2));
+        commands.add(Command.closeAuction("Auctioneer2", 3));
+        commands.add(Command.noteInterest("BuyerB", 3));
+        return commands;
+    }
+
+    private static List<String> describe(List<Status> statuses) {
+        List<String> described = new ArrayList<String>();
+        for (Status s : statuses) {
+            described.add(s.kind + " " + s.message);
+        }
+        return described;
+    }
+
+    private static void assertSameAsImp(boolean batched) throws Exception {
+        RecordingService expectedMessages = new RecordingService();
+        RecordingService actualMessages = new RecordingService();
+        AuctionHouseImp imp = new AuctionHouseImp(parameters(expectedMessages));
+        ShardedAuctionHouse sharded = new ShardedAuctionHouse(parameters(actualMessages), 4);
+
+        List<Status> expected = new ArrayList<Status>();
+        for (Command c : sale()) {
+            expected.add(c.applyTo(imp));
+        }
+        List<Status> actual;
+        if (batched) {
+            actual = sharded.submit(sale());
+        } else {
+            actual = new ArrayList<Status>();
+            for (Command c : sale()) {
+                actual.add(c.applyTo(sharded));
+            }
+        }
+        sharded.close();
+
+        assertEquals(describe(expected), describe(actual));
+        assertEquals(imp.viewCatalogue(), sharded.viewCatalogue());
+        assertEquals(imp.viewCatalogue(3, 4), sharded.viewCatalogue(3, 4));
+        assertEquals(imp.viewCatalogueRange(2, 6), sharded.viewCatalogueRange(2, 6));
+        assertEquals(expectedMessages.sorted(), actualMessages.sorted());
+    }
+
+    @Test
+    public void testMatchesAuctionHouseImpAcrossShards() throws Exception {
+        assertSameAsImp(false);
+    }
+
+    @Test
+    public void testBatchMatchesAuctionHouseImpAcrossShards() throws Exception {
+        assertSameAsImp(true);
+    }
+
+    @Test
+    public void testAuctioneerRunsOneAuctionAcrossShards() throws Exception {
+        ShardedAuctionHouse house = new ShardedAuctionHouse(parameters(new RecordingService()), 2);
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.addLot("SellerY", 1, "Bicycle", new Money("80.00"));
+        house.addLot("SellerY", 2, "Tricycle", new Money("80.00"));
+        assertEquals(0, house.shardOf(2));
+        assertEquals(1, house.shardOf(1));
+
+        assertEquals(Status.Kind.OK, house.openAuction("Auctioneer1", "@Auctioneer1", 1).kind);
+        assertEquals(Status.Kind.ERROR, house.openAuction("Auctioneer1", "@Auctioneer1", 2).kind);
+        assertEquals(Status.Kind.NO_SALE, house.closeAuction("Auctioneer1", 1).kind);
+        assertEquals(Status.Kind.OK, house.openAuction("Auctioneer1", "@Auctioneer1", 2).kind);
+        house.close();
+    }
+
+    @Test
+    public void testManyLotsInParallel() throws Exception {
+        final int lots = 64;
+        final int bids = 200;
+        ShardedAuctionHouse house = new ShardedAuctionHouse(parameters(new RecordingService()), 4);
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        for (int b = 0; b < 4; b++) {
+            house.registerBuyer("Buyer" + b, "@Buyer" + b, "B" + b + " A/C", "B" + b + "-auth");
+        }
+        for (int lot = 1; lot <= lots; lot++) {
+            house.addLot("SellerY", lot, "Lot " + lot, new Money("50.00"));
+            for (int b = 0; b < 4; b++) {
+                house.noteInterest("Buyer" + b, lot);
+            }
+            house.openAuction("Auctioneer" + lot, "@Auctioneer" + lot, lot);
+        }
+
+        // Rising bids on every lot, interleaved, without waiting.
+        List<CompletableFuture<Status>> results = new ArrayList<CompletableFuture<Status>>();
+        for (int i = 0; i < bids; i++) {
+            for (int lot = 1; lot <= lots; lot++) {
+                results.add(house.makeBidAsync("Buyer" + (i % 4), lot, Money.ofPence(5000 + 200 * i)));
+            }
+        }
+        for (CompletableFuture<Status> result : results) {
+            assertEquals(Status.Kind.OK, result.join().kind);
+        }
+        for (int lot = 1; lot <= lots; lot++) {
+            assertEquals(Status.Kind.SALE, house.closeAuction("Auctioneer" + lot, lot).kind);
+        }
+        for (CatalogueEntry entry : house.viewCatalogue()) {
+            assertEquals(LotStatus.SOLD, entry.status);
+        }
+        assertEquals(lots, house.viewCatalogue().size());
+        house.close();
+    }
+}
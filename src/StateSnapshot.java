@@ -0,0 +1,488 @@
+package auctionhouse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * Point-in-time binary snapshots of an {@link AuctionHouseImp}, for fast
+ * restart.
+ *
+ * A snapshot is fuzzy: it records the journal position first and then
+ * captures the house one lot at a time, each under that lot's own lock, so
+ * traffic never pauses. Changes made while the snapshot is taken may or may
+ * not be in it, but they are all in the journal after the recorded position,
+ * and replaying a journal record the snapshot already reflects changes
+ * nothing. Lots are captured before buyers and sellers, so everyone a
+ * captured lot refers to is in the snapshot too.
+ *
+ * The file is a header, the sellers, the buyers in id order, the seller
+ * credits not yet paid out, and the lots in chunks, each seller, buyer and
+ * lot in {@link BinaryCodec} form. A lot sold but not yet paid for carries
+ * its settlement. The header gives each section's size and CRC32. Loading
+ * maps each lot chunk into memory separately and decodes the chunks in
+ * parallel.
+ */
+public class StateSnapshot {
+
+    private static Logger logger = Logger.getLogger("auctionhouse");
+
+    private static final int MAGIC = 0x41485353; // "AHSS"
+    /*
+     * 2: the oldest format still read.
+     * 3: adds the seller credits and each unpaid lot's settlement.
+     */
+    private static final int VERSION = 3;
+    private static final int LOTS_PER_CHUNK = 4096;
+    private static final int KEEP_SNAPSHOTS = 2;
+
+    /*
+     * Growable heap buffer for encoding one section.
+     */
+    private static final class Output {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+        Output ensure(int more) {
+            if (buffer.remaining() < more) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + more));
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+            return this;
+        }
+
+        void putInt(int value) {
+            ensure(4).buffer.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensure(8).buffer.putLong(value);
+        }
+
+        void putString(String value) {
+            BinaryCodec.putString(ensure(BinaryCodec.maxLength(value)).buffer, value);
+        }
+
+        ByteBuffer finish() {
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    private static int crcOf(ByteBuffer b) {
+        CRC32 crc = new CRC32();
+        crc.update(b.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /*
+     * Writing
+     */
+
+    /**
+     * Writes a snapshot of the house to a file, replacing it atomically.
+     *
+     * @return  the journal position the snapshot was taken at; replay the
+     *          journal from there after loading it
+     */
+    public static long write(AuctionHouseImp house, Path file) throws IOException {
+        CommandJournal journal = house.getJournal();
+        long position = journal == null ? 0 : journal.getWritePosition();
+
+        Lot[] lots = house.getLots();
+        int chunkCount = (lots.length + LOTS_PER_CHUNK - 1) / LOTS_PER_CHUNK;
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount];
+        int[] chunkLots = new int[chunkCount];
+        for (int c = 0; c < chunkCount; c++) {
+            Output out = new Output();
+            int from = c * LOTS_PER_CHUNK;
+            int to = Math.min(from + LOTS_PER_CHUNK, lots.length);
+            for (int i = from; i < to; i++) {
+                synchronized (house.lockForLot(lots[i].getId())) {
+                    writeLot(out, lots[i], house.getPendingSettlement(lots[i].getId()));
+                }
+            }
+            chunks[c] = out.finish();
+            chunkLots[c] = to - from;
+        }
+
+        Output buyers = new Output();
+        Buyer[] byId = house.getBuyers();
+        buyers.putInt(byId.length);
+        for (Buyer b : byId) {
+            BinaryCodec.putBuyer(buyers.ensure(BinaryCodec.maxLength(b)).buffer, b);
+        }
+        Output sellers = new Output();
+        List<Seller> sellerList = new ArrayList<Seller>(house.getSellers());
+        sellers.putInt(sellerList.size());
+        for (Seller s : sellerList) {
+            BinaryCodec.putSeller(sellers.ensure(BinaryCodec.maxLength(s)).buffer, s);
+        }
+        Output credits = new Output();
+        PayoutAggregator payouts = house.getPayoutAggregator();
+        writeCredits(credits, payouts == null
+                ? Collections.<PayoutReport.Line>emptyList() : payouts.getPending());
+        ByteBuffer sellerBytes = sellers.finish();
+        ByteBuffer buyerBytes = buyers.finish();
+        ByteBuffer creditBytes = credits.finish();
+
+        ByteBuffer header = ByteBuffer.allocate(44 + 12 * chunkCount);
+        header.putInt(MAGIC).putInt(VERSION).putLong(position);
+        header.putInt(sellerBytes.remaining()).putInt(crcOf(sellerBytes));
+        header.putInt(buyerBytes.remaining()).putInt(crcOf(buyerBytes));
+        header.putInt(creditBytes.remaining()).putInt(crcOf(creditBytes));
+        header.putInt(chunkCount);
+        for (int c = 0; c < chunkCount; c++) {
+            header.putInt(chunkLots[c]).putInt(chunks[c].remaining()).putInt(crcOf(chunks[c]));
+        }
+        header.flip();
+
+        ByteBuffer[] sections = new ByteBuffer[4 + chunkCount];
+        sections[0] = header;
+        sections[1] = sellerBytes;
+        sections[2] = buyerBytes;
+        sections[3] = creditBytes;
+        System.arraycopy(chunks, 0, sections, 4, chunkCount);
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (ByteBuffer section : sections) {
+                while (section.hasRemaining()) {
+                    ch.write(section);
+                }
+            }
+            ch.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return position;
+    }
+
+    /*
+     * One entry per lot credited.
+     */
+    private static void writeCredits(Output out, List<PayoutReport.Line> pending) {
+        int count = 0;
+        for (PayoutReport.Line line : pending) {
+            count += line.getLotNumbers().length;
+        }
+        out.putInt(count);
+        for (PayoutReport.Line line : pending) {
+            int[] lotNumbers = line.getLotNumbers();
+            Money[] amounts = line.getLotAmounts();
+            for (int i = 0; i < lotNumbers.length; i++) {
+                out.putString(line.getSellerAccount());
+                out.putInt(lotNumbers[i]);
+                out.putLong(amounts[i].getPence());
+            }
+        }
+    }
+
+    /*
+     * The caller holds the lot's lock.
+     */
+    private static void writeLot(Output out, Lot lot, Settlement settlement) {
+        CatalogueEntry entry = lot.getCatalogueEntry();
+        BinaryCodec.putCatalogueEntry(out.ensure(BinaryCodec.maxLength(entry)).buffer, entry);
+        out.putString(lot.getSellerName());
+        out.putLong(lot.getReservePrice().getPence());
+        out.putInt(lot.getAuctionsOpened());
+        IntList interested = lot.getInterestedBuyerIds();
+        out.putInt(interested.size());
+        for (int i = 0; i < interested.size(); i++) {
+            out.putInt(interested.get(i));
+        }
+
+        Auction auction = lot.getAuction();
+        out.ensure(1).buffer.put((byte) (auction == null ? 0 : 1));
+        if (auction != null) {
+            writeAuction(out, lot.getId(), auction);
+        }
+
+        out.ensure(1).buffer.put((byte) (settlement == null ? 0 : 1));
+        if (settlement != null) {
+            writeAuction(out, lot.getId(), settlement.getAuction());
+            out.putLong(settlement.getBuyerAmount().getPence());
+            out.putLong(settlement.getSellerAmount().getPence());
+            out.ensure(1).buffer.put((byte) ((settlement.isBuyerPaid() ? 1 : 0) | (settlement.isSellerPaid() ? 2 : 0)));
+        }
+    }
+
+    private static void writeAuction(Output out, int lotNumber, Auction auction) {
+        String name = auction.getAuctioneerName();
+        String address = auction.getAuctioneerAddress();
+        BinaryCodec.putOpenEvent(out.ensure(BinaryCodec.maxOpenEventLength(name, address)).buffer,
+                lotNumber, auction.getRound(), name, address);
+        out.putInt(auction.getBuyersInterestedInLot().size());
+        for (Buyer b : auction.getBuyersInterestedInLot()) {
+            out.putInt(b.getId());
+        }
+        Bid leading = auction.getLeadingBid();
+        out.putLong(leading.getSequence());
+        out.putInt(leading.hasBidder() ? leading.getBidder().getId() : -1);
+        out.putLong(leading.getAmount().getPence());
+    }
+
+    /**
+     * Writes a snapshot into a directory, named by its journal position,
+     * and deletes all but the newest few there.
+     *
+     * @return  the new snapshot file
+     */
+    public static Path writeToDirectory(AuctionHouseImp house, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path temp = directory.resolve("current.snapshot");
+        long position = write(house, temp);
+        Path file = directory.resolve(String.format("%020d.snapshot", position));
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        List<Path> all = snapshotFiles(directory);
+        for (int i = 0; i < all.size() - KEEP_SNAPSHOTS; i++) {
+            Files.deleteIfExists(all.get(i));
+        }
+        return file;
+    }
+
+    /**
+     * Writes a snapshot into a directory periodically, in the background.
+     */
+    public static ScheduledFuture<?> schedule(
+            ScheduledExecutorService executor,
+            final AuctionHouseImp house,
+            final Path directory,
+            long period,
+            TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                Path file = writeToDirectory(house, directory);
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("Wrote snapshot " + file);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (logger.isLoggable(Level.WARNING)) {
+                    logger.log(Level.WARNING, "Writing a snapshot failed", e);
+                }
+            }
+        }, period, period, unit);
+    }
+
+    private static List<Path> snapshotFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "0*.snapshot")) {
+            for (Path p : stream) {
+                files.add(p);
+            }
+        }
+        // Names are zero-padded positions, so name order is age order.
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Returns the newest snapshot in a directory, or <code>null</code> if
+     * there is none.
+     */
+    public static Path latest(Path directory) throws IOException {
+        List<Path> files = snapshotFiles(directory);
+        return files.isEmpty() ? null : files.get(files.size() - 1);
+    }
+
+    /*
+     * Loading
+     */
+
+    /**
+     * Loads a snapshot into a new, empty house with no journal set. A house
+     * whose snapshot holds seller credits must have its payout aggregator
+     * set first.
+     *
+     * @return  the journal position to replay the journal from
+     */
+    public static long load(Path file, final AuctionHouseImp house) throws IOException {
+        try (final FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer tag = ByteBuffer.allocate(8);
+            readFully(ch, tag, 0);
+            final int version = tag.getInt(4);
+            if (tag.getInt(0) != MAGIC || version < 2 || version > VERSION) {
+                throw new IOException(file + " is not a version 2 to " + VERSION + " snapshot");
+            }
+            int fixedLength = version >= 3 ? 44 : 36;
+            ByteBuffer fixed = ByteBuffer.allocate(fixedLength);
+            readFully(ch, fixed, 0);
+            fixed.position(8);
+            long position = fixed.getLong();
+            int sellersLength = fixed.getInt();
+            int sellersCrc = fixed.getInt();
+            int buyersLength = fixed.getInt();
+            int buyersCrc = fixed.getInt();
+            int creditsLength = version >= 3 ? fixed.getInt() : 0;
+            int creditsCrc = version >= 3 ? fixed.getInt() : 0;
+            final int chunkCount = fixed.getInt();
+
+            ByteBuffer table = ByteBuffer.allocate(12 * chunkCount);
+            readFully(ch, table, fixedLength);
+            final int[] chunkLots = new int[chunkCount];
+            final int[] chunkLengths = new int[chunkCount];
+            final int[] chunkCrcs = new int[chunkCount];
+            final long[] chunkOffsets = new long[chunkCount];
+            long offset = fixedLength + 12L * chunkCount;
+
+            ByteBuffer sellers = ch.map(FileChannel.MapMode.READ_ONLY, offset, sellersLength);
+            checkCrc(sellers, sellersCrc, "sellers");
+            offset += sellersLength;
+            ByteBuffer buyers = ch.map(FileChannel.MapMode.READ_ONLY, offset, buyersLength);
+            checkCrc(buyers, buyersCrc, "buyers");
+            offset += buyersLength;
+            ByteBuffer credits = null;
+            if (version >= 3) {
+                credits = ch.map(FileChannel.MapMode.READ_ONLY, offset, creditsLength);
+                checkCrc(credits, creditsCrc, "credits");
+                offset += creditsLength;
+            }
+            for (int c = 0; c < chunkCount; c++) {
+                chunkLots[c] = table.getInt();
+                chunkLengths[c] = table.getInt();
+                chunkCrcs[c] = table.getInt();
+                chunkOffsets[c] = offset;
+                offset += chunkLengths[c];
+            }
+
+            for (int n = sellers.getInt(); n > 0; n--) {
+                Seller s = BinaryCodec.readSeller(sellers);
+                house.registerSeller(s.getName(), s.getAddress(), s.getBankAccount());
+            }
+            // Registered in id order, so every buyer gets its old id back.
+            for (int n = buyers.getInt(); n > 0; n--) {
+                Buyer b = BinaryCodec.readBuyer(buyers);
+                house.registerBuyer(b.getName(), b.getAddress(), b.getBankAccount(), b.getBankAuthCode());
+            }
+            if (credits != null) {
+                readCredits(credits, house);
+            }
+
+            Lot[][] decoded = IntStream.range(0, chunkCount).parallel().mapToObj(c -> {
+                try {
+                    MappedByteBuffer chunk = ch.map(FileChannel.MapMode.READ_ONLY, chunkOffsets[c], chunkLengths[c]);
+                    checkCrc(chunk, chunkCrcs[c], "lot chunk " + c);
+                    BinaryCodec.OpenEventView open = new BinaryCodec.OpenEventView();
+                    Lot[] lots = new Lot[chunkLots[c]];
+                    for (int i = 0; i < lots.length; i++) {
+                        lots[i] = readLot(chunk, open, house, version);
+                    }
+                    return lots;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toArray(Lot[][]::new);
+
+            for (Lot[] lots : decoded) {
+                for (Lot lot : lots) {
+                    house.restoreLot(lot);
+                }
+            }
+            return position;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer b, long position) throws IOException {
+        while (b.hasRemaining()) {
+            if (ch.read(b, position + b.position()) < 0) {
+                throw new IOException("Snapshot is truncated");
+            }
+        }
+        b.flip();
+    }
+
+    private static void checkCrc(ByteBuffer b, int expected, String section) throws IOException {
+        if (crcOf(b) != expected) {
+            throw new IOException("Snapshot " + section + " failed its checksum");
+        }
+    }
+
+    private static void readCredits(ByteBuffer b, AuctionHouseImp house) {
+        int count = b.getInt();
+        if (count == 0) {
+            return;
+        }
+        PayoutAggregator payouts = house.requirePayoutAggregator();
+        for (int n = count; n > 0; n--) {
+            String account = BinaryCodec.getString(b);
+            int lotNumber = b.getInt();
+            payouts.restoreCredit(account, lotNumber, Money.ofPence(b.getLong()));
+        }
+    }
+
+    private static Lot readLot(ByteBuffer b, BinaryCodec.OpenEventView open, AuctionHouseImp house, int version) {
+        CatalogueEntry entry = BinaryCodec.readCatalogueEntry(b);
+        int id = entry.lotNumber;
+        Seller seller = house.getSeller(BinaryCodec.getString(b));
+        Money reserve = Money.ofPence(b.getLong());
+        Lot lot = new Lot(seller, id, reserve, entry.description);
+        lot.setLotStatus(entry.status);
+        lot.setAuctionsOpened(b.getInt());
+        for (int n = b.getInt(); n > 0; n--) {
+            lot.getInterestedBuyerIds().add(b.getInt());
+        }
+
+        if (b.get() != 0) {
+            lot.setAuction(readAuction(b, open, house, id, seller));
+        }
+
+        if (version >= 3 && b.get() != 0) {
+            Auction auction = readAuction(b, open, house, id, seller);
+            Bid winningBid = auction.close();
+            Money buyerAmount = Money.ofPence(b.getLong());
+            Money sellerAmount = Money.ofPence(b.getLong());
+            byte paid = b.get();
+            Settlement settlement = new Settlement(
+                    id, auction.getAuctioneerName(), auction, winningBid, buyerAmount, sellerAmount);
+            settlement.restorePaid((paid & 1) != 0, (paid & 2) != 0);
+            house.restorePendingSettlement(settlement);
+        }
+        return lot;
+    }
+
+    private static Auction readAuction(
+            ByteBuffer b, BinaryCodec.OpenEventView open, AuctionHouseImp house, int id, Seller seller) {
+        open.wrap(b, b.position());
+        b.position(b.position() + open.getLength());
+        Auction auction = new Auction(open.getAuctioneerName(), open.getAuctioneerAddress(), id);
+        auction.setRound(open.getRound());
+        for (int n = b.getInt(); n > 0; n--) {
+            auction.getBuyersInterestedInLot().add(house.getBuyer(b.getInt()));
+        }
+        auction.setLotSeller(seller);
+        auction.resolveRecipients();
+        long sequence = b.getLong();
+        int bidderId = b.getInt();
+        Money amount = Money.ofPence(b.getLong());
+        if (bidderId >= 0) {
+            auction.restoreBid(house.getBuyer(bidderId), amount, sequence);
+        }
+        return auction;
+    }
+
+}
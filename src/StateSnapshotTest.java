@@ -0,0 +1,263 @@
+package auctionhouse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StateSnapshotTest {
+
+    private Path directory;
+    private Path journalDirectory;
+    private Path snapshotDirectory;
+
+    @Before
+    public void createDirectories() throws IOException {
+        directory = Files.createTempDirectory("auctionhouse-snapshot");
+        journalDirectory = directory.resolve("journal");
+        snapshotDirectory = directory.resolve("snapshots");
+    }
+
+    @After
+    public void deleteDirectories() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static AuctionHouseImp newHouse() {
+        return new AuctionHouseImp(
+                new Parameters(10.0, 15.0, new Money("0.00"), "AH A/C", "AH-auth",
+                        new MockMessagingService(), new MockBankingService()));
+    }
+
+    /*
+     * Everything a snapshot must preserve, one line per lot.
+     */
+    private static List<String> describe(AuctionHouseImp house) {
+        Lot[] lots = house.getLots();
+        Arrays.sort(lots, Comparator.comparingInt(Lot::getId));
+        List<String> lines = new ArrayList<String>();
+        for (Lot lot : lots) {
+            String line = lot.getId() + " " + lot.getSellerName() + " " + lot.getReservePrice()
+                    + " " + lot.getLotStatus() + " round " + lot.getAuctionsOpened()
+                    + " interested " + Arrays.toString(lot.getInterestedBuyerIds().toArray());
+            Auction auction = lot.getAuction();
+            if (auction != null) {
+                Bid bid = auction.getLeadingBid();
+                line += " auction by " + auction.getAuctioneerName() + " round " + auction.getRound()
+                        + " watchers " + auction.getBuyersInterestedInLot().size()
+                        + " leading " + bid.getAmount()
+                        + (bid.hasBidder() ? " from " + bid.getBidder().getName() : "");
+            }
+            lines.add(line);
+        }
+        for (Buyer buyer : house.getBuyers()) {
+            lines.add(buyer.getId() + " " + buyer.getName() + " " + buyer.getLotsInterestedIn().size());
+        }
+        return lines;
+    }
+
+    private AuctionHouseImp journalledHouse() throws IOException {
+        AuctionHouseImp house = newHouse();
+        house.setJournal(new CommandJournal(journalDirectory, 1 << 20, CommandJournal.Durability.BATCHED));
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        for (int b = 0; b < 4; b++) {
+            house.registerBuyer("Buyer" + b, "@Buyer" + b, "B" + b + " A/C", "B" + b + "-auth");
+        }
+        return house;
+    }
+
+    @Test
+    public void testSnapshotPlusJournalTail() throws Exception {
+        AuctionHouseImp house = journalledHouse();
+        for (int lot = 1; lot <= 4; lot++) {
+            house.addLot("SellerY", lot, "Lot " + lot, new Money("10.00"));
+            house.noteInterest("Buyer0", lot);
+            house.noteInterest("Buyer1", lot);
+        }
+        house.openAuction("Auctioneer1", "@Auctioneer1", 1);
+        house.makeBid("Buyer0", 1, new Money("12.00"));
+        house.openAuction("Auctioneer2", "@Auctioneer2", 2);
+        house.makeBid("Buyer1", 2, new Money("5.00"));
+
+        StateSnapshot.writeToDirectory(house, snapshotDirectory);
+
+        // After the snapshot: a close, a new bid, a re-opened lot, new
+        // buyers and lots.
+        house.makeBid("Buyer1", 1, new Money("15.00"));
+        assertEquals(Status.Kind.NO_SALE, house.closeAuction("Auctioneer2", 2).kind);
+        house.registerBuyer("Buyer9", "@Buyer9", "B9 A/C", "B9-auth");
+        house.noteInterest("Buyer9", 2);
+        house.openAuction("Auctioneer2", "@Auctioneer2", 2);
+        house.makeBid("Buyer9", 2, new Money("11.00"));
+        house.addLot("SellerY", 5, "Lot 5", new Money("1.00"));
+        house.getJournal().close();
+
+        AuctionHouseImp recovered = newHouse();
+        long replayed = JournalReplayer.recover(snapshotDirectory, journalDirectory, recovered);
+        assertEquals(7, replayed);
+        assertEquals(describe(house), describe(recovered));
+
+        AuctionHouseImp replayedInFull = newHouse();
+        JournalReplayer.replay(journalDirectory, replayedInFull);
+        assertEquals(describe(house), describe(replayedInFull));
+    }
+
+    @Test
+    public void testFuzzySnapshotUnderLoad() throws Exception {
+        final AuctionHouseImp house = journalledHouse();
+        for (int lot = 1; lot <= 16; lot++) {
+            house.addLot("SellerY", lot, "Lot " + lot, new Money("1.00"));
+            for (int b = 0; b < 4; b++) {
+                house.noteInterest("Buyer" + b, lot);
+            }
+            house.openAuction("Auctioneer" + lot, "@Auctioneer" + lot, lot);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        final CountDownLatch halfWay = new CountDownLatch(4);
+        List<Future<?>> bidders = new ArrayList<Future<?>>();
+        for (int t = 0; t < 4; t++) {
+            final int buyer = t;
+            bidders.add(pool.submit(() -> {
+                for (int i = 1; i <= 2000; i++) {
+                    int lot = 1 + (i % 16);
+                    house.makeBid("Buyer" + buyer, lot, Money.ofPence(i * 10L + buyer));
+                    if (i % 250 == 0) {
+                        // Lots are sold while the snapshot runs.
+                        int closing = 4 * (1 + (i / 250) % 4);
+                        house.closeAuction("Auctioneer" + closing, closing);
+                    }
+                    if (i == 1000) {
+                        halfWay.countDown();
+                    }
+                }
+                return null;
+            }));
+        }
+        halfWay.await();
+        StateSnapshot.writeToDirectory(house, snapshotDirectory);
+        for (Future<?> f : bidders) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        house.getJournal().close();
+
+        AuctionHouseImp recovered = newHouse();
+        JournalReplayer.recover(snapshotDirectory, journalDirectory, recovered);
+        assertEquals(describe(house), describe(recovered));
+    }
+
+    @Test
+    public void testManyLotsLoadInChunks() throws Exception {
+        AuctionHouseImp house = newHouse();
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.registerBuyer("Buyer0", "@Buyer0", "B0 A/C", "B0-auth");
+        for (int lot = 1; lot <= 10000; lot++) {
+            house.addLot("SellerY", lot, "Lot " + lot, Money.ofPence(lot));
+            if (lot % 3 == 0) {
+                house.noteInterest("Buyer0", lot);
+            }
+        }
+        Path file = directory.resolve("big.snapshot");
+        StateSnapshot.write(house, file);
+
+        AuctionHouseImp loaded = newHouse();
+        assertEquals(0, StateSnapshot.load(file, loaded));
+        assertEquals(describe(house), describe(loaded));
+        assertEquals(house.getOnlineCatalogue(), loaded.getOnlineCatalogue());
+    }
+
+    @Test
+    public void testSnapshotKeepsPayoutsAndUnpaidSales() throws Exception {
+        MockBankingService bank = new MockBankingService();
+        bank.setBadAccount("B1 A/C");
+        AuctionHouseImp house = new AuctionHouseImp(
+                new Parameters(10.0, 15.0, new Money("0.00"), "AH A/C", "AH-auth",
+                        new MockMessagingService(), bank));
+        PayoutAggregator payouts = new PayoutAggregator();
+        house.setPayoutAggregator(payouts);
+        house.setJournal(new CommandJournal(journalDirectory, 1 << 20, CommandJournal.Durability.BATCHED));
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.registerBuyer("Buyer0", "@Buyer0", "B0 A/C", "B0-auth");
+        house.registerBuyer("Buyer1", "@Buyer1", "B1 A/C", "B1-auth");
+        for (int lot = 1; lot <= 3; lot++) {
+            house.addLot("SellerY", lot, "Lot " + lot, new Money("1.00"));
+            house.noteInterest("Buyer0", lot);
+            house.noteInterest("Buyer1", lot);
+        }
+        house.openAuction("Auctioneer1", "@Auctioneer1", 1);
+        house.makeBid("Buyer0", 1, new Money("10.00"));
+        assertEquals(Status.Kind.SALE, house.closeAuction("Auctioneer1", 1).kind);
+        house.openAuction("Auctioneer1", "@Auctioneer1", 2);
+        house.makeBid("Buyer1", 2, new Money("20.00"));
+        assertEquals(Status.Kind.SALE_PENDING_PAYMENT, house.closeAuction("Auctioneer1", 2).kind);
+
+        // The snapshot holds lot 1's credit and lot 2's settlement; lot 3's
+        // credit is only in the journal.
+        StateSnapshot.writeToDirectory(house, snapshotDirectory);
+        house.openAuction("Auctioneer1", "@Auctioneer1", 3);
+        house.makeBid("Buyer0", 3, new Money("30.00"));
+        assertEquals(Status.Kind.SALE, house.closeAuction("Auctioneer1", 3).kind);
+        house.getJournal().close();
+
+        AuctionHouseImp recovered = newHouse();
+        PayoutAggregator recoveredPayouts = new PayoutAggregator();
+        recovered.setPayoutAggregator(recoveredPayouts);
+        JournalReplayer.recover(snapshotDirectory, journalDirectory, recovered);
+        assertEquals(payouts.getOwed("SY A/C"), recoveredPayouts.getOwed("SY A/C"));
+        assertEquals(describe(house), describe(recovered));
+
+        assertEquals(1, recovered.getPendingSettlements().size());
+        Settlement settlement = recovered.getPendingSettlements().iterator().next();
+        assertEquals(2, settlement.getLotNumber());
+        assertEquals("Buyer1", settlement.getWinningBid().getBidder().getName());
+        assertEquals(house.getPendingSettlements().iterator().next().getBuyerAmount(), settlement.getBuyerAmount());
+    }
+
+    @Test(expected = IOException.class)
+    public void testDamagedSnapshotIsRejected() throws Exception {
+        AuctionHouseImp house = newHouse();
+        house.registerSeller("SellerY", "@SellerY", "SY A/C");
+        house.addLot("SellerY", 1, "Lot 1", new Money("1.00"));
+        Path file = directory.resolve("damaged.snapshot");
+        StateSnapshot.write(house, file);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(raf.length() - 3);
+            raf.write(0x7f);
+        }
+        StateSnapshot.load(file, newHouse());
+    }
+
+    @Test
+    public void testKeepsOnlyNewestSnapshots() throws Exception {
+        AuctionHouseImp house = journalledHouse();
+        for (int lot = 1; lot <= 4; lot++) {
+            house.addLot("SellerY", lot, "Lot " + lot, new Money("1.00"));
+            StateSnapshot.writeToDirectory(house, snapshotDirectory);
+        }
+        house.getJournal().close();
+        try (Stream<Path> files = Files.list(snapshotDirectory)) {
+            assertEquals(2, files.count());
+        }
+        assertTrue(StateSnapshot.latest(snapshotDirectory).getFileName().toString().endsWith(".snapshot"));
+    }
+}
@@ -4,6 +4,11 @@
 package auctionhouse;
 
 /**
+ * The outcome of an operation. Statuses are immutable, so the common ones
+ * are shared rather than allocated per call: {@link #OK()}, {@link #of} for
+ * the other non-error kinds and {@link #error(ErrorCode)} for the house's
+ * own errors. Callers should branch on {@link #code}, not on the message.
+ *
  * @author pbj
  *
  */
@@ -16,21 +21,88 @@ public class Status {
         NO_SALE
         }
 
+    /**
+     * Why an operation failed, with the message it reports.
+     */
+    public static enum ErrorCode {
+        NONE(""),
+        OTHER(""),
+        BUYER_ALREADY_REGISTERED("Buyer with this name is already registered"),
+        SELLER_ALREADY_REGISTERED("Seller with this name is already registered"),
+        UNREGISTERED_SELLER("Unregistered seller, cannot add lot"),
+        UNREGISTERED_BUYER("Unregistered buyer, cannot note interest in lot"),
+        LOT_ALREADY_EXISTS("Lot with this number already exists"),
+        LOT_NOT_IN_CATALOGUE("Lot is not in the online catalogue"),
+        ALREADY_INTERESTED("Already interested in this lot"),
+        CANNOT_NOTE_INTEREST("Cannot note interest in this lot"),
+        AUCTIONEER_BUSY("Auctioneer is already running different auction"),
+        LOT_IN_ANOTHER_AUCTION("Lot is already being sold in another auction"),
+        LOT_CANNOT_BE_SOLD("Lot cannot be sold"),
+        LOT_NOT_IN_AUCTION("Lot is not being auctioned"),
+        BUYER_NOT_INTERESTED("Buyer is not interested in the lot being auctioned, cannot make bids"),
+        BID_TOO_LOW("Bid too low"),
+        NOT_AUCTIONEER("Auctioneer does not run this auction");
+
+        private final String message;
+
+        private ErrorCode(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final Status[] BY_KIND = new Status[KINDS.length];
+    private static final Status[] BY_CODE = new Status[ErrorCode.values().length];
+    static {
+        for (Kind k : KINDS) {
+            BY_KIND[k.ordinal()] = new Status(k);
+        }
+        for (ErrorCode c : ErrorCode.values()) {
+            BY_CODE[c.ordinal()] = new Status(Kind.ERROR, c, c.getMessage());
+        }
+    }
 
-    public Kind kind;
-    public String message;
+    public final Kind kind;
+    public final ErrorCode code;
+    public final String message;
 
     public Status(Kind k) {
-        kind = k;
-        message = "";
+        this(k, k == Kind.ERROR ? ErrorCode.OTHER : ErrorCode.NONE, "");
     }
     public Status(Kind k, String m) {
+        this(k, k == Kind.ERROR ? ErrorCode.OTHER : ErrorCode.NONE, m);
+    }
+    public Status(Kind k, ErrorCode c, String m) {
         kind = k;
+        code = c;
         message = m;
     }
 
     // Convenience methods
-    public static Status OK() { return new Status(Kind.OK); }
+    public static Status OK() { return BY_KIND[Kind.OK.ordinal()]; }
+
+    /**
+     * Returns the shared status of a kind, with no message.
+     */
+    public static Status of(Kind k) { return BY_KIND[k.ordinal()]; }
+
+    /**
+     * Returns the shared status of an error code, with its standard message.
+     */
+    public static Status error(ErrorCode code) { return BY_CODE[code.ordinal()]; }
+
+    /**
+     * Returns an error with a code and a message of its own, e.g. one
+     * naming the party at fault.
+     */
+    public static Status error(ErrorCode code, String message) {
+        return new Status(Kind.ERROR, code, message);
+    }
+
     public static Status error(String message) {
         return new Status(Kind.ERROR, message);
     }
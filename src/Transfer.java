@@ -0,0 +1,22 @@
+package auctionhouse;
+
+/**
+ * One payment in a batch sent with
+ * {@link BankingService#transferBatch}: an amount to a receiving account.
+ */
+public class Transfer {
+
+    public final String receiverAccount;
+    public final Money amount;
+
+    public Transfer(String receiverAccount, Money amount) {
+        this.receiverAccount = receiverAccount;
+        this.amount = amount;
+    }
+
+    @Override
+    public String toString() {
+        return receiverAccount + " " + amount;
+    }
+
+}